@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+/**
+ * Concurrency limit adapting to the observed round-trip time of requests, in the manner of TCP Vegas congestion
+ * control. The round-trip time of unloaded server is estimated by the minimum observed one. The number of requests
+ * queued on the server is estimated from the difference of measured and minimum round-trip time; the limit grows
+ * while the estimate is small and shrinks once it gets large.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class AdaptiveLimit {
+
+    /**
+     * Number of samples after which the minimum round-trip time is measured again, so that it follows
+     * changes of the server capacity.
+     */
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final int maxLimit;
+    private volatile int limit;
+    private long minRtt = Long.MAX_VALUE;
+    private int samples;
+
+    AdaptiveLimit(final int initialLimit, final int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Adjusts the limit according to completed request.
+     *
+     * @param rtt the round-trip time of the request in nanoseconds
+     * @param inFlight the number of requests in flight when the request completed
+     */
+    synchronized void sample(final long rtt, final int inFlight) {
+        if (rtt <= 0) {
+            return;
+        }
+        if (++samples >= PROBE_INTERVAL) {
+            samples = 0;
+            minRtt = rtt;
+        } else if (rtt < minRtt) {
+            minRtt = rtt;
+        }
+        final int limit = this.limit;
+        final double queued = limit * (1 - (double) minRtt / rtt);
+        final double log = Math.max(1, Math.log10(limit));
+        final int newLimit;
+        if (queued <= 3 * log) {
+            // do not grow the limit while the requests in flight do not even reach the current one
+            newLimit = inFlight * 2 >= limit ? limit + (int) log : limit;
+        } else if (queued >= 6 * log) {
+            newLimit = limit - (int) log;
+        } else {
+            return;
+        }
+        this.limit = Math.max(1, Math.min(newLimit, maxLimit));
+    }
+}
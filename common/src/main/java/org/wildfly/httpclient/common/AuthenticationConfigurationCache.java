@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import static java.security.AccessController.doPrivileged;
+
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.wildfly.security.auth.client.AuthenticationContext;
+import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
+import org.wildfly.security.manager.WildFlySecurityManager;
+
+import javax.net.ssl.SSLContext;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+
+/**
+ * Cache of authentication configurations and SSL contexts resolved from an {@link AuthenticationContext}. Resolving
+ * them walks all the rules of the context, which is too expensive to be done for every invocation.
+ * <p>
+ * Entries are keyed by the target URI, the purpose (abstract type and authority) and the identity of the
+ * authentication context. Authentication contexts are immutable, so a changed context is a different instance
+ * and never hits entries resolved from its predecessor. The cache only holds authentication contexts weakly,
+ * entries of a context that was garbage collected are removed on the next lookup.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public final class AuthenticationConfigurationCache {
+
+    private static final AuthenticationContextConfigurationClient CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
+    private static final int MAX_SIZE = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.auth.config-cache-size", "256"));
+    private static final AuthenticationConfigurationCache INSTANCE = new AuthenticationConfigurationCache(MAX_SIZE);
+
+    private final BoundedCache<Key, AuthenticationConfiguration> configurations;
+    private final BoundedCache<Key, SSLContext> sslContexts;
+    private final ReferenceQueue<AuthenticationContext> collectedContexts = new ReferenceQueue<>();
+
+    /**
+     * Creates new cache.
+     *
+     * @param maxSize maximum number of cached configurations and SSL contexts each, zero or negative value disables caching
+     */
+    public AuthenticationConfigurationCache(final int maxSize) {
+        configurations = new BoundedCache<>(maxSize);
+        sslContexts = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Returns the cache shared by all clients.
+     *
+     * @return the shared cache
+     */
+    public static AuthenticationConfigurationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the authentication configuration for given target.
+     *
+     * @see AuthenticationContextConfigurationClient#getAuthenticationConfiguration(URI, AuthenticationContext, int, String, String)
+     */
+    public AuthenticationConfiguration getAuthenticationConfiguration(final URI uri, final AuthenticationContext context, final int defaultPort,
+                                                                      final String abstractType, final String abstractTypeAuthority) {
+        expungeCollectedContexts();
+        final Key key = new Key(uri, context, defaultPort, abstractType, abstractTypeAuthority, collectedContexts);
+        return configurations.computeIfAbsent(key, k -> CLIENT.getAuthenticationConfiguration(uri, context, defaultPort, abstractType, abstractTypeAuthority));
+    }
+
+    /**
+     * Returns the SSL context for given target.
+     *
+     * @see AuthenticationContextConfigurationClient#getSSLContext(URI, AuthenticationContext, String, String)
+     */
+    public SSLContext getSSLContext(final URI uri, final AuthenticationContext context, final String abstractType,
+                                    final String abstractTypeAuthority) throws GeneralSecurityException {
+        expungeCollectedContexts();
+        final Key key = new Key(uri, context, -1, abstractType, abstractTypeAuthority, collectedContexts);
+        SSLContext sslContext = sslContexts.get(key);
+        if (sslContext == null) {
+            sslContext = CLIENT.getSSLContext(uri, context, abstractType, abstractTypeAuthority);
+            if (sslContext != null) {
+                sslContexts.put(key, sslContext);
+            }
+        }
+        return sslContext;
+    }
+
+    private void expungeCollectedContexts() {
+        if (collectedContexts.poll() == null) {
+            return;
+        }
+        while (collectedContexts.poll() != null) {
+            // drain, a single pass removes the entries of all collected contexts
+        }
+        configurations.removeIf((key, value) -> key.get() == null);
+        sslContexts.removeIf((key, value) -> key.get() == null);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        configurations.clear();
+        sslContexts.clear();
+    }
+
+    private static final class Key extends WeakReference<AuthenticationContext> {
+        private final URI uri;
+        private final int defaultPort;
+        private final String abstractType;
+        private final String abstractTypeAuthority;
+        private final int hashCode;
+
+        private Key(final URI uri, final AuthenticationContext context, final int defaultPort, final String abstractType,
+                    final String abstractTypeAuthority, final ReferenceQueue<AuthenticationContext> queue) {
+            super(context, queue);
+            this.uri = uri;
+            this.defaultPort = defaultPort;
+            this.abstractType = abstractType;
+            this.abstractTypeAuthority = abstractTypeAuthority;
+            this.hashCode = Objects.hash(uri, System.identityHashCode(context), defaultPort, abstractType, abstractTypeAuthority);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            final AuthenticationContext context = get();
+            // keys of collected contexts are only equal to themselves
+            return context != null && context == other.get() && defaultPort == other.defaultPort && uri.equals(other.uri)
+                    && Objects.equals(abstractType, other.abstractType) && Objects.equals(abstractTypeAuthority, other.abstractTypeAuthority);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Simple thread safe cache holding at most {@code maxSize} entries. When the cache is full an arbitrary
+ * entry is evicted to make room for the new one. Intended for caching values that are cheap to recompute
+ * but computed on hot paths.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public final class BoundedCache<K, V> {
+
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * Creates new cache.
+     *
+     * @param maxSize maximum number of entries, zero or negative value disables caching
+     */
+    public BoundedCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns cached value.
+     *
+     * @param key the key
+     * @return cached value or {@code null} if not present
+     */
+    public V get(final K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Returns cached value, computing and caching it if not present.
+     *
+     * @param key the key
+     * @param function the function computing the value
+     * @return the cached or computed value
+     */
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> function) {
+        V value = entries.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = function.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Caches the value, evicting an arbitrary entry if the cache is full.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            final Iterator<K> i = entries.keySet().iterator();
+            if (i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+        }
+        entries.put(key, value);
+    }
+
+    /**
+     * Removes cached value.
+     *
+     * @param key the key
+     * @return removed value or {@code null} if not present
+     */
+    public V remove(final K key) {
+        return entries.remove(key);
+    }
+
+    /**
+     * Removes all entries matching the predicate.
+     *
+     * @param predicate the entry predicate
+     */
+    public void removeIf(final BiPredicate<? super K, ? super V> predicate) {
+        entries.entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return cached entries count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+}
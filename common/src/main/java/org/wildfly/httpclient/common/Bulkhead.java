@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Client side concurrency limit of requests to a group of beans sharing one target. Requests over the limit wait
+ * for their turn before taking a connection from the pool, or fail fast once the queue is full too. This way slow
+ * beans cannot occupy all connections to the target and starve requests to other beans.
+ * <p>
+ * A bulkhead applies to requests matching both its bean name and view class name, {@code null} matches any.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public final class Bulkhead {
+
+    private final String beanName;
+    private final String viewClassName;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Queue<Runnable> queued = new ArrayDeque<>();
+    private int running;
+
+    Bulkhead(final String beanName, final String viewClassName, final int maxConcurrent, final int maxQueued) {
+        this.beanName = beanName;
+        this.viewClassName = viewClassName;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    boolean matches(final String beanName, final String viewClassName) {
+        return (this.beanName == null || this.beanName.equals(beanName))
+                && (this.viewClassName == null || this.viewClassName.equals(viewClassName));
+    }
+
+    /**
+     * Runs the task if the concurrency limit was not reached yet, otherwise queues it. Every run task must
+     * be followed by {@link #release()} once its request completes.
+     *
+     * @param task the task sending the request
+     * @return {@code false} if the task was rejected because both the concurrency limit and the queue are full
+     */
+    public boolean submit(final Runnable task) {
+        synchronized (this) {
+            if (running >= maxConcurrent) {
+                if (queued.size() >= maxQueued) {
+                    return false;
+                }
+                queued.add(task);
+                return true;
+            }
+            running++;
+        }
+        task.run();
+        return true;
+    }
+
+    /**
+     * Called once a request completed, runs the next queued task if any.
+     */
+    public void release() {
+        final Runnable next;
+        synchronized (this) {
+            next = queued.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{bean=" + beanName + ", view=" + viewClassName + ", maxConcurrent=" + maxConcurrent + ", maxQueued=" + maxQueued + '}';
+    }
+}
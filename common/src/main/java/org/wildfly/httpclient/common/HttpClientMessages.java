@@ -19,6 +19,7 @@
 package org.wildfly.httpclient.common;
 
 import java.io.IOException;
+import java.util.concurrent.TimeoutException;
 import javax.naming.AuthenticationException;
 
 import org.jboss.logging.BasicLogger;
@@ -78,4 +79,7 @@ interface HttpClientMessages extends BasicLogger {
     @Message(id = 14, value = "JavaEE to JakartaEE backward compatibility layer have been installed")
     void javaeeToJakartaeeBackwardCompatibilityLayerInstalled();
 
+    @Message(id = 15, value = "Request timed out before it could be sent")
+    TimeoutException requestTimedOut();
+
 }
@@ -37,18 +37,25 @@ import org.wildfly.client.config.ConfigurationXMLStreamReader;
 final class HttpClientXmlParser {
     private static final String NS_EJB_HTTP_CLIENT_1_0 = "urn:wildfly-http-client:1.0";
     private static final String NS_EJB_HTTP_CLIENT_1_1 = "urn:wildfly-http-client:1.1";
+    private static final String NS_EJB_HTTP_CLIENT_1_2 = "urn:wildfly-http-client:1.2";
 
     private static final String ATTR_ADDRESS = "address";
+    private static final String ATTR_BEAN = "bean";
     private static final String ATTR_BUFFER_SIZE = "buffer-size";
     private static final String ATTR_DIRECT = "direct";
+    private static final String ATTR_MAX_CONCURRENT = "max-concurrent";
+    private static final String ATTR_MAX_QUEUED = "max-queued";
     private static final String ATTR_MAX_SIZE = "max-size";
     private static final String ATTR_PORT = "port";
     private static final String ATTR_THREAD_LOCAL_SIZE = "thread-local-size";
     private static final String ATTR_URI = "uri";
     private static final String ATTR_VALUE = "value";
+    private static final String ATTR_VIEW = "view";
 
     private static final String ELEM_BIND_ADDRESS = "bind-address";
     private static final String ELEM_BUFFER_POOL = "buffer-pool";
+    private static final String ELEM_BULKHEAD = "bulkhead";
+    private static final String ELEM_BULKHEADS = "bulkheads";
     private static final String ELEM_CONFIG = "config";
     private static final String ELEM_CONFIGS = "configs";
     private static final String ELEM_DEFAULTS = "defaults";
@@ -64,7 +71,7 @@ final class HttpClientXmlParser {
         final ClientConfiguration clientConfiguration = ClientConfiguration.getInstance();
         final WildflyHttpContext.Builder builder = new WildflyHttpContext.Builder();
         if (clientConfiguration != null) {
-            try (final ConfigurationXMLStreamReader streamReader = clientConfiguration.readConfiguration(Set.of(NS_EJB_HTTP_CLIENT_1_0, NS_EJB_HTTP_CLIENT_1_1))) {
+            try (final ConfigurationXMLStreamReader streamReader = clientConfiguration.readConfiguration(Set.of(NS_EJB_HTTP_CLIENT_1_0, NS_EJB_HTTP_CLIENT_1_1, NS_EJB_HTTP_CLIENT_1_2))) {
                 parseDocument(streamReader, builder);
             }
         }
@@ -74,7 +81,7 @@ final class HttpClientXmlParser {
     //for testing
     static WildflyHttpContext.Builder parseConfig(URI uri) throws ConfigXMLParseException {
         final WildflyHttpContext.Builder builder = new WildflyHttpContext.Builder();
-        try (final ConfigurationXMLStreamReader streamReader = ClientConfiguration.getInstance(uri).readConfiguration(Set.of(NS_EJB_HTTP_CLIENT_1_0, NS_EJB_HTTP_CLIENT_1_1))) {
+        try (final ConfigurationXMLStreamReader streamReader = ClientConfiguration.getInstance(uri).readConfiguration(Set.of(NS_EJB_HTTP_CLIENT_1_0, NS_EJB_HTTP_CLIENT_1_1, NS_EJB_HTTP_CLIENT_1_2))) {
             parseDocument(streamReader, builder);
             return builder;
         }
@@ -87,6 +94,7 @@ final class HttpClientXmlParser {
                     switch (reader.getNamespaceURI()) {
                         case NS_EJB_HTTP_CLIENT_1_0:
                         case NS_EJB_HTTP_CLIENT_1_1:
+                        case NS_EJB_HTTP_CLIENT_1_2:
                             break;
                         default:
                             throw reader.unexpectedElement();
@@ -124,6 +132,7 @@ final class HttpClientXmlParser {
                     switch (reader.getNamespaceURI()) {
                         case NS_EJB_HTTP_CLIENT_1_0:
                         case NS_EJB_HTTP_CLIENT_1_1:
+                        case NS_EJB_HTTP_CLIENT_1_2:
                             break;
                         default:
                             throw reader.unexpectedElement();
@@ -277,6 +286,7 @@ final class HttpClientXmlParser {
                     switch (reader.getNamespaceURI()) {
                         case NS_EJB_HTTP_CLIENT_1_0:
                         case NS_EJB_HTTP_CLIENT_1_1:
+                        case NS_EJB_HTTP_CLIENT_1_2:
                             break;
                         default:
                             throw reader.unexpectedElement();
@@ -313,6 +323,9 @@ final class HttpClientXmlParser {
                         case NS_EJB_HTTP_CLIENT_1_1:
                             version = HttpClientSchemaVersion.V1_1;
                             break;
+                        case NS_EJB_HTTP_CLIENT_1_2:
+                            version = HttpClientSchemaVersion.V1_2;
+                            break;
                         default:
                             throw reader.unexpectedElement();
                     }
@@ -446,6 +459,9 @@ final class HttpClientXmlParser {
                         case NS_EJB_HTTP_CLIENT_1_1:
                             version = HttpClientSchemaVersion.V1_1;
                             break;
+                        case NS_EJB_HTTP_CLIENT_1_2:
+                            version = HttpClientSchemaVersion.V1_2;
+                            break;
                         default:
                             throw reader.unexpectedElement();
                     }
@@ -480,6 +496,37 @@ final class HttpClientXmlParser {
                             targetBuilder.setTcpNoDelay(parseBooleanElement(reader));
                             break;
                         }
+                        case ELEM_BULKHEADS: {
+                            parseBulkheads(reader, targetBuilder);
+                            break;
+                        }
+                        default:
+                            throw reader.unexpectedElement();
+                    }
+                    break;
+                }
+                case END_ELEMENT: {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void parseBulkheads(final ConfigurationXMLStreamReader reader, final WildflyHttpContext.Builder.HttpConfigBuilder targetBuilder) throws ConfigXMLParseException {
+        if (reader.getAttributeCount() > 0) {
+            throw reader.unexpectedAttribute(0);
+        }
+        while (reader.hasNext()) {
+            switch (reader.nextTag()) {
+                case START_ELEMENT: {
+                    if (!NS_EJB_HTTP_CLIENT_1_2.equals(reader.getNamespaceURI())) {
+                        throw reader.unexpectedElement();
+                    }
+                    switch (reader.getLocalName()) {
+                        case ELEM_BULKHEAD: {
+                            parseBulkhead(reader, targetBuilder);
+                            break;
+                        }
                         default:
                             throw reader.unexpectedElement();
                     }
@@ -492,6 +539,49 @@ final class HttpClientXmlParser {
         }
     }
 
+    private static void parseBulkhead(final ConfigurationXMLStreamReader reader, final WildflyHttpContext.Builder.HttpConfigBuilder targetBuilder) throws ConfigXMLParseException {
+        final int attributeCount = reader.getAttributeCount();
+        String bean = null;
+        String view = null;
+        Integer maxConcurrent = null;
+        int maxQueued = 0;
+        for (int i = 0; i < attributeCount; i++) {
+            switch (reader.getAttributeLocalName(i)) {
+                case ATTR_BEAN: {
+                    bean = reader.getAttributeValueResolved(i);
+                    break;
+                }
+                case ATTR_VIEW: {
+                    view = reader.getAttributeValueResolved(i);
+                    break;
+                }
+                case ATTR_MAX_CONCURRENT: {
+                    maxConcurrent = reader.getIntAttributeValueResolved(i);
+                    break;
+                }
+                case ATTR_MAX_QUEUED: {
+                    maxQueued = reader.getIntAttributeValueResolved(i);
+                    break;
+                }
+                default: {
+                    throw reader.unexpectedAttribute(i);
+                }
+            }
+        }
+        if (maxConcurrent == null) {
+            throw reader.missingRequiredAttribute(null, ATTR_MAX_CONCURRENT);
+        }
+        targetBuilder.addBulkhead(bean, view, maxConcurrent, maxQueued);
+        switch (reader.nextTag()) {
+            case END_ELEMENT: {
+                return;
+            }
+            default: {
+                throw reader.unexpectedElement();
+            }
+        }
+    }
+
     enum HttpClientSchemaVersion {
         V1_0(NS_EJB_HTTP_CLIENT_1_0,
             List.of(
@@ -504,6 +594,12 @@ final class HttpClientXmlParser {
                 ELEM_BIND_ADDRESS, ELEM_BUFFER_POOL, ELEM_CONFIG, ELEM_CONFIGS, ELEM_DEFAULTS,
                 ELEM_EAGERLY_ACQUIRE_SESSION, ELEM_ENABLE_HTTP2, ELEM_IDLE_TIMEOUT, ELEM_MAX_CONNECTIONS,
                 ELEM_MAX_STREAMS_PER_CONNECTION, ELEM_TCP_NO_DELAY
+            )),
+        V1_2(NS_EJB_HTTP_CLIENT_1_2,
+            List.of(
+                ELEM_BIND_ADDRESS, ELEM_BUFFER_POOL, ELEM_BULKHEADS, ELEM_CONFIG, ELEM_CONFIGS, ELEM_DEFAULTS,
+                ELEM_EAGERLY_ACQUIRE_SESSION, ELEM_ENABLE_HTTP2, ELEM_IDLE_TIMEOUT, ELEM_MAX_CONNECTIONS,
+                ELEM_MAX_STREAMS_PER_CONNECTION, ELEM_TCP_NO_DELAY
             ));
 
         private final String namespace;
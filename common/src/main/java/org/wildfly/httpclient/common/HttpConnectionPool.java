@@ -32,6 +32,9 @@ import org.xnio.OptionMap;
 import org.xnio.XnioExecutor;
 import org.xnio.XnioWorker;
 
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.wildfly.security.manager.WildFlySecurityManager;
+
 import javax.net.ssl.SSLContext;
 import java.io.Closeable;
 import java.io.IOException;
@@ -44,6 +47,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A pool of HTTP connections for a given host pool.
@@ -53,6 +57,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class HttpConnectionPool implements Closeable {
 
+    private static final long PRIORITY_MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.pool.priority-max-wait", "1000")));
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+    private static final boolean ADAPTIVE_LIMIT = Boolean.parseBoolean(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.pool.adaptive-limit", "false"));
+    private static final int AUTHENTICATION_CONTEXTS = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.pool.authentication-contexts", "64"));
+
     private final int maxConnections;
     private final int maxStreamsPerConnection;
     private final XnioWorker worker;
@@ -62,12 +72,27 @@ public class HttpConnectionPool implements Closeable {
     private final long connectionIdleTimeout;
 
     private final Map<Object, ConcurrentLinkedDeque<ClientConnectionHolder>> connections = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedDeque<RequestHolder> pendingConnectionRequests = new ConcurrentLinkedDeque<>();
+    /**
+     * Pending requests indexed by {@link RequestPriority#ordinal()}.
+     */
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedDeque<RequestHolder>[] pendingConnectionRequests = new ConcurrentLinkedDeque[PRIORITIES.length];
     private final AtomicInteger activeInvocationCount = new AtomicInteger();
-    private final Map<SSLContext, UndertowXnioSsl> sslInstances = new ConcurrentHashMap<>();
+    private final AdaptiveLimit adaptiveLimit;
+    private volatile XnioSslRegistry sslRegistry = new XnioSslRegistry();
+    private final LongAdder tlsConnections = new LongAdder();
+    private final LongAdder tlsConnectTime = new LongAdder();
 
     private final Object NULL_SSL_CONTEXT = new Object();
-    private final PoolAuthenticationContext poolAuthenticationContext = new PoolAuthenticationContext();
+    /**
+     * Authentication state indexed by the authentication configuration it was learned with, target URIs of the same
+     * origin share this pool but not necessarily their credentials.
+     */
+    private final BoundedCache<AuthenticationConfiguration, PoolAuthenticationContext> authenticationContexts = new BoundedCache<>(AUTHENTICATION_CONTEXTS);
+    private final LongAdder authenticationChallenges = new LongAdder();
+    private final LongAdder staleDigestNonces = new LongAdder();
+    private final LongAdder preemptiveAuthentications = new LongAdder();
+    private final PoolAuthenticationContext defaultAuthenticationContext = newAuthenticationContext();
 
     public HttpConnectionPool(int maxConnections, int maxStreamsPerConnection, XnioWorker worker, ByteBufferPool byteBufferPool, OptionMap options, HostPool hostPool, long connectionIdleTimeout) {
         this.maxConnections = maxConnections;
@@ -76,6 +101,8 @@ public class HttpConnectionPool implements Closeable {
         this.byteBufferPool = byteBufferPool;
         this.hostPool = hostPool;
         this.connectionIdleTimeout = connectionIdleTimeout;
+        // bounded by the configured maximum, starts in the middle so that it can go either way
+        this.adaptiveLimit = ADAPTIVE_LIMIT ? new AdaptiveLimit(maxConnections / 2, maxConnections) : null;
         final String hostname = hostPool.getUri().getHost();
         if ("https".equals(hostPool.getUri().getScheme()) && hostname != null) {
             try {
@@ -90,10 +117,28 @@ public class HttpConnectionPool implements Closeable {
             }
         }
         this.options = options;
+        for (int i = 0; i < pendingConnectionRequests.length; i++) {
+            pendingConnectionRequests[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * Shares SSL instances with other pools of the same HTTP context.
+     */
+    void setSslRegistry(final XnioSslRegistry sslRegistry) {
+        this.sslRegistry = sslRegistry;
+    }
+
+    public XnioWorker getWorker() {
+        return worker;
     }
 
     public void getConnection(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext sslContext) {
-        pendingConnectionRequests.add(new RequestHolder(connectionListener, errorListener, ignoreConnectionLimits, sslContext));
+        getConnection(connectionListener, errorListener, ignoreConnectionLimits, sslContext, RequestPriority.NORMAL);
+    }
+
+    public void getConnection(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext sslContext, RequestPriority priority) {
+        pendingConnectionRequests[priority.ordinal()].add(new RequestHolder(connectionListener, errorListener, ignoreConnectionLimits, sslContext));
         runPending();
     }
 
@@ -118,11 +163,11 @@ public class HttpConnectionPool implements Closeable {
         int count;
         do {
             count = activeInvocationCount.get();
-            if (count == maxConnections) {
+            if (count >= (adaptiveLimit == null ? maxConnections : adaptiveLimit.getLimit())) {
                 return;
             }
         } while (!activeInvocationCount.compareAndSet(count, count + 1));
-        RequestHolder next = pendingConnectionRequests.poll();
+        RequestHolder next = pollPending();
         if (next == null) {
             activeInvocationCount.decrementAndGet();
             return;
@@ -132,10 +177,7 @@ public class HttpConnectionPool implements Closeable {
         if (hostPool.getUri().getScheme().equals("https")) {
             sslContext = next.context;
             if (sslContext != null) {
-                ssl = sslInstances.get(sslContext);
-                if (ssl == null) {
-                    sslInstances.put(sslContext, ssl = new UndertowXnioSsl(worker.getXnio(), OptionMap.EMPTY, sslContext));
-                }
+                ssl = sslRegistry.get(worker.getXnio(), sslContext);
             }
         }
         Object key = sslContext == null ? NULL_SSL_CONTEXT : sslContext;
@@ -170,9 +212,15 @@ public class HttpConnectionPool implements Closeable {
         try {
 
             final SSLContext context = sslContext;
+            final boolean tls = ssl != null;
+            final long connectStart = System.nanoTime();
             UndertowClient.getInstance().connect(new ClientCallback<ClientConnection>() {
                 @Override
                 public void completed(ClientConnection result) {
+                    if (tls) {
+                        tlsConnections.increment();
+                        tlsConnectTime.add(System.nanoTime() - connectStart);
+                    }
                     result.getCloseSetter().set((ChannelListener<ClientConnection>) connections::remove);
                     ClientConnectionHolder clientConnectionHolder = createClientConnectionHolder(result, hostPoolAddress.getURI(), context);
                     clientConnectionHolder.tryAcquire(); //aways suceeds
@@ -193,6 +241,85 @@ public class HttpConnectionPool implements Closeable {
 
     }
 
+    /**
+     * Returns the pending request of the highest priority. Lower priority request is returned instead if it
+     * waited for longer than {@code priority-max-wait} milliseconds, so that it is not starved.
+     */
+    private RequestHolder pollPending() {
+        final long now = System.nanoTime();
+        for (int i = pendingConnectionRequests.length - 1; i > 0; i--) {
+            final RequestHolder oldest = pendingConnectionRequests[i].peek();
+            if (oldest != null && now - oldest.created > PRIORITY_MAX_WAIT) {
+                final RequestHolder next = pendingConnectionRequests[i].poll();
+                if (next != null) {
+                    return next;
+                }
+            }
+        }
+        for (ConcurrentLinkedDeque<RequestHolder> pending : pendingConnectionRequests) {
+            final RequestHolder next = pending.poll();
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of TLS connections opened by this pool.
+     */
+    public long getTlsConnections() {
+        return tlsConnections.sum();
+    }
+
+    /**
+     * Returns the total time in milliseconds spent opening TLS connections, including the TLS handshakes.
+     * Divided by {@link #getTlsConnections()} it gives the average, which drops once sessions get resumed.
+     */
+    public long getTlsConnectTime() {
+        return TimeUnit.NANOSECONDS.toMillis(tlsConnectTime.sum());
+    }
+
+    /**
+     * Returns the number of authentication challenges received from the target of this pool.
+     */
+    public long getAuthenticationChallenges() {
+        return authenticationChallenges.sum();
+    }
+
+    /**
+     * Returns the number of requests sent with credentials before the target of this pool challenged any.
+     */
+    public long getPreemptiveAuthentications() {
+        return preemptiveAuthentications.sum();
+    }
+
+    /**
+     * Returns the number of requests the target of this pool rejected because of a stale digest nonce.
+     */
+    public long getStaleDigestNonces() {
+        return staleDigestNonces.sum();
+    }
+
+    /**
+     * Returns the authentication state of requests sent with given authentication configuration.
+     *
+     * @param authenticationConfiguration the authentication configuration, may be {@code null}
+     * @return the authentication state
+     */
+    PoolAuthenticationContext getAuthenticationContext(final AuthenticationConfiguration authenticationConfiguration) {
+        if (authenticationConfiguration == null) {
+            return defaultAuthenticationContext;
+        }
+        final PoolAuthenticationContext context = authenticationContexts.computeIfAbsent(authenticationConfiguration, c -> newAuthenticationContext());
+        // caching disabled
+        return context != null ? context : defaultAuthenticationContext;
+    }
+
+    private PoolAuthenticationContext newAuthenticationContext() {
+        return new PoolAuthenticationContext(authenticationChallenges, staleDigestNonces, preemptiveAuthentications);
+    }
+
     @Override
     public void close() throws IOException {
         //TODO
@@ -217,9 +344,22 @@ public class HttpConnectionPool implements Closeable {
 
         URI getUri();
 
-        PoolAuthenticationContext getAuthenticationContext();
-
         void sendRequest(ClientRequest request, ClientCallback<ClientExchange> callback);
+
+        /**
+         * Returns {@code true} if the connection was already used by previous request. Such connection
+         * may have been closed by the server meanwhile.
+         *
+         * @return whether the connection is reused
+         */
+        boolean isReused();
+
+        /**
+         * Sets the time in milliseconds the server keeps this connection open while idle.
+         *
+         * @param keepAliveTimeout the keep-alive timeout or {@code -1} if unknown
+         */
+        void setKeepAliveTimeout(long keepAliveTimeout);
     }
 
 
@@ -228,6 +368,7 @@ public class HttpConnectionPool implements Closeable {
         final ErrorListener errorListener;
         final boolean ignoreConnectionLimits;
         final SSLContext context;
+        final long created = System.nanoTime();
 
         private RequestHolder(ConnectionListener connectionListener, ErrorListener errorListener, boolean ignoreConnectionLimits, SSLContext context) {
             this.connectionListener = connectionListener;
@@ -244,6 +385,10 @@ public class HttpConnectionPool implements Closeable {
         private final URI uri;
         private volatile XnioExecutor.Key timeoutKey;
         private long timeout;
+        private volatile long keepAliveTimeout = -1;
+        private volatile boolean reused;
+        private volatile long sent;
+        private volatile boolean sampled;
         private final SSLContext sslContext;
 
         // keep track if the connection is in use (!IN_USE = idle)
@@ -298,30 +443,46 @@ public class HttpConnectionPool implements Closeable {
             if (!clearFlags(IN_USE)) {
                 return;
             }
+            reused = true;
             if (close) {
                 IoUtils.safeClose(connection);
+            } else if (adaptiveLimit != null && sampled) {
+                adaptiveLimit.sample(System.nanoTime() - sent, activeInvocationCount.get());
             }
-            timeout = System.currentTimeMillis() + connectionIdleTimeout;
+            sampled = false;
+            // close idle connection before the server does, so that it is not reused just when the server closes it
+            final long idleTimeout = keepAliveTimeout < 0 ? connectionIdleTimeout
+                    : connectionIdleTimeout > 0 ? Math.min(connectionIdleTimeout, keepAliveTimeout) : keepAliveTimeout;
+            timeout = System.currentTimeMillis() + idleTimeout;
 
 
-            if (timeoutKey == null && connectionIdleTimeout > 0 && !close) {
-                timeoutKey = connection.getIoThread().executeAfter(timeoutTask, connectionIdleTimeout, TimeUnit.MILLISECONDS);
+            if (timeoutKey == null && idleTimeout > 0 && !close) {
+                timeoutKey = connection.getIoThread().executeAfter(timeoutTask, idleTimeout, TimeUnit.MILLISECONDS);
             }
             returnConnection(this);
         }
 
         @Override
-        public URI getUri() {
-            return uri;
+        public boolean isReused() {
+            return reused;
         }
 
         @Override
-        public PoolAuthenticationContext getAuthenticationContext() {
-            return poolAuthenticationContext;
+        public void setKeepAliveTimeout(final long keepAliveTimeout) {
+            this.keepAliveTimeout = keepAliveTimeout;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
         }
 
         @Override
         public void sendRequest(ClientRequest request, ClientCallback<ClientExchange> callback) {
+            // low priority and long polling requests may wait on the server regardless of its load
+            sampled = request.getAttachment(HttpTargetContext.LONG_POLL) == null
+                    && request.getAttachment(HttpTargetContext.PRIORITY) != RequestPriority.LOW;
+            sent = System.nanoTime();
             connection.sendRequest(request, callback);
         }
 
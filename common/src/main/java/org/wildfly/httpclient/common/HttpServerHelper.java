@@ -19,20 +19,33 @@
 package org.wildfly.httpclient.common;
 
 import static io.undertow.util.Headers.CONTENT_TYPE;
+import static io.undertow.util.Headers.RETRY_AFTER;
+import static io.undertow.util.StatusCodes.GATEWAY_TIME_OUT;
+import static io.undertow.util.StatusCodes.SERVICE_UNAVAILABLE;
 import static org.wildfly.httpclient.common.ByteOutputs.byteOutputOf;
+import static org.wildfly.httpclient.common.HeadersHelper.getRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.putResponseHeader;
 
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.HttpString;
 import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.Marshaller;
 
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Stuart Douglas
  */
 public class HttpServerHelper {
 
+    /**
+     * Request header carrying the time in milliseconds the client is going to wait for the response.
+     */
+    static final HttpString DEADLINE = new HttpString("x-wf-deadline");
+    private static final AttachmentKey<Long> DEADLINE_KEY = AttachmentKey.create(Long.class);
+
     private HttpServerHelper() {
 
     }
@@ -59,4 +72,49 @@ public class HttpServerHelper {
         }
     }
 
+    /**
+     * Ends the exchange if the client already gave up waiting for the response, according to the remaining time
+     * sent along with the request. The deadline is remembered on first call, so calling this method again once the
+     * exchange was dispatched accounts for the time the request spent waiting for an executor.
+     *
+     * @param exchange the exchange
+     * @return {@code true} if the exchange was ended and must not be processed
+     */
+    public static boolean rejectExpired(HttpServerExchange exchange) {
+        Long deadline = exchange.getAttachment(DEADLINE_KEY);
+        if (deadline == null) {
+            final String remaining = getRequestHeader(exchange, DEADLINE);
+            if (remaining == null) {
+                return false;
+            }
+            try {
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(remaining));
+            } catch (NumberFormatException e) {
+                HttpClientMessages.MESSAGES.debugf("Ignoring invalid deadline %s", remaining);
+                return false;
+            }
+            exchange.putAttachment(DEADLINE_KEY, deadline);
+        }
+        if (deadline - System.nanoTime() > 0) {
+            return false;
+        }
+        HttpClientMessages.MESSAGES.debugf("Dropping request %s, the client does not wait for it anymore", exchange.getRequestPath());
+        exchange.setStatusCode(GATEWAY_TIME_OUT);
+        exchange.endExchange();
+        return true;
+    }
+
+    /**
+     * Rejects the request because the server is overloaded. The request was not processed and the client may send
+     * it again once the given number of seconds elapsed.
+     *
+     * @param exchange the exchange
+     * @param retryAfter the number of seconds the client should wait before sending the request again
+     */
+    public static void sendServiceUnavailable(HttpServerExchange exchange, long retryAfter) {
+        exchange.setStatusCode(SERVICE_UNAVAILABLE);
+        putResponseHeader(exchange, RETRY_AFTER, Long.toString(retryAfter));
+        exchange.endExchange();
+    }
+
 }
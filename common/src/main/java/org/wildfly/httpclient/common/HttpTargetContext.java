@@ -18,7 +18,10 @@
 
 package org.wildfly.httpclient.common;
 
+import static io.undertow.util.StatusCodes.ACCEPTED;
 import static io.undertow.util.StatusCodes.NO_CONTENT;
+import static io.undertow.util.StatusCodes.NOT_MODIFIED;
+import static io.undertow.util.StatusCodes.SERVICE_UNAVAILABLE;
 import static io.undertow.util.Headers.CHUNKED;
 import static io.undertow.util.Headers.COOKIE;
 import static io.undertow.util.Headers.CONTENT_ENCODING;
@@ -26,10 +29,11 @@ import static io.undertow.util.Headers.CONTENT_TYPE;
 import static io.undertow.util.Headers.GZIP;
 import static io.undertow.util.Headers.HOST;
 import static io.undertow.util.Headers.IDENTITY;
+import static io.undertow.util.Headers.KEEP_ALIVE;
+import static io.undertow.util.Headers.RETRY_AFTER;
 import static io.undertow.util.Headers.SET_COOKIE;
 import static io.undertow.util.Headers.TRANSFER_ENCODING;
 import static org.wildfly.httpclient.common.ByteInputs.byteInputOf;
-import static org.wildfly.httpclient.common.HeadersHelper.addRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.containsRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.getRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.getResponseHeader;
@@ -42,6 +46,7 @@ import io.undertow.client.ClientRequest;
 import io.undertow.client.ClientResponse;
 import io.undertow.server.handlers.Cookie;
 import io.undertow.util.AbstractAttachable;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.Cookies;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Methods;
@@ -49,9 +54,11 @@ import org.jboss.marshalling.Unmarshaller;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
 import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.xnio.ChannelListener;
 import org.xnio.ChannelListeners;
 import org.xnio.IoUtils;
+import org.xnio.XnioIoThread;
 import org.xnio.channels.StreamSourceChannel;
 
 import javax.net.ssl.SSLContext;
@@ -64,11 +71,16 @@ import java.net.URI;
 import java.security.AccessController;
 import java.security.GeneralSecurityException;
 import java.security.PrivilegedAction;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -90,6 +102,32 @@ public class HttpTargetContext extends AbstractAttachable {
     private static final String EXCEPTION_TYPE = "application/x-wf-jbmar-exception";
 
     private static final String JSESSIONID = "JSESSIONID";
+    private static final int OVERLOAD_MAX_RETRIES = Integer.parseInt(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.overload.max-retries", "3"));
+    private static final long OVERLOAD_MAX_RETRY_DELAY = Long.parseLong(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.overload.max-retry-delay", "10000"));
+
+    /**
+     * Marks the request as idempotent. Idempotent requests failed on stale pooled connection are sent again even if
+     * they may have reached the server already. Only {@code GET} and {@code HEAD} requests are considered idempotent
+     * without it, protocols use other methods for operations that are not.
+     */
+    public static final AttachmentKey<Boolean> IDEMPOTENT = AttachmentKey.create(Boolean.class);
+    /**
+     * Priority of the request while waiting for a pooled connection, {@link RequestPriority#NORMAL} if not set.
+     */
+    public static final AttachmentKey<RequestPriority> PRIORITY = AttachmentKey.create(RequestPriority.class);
+    /**
+     * Marks request the server may hold for long before responding, e.g. waiting for updates. Such requests
+     * do not tell anything about server load, so they are left out of adaptive limit samples.
+     */
+    public static final AttachmentKey<Boolean> LONG_POLL = AttachmentKey.create(Boolean.class);
+    /**
+     * Notified of the final response to the request before it is handed over to the result or failure handler,
+     * useful to inspect response headers regardless of the outcome.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static final AttachmentKey<Consumer<ClientResponse>> RESPONSE_LISTENER = (AttachmentKey) AttachmentKey.create(Consumer.class);
+    private static final AttachmentKey<Long> DEADLINE = AttachmentKey.create(Long.class);
+    private static final AttachmentKey<Integer> OVERLOAD_RETRIES = AttachmentKey.create(Integer.class);
 
     private final HttpConnectionPool connectionPool;
     private final boolean eagerlyAcquireAffinity;
@@ -99,7 +137,9 @@ public class HttpTargetContext extends AbstractAttachable {
     private final AuthenticationContext initAuthenticationContext;
 
     private final AtomicBoolean affinityRequestSent = new AtomicBoolean();
+    private volatile boolean affinityClaimUnsupported;
     private final HttpMarshallerFactoryProvider httpMarshallerFactoryProvider;
+    private List<Bulkhead> bulkheads = Collections.emptyList();
 
     private static ClassLoader getContextClassLoader() {
         if(System.getSecurityManager() == null) {
@@ -168,13 +208,46 @@ public class HttpTargetContext extends AbstractAttachable {
 
     public void sendRequest(ClientRequest request, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent) {
         final ClassLoader tccl = getContextClassLoader();
-        connectionPool.getConnection(connection -> sendRequestInternal(connection, request, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, false, sslContext, tccl), failureHandler::handleFailure, false, sslContext);
+        connectionPool.getConnection(connection -> sendRequestInternal(connection, request, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, false, sslContext, tccl), failureHandler::handleFailure, false, sslContext, priorityOf(request));
+    }
+
+    /**
+     * Sets the time in milliseconds the caller is going to wait for the response to the request. The time remaining
+     * when the request is actually sent is passed to the server, which drops the request once the caller gave up.
+     * The request is not sent at all if the time elapses while waiting for a connection.
+     *
+     * @param request the request
+     * @param timeout the timeout in milliseconds, no deadline is set if not positive
+     */
+    public static void setTimeout(final ClientRequest request, final long timeout) {
+        if (timeout > 0) {
+            request.putAttachment(DEADLINE, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+        }
+    }
+
+    private static boolean isNoContent(final int responseCode) {
+        // 304 responses carry no body either, the cached representation is valid
+        // 202 responses only acknowledge the request, its outcome is delivered separately
+        return responseCode == NO_CONTENT || responseCode == NOT_MODIFIED || responseCode == ACCEPTED;
     }
 
     private void sendRequestInternal(final HttpConnectionPool.ConnectionHandle connection, final ClientRequest request, AuthenticationConfiguration authenticationConfiguration, HttpMarshaller httpMarshaller, HttpResultHandler httpResultHandler, HttpFailureHandler failureHandler, ContentType expectedResponse, Runnable completedTask, boolean allowNoContent, boolean retry, SSLContext sslContext, ClassLoader classLoader) {
+        final Long deadline = request.getAttachment(DEADLINE);
+        if (deadline != null) {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                connection.done(false);
+                failureHandler.handleFailure(HttpClientMessages.MESSAGES.requestTimedOut());
+                return;
+            }
+            putRequestHeader(request, HttpServerHelper.DEADLINE, Long.toString(remaining));
+        }
         if (sessionId != null) {
-            addRequestHeader(request, COOKIE, JSESSIONID + "=" + sessionId);
+            putRequestHeader(request, COOKIE, JSESSIONID + "=" + sessionId);
         }
+        final AtomicBoolean attemptFailed = new AtomicBoolean();
+        final Runnable resend = () -> connectionPool.getConnection(c -> sendRequestInternal(c, request, authenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler,
+                expectedResponse, completedTask, allowNoContent, retry, sslContext, classLoader), failureHandler::handleFailure, false, sslContext, priorityOf(request));
         try {
             if (!containsRequestHeader(request, HOST)) {
                 String host;
@@ -197,7 +270,8 @@ public class HttpTargetContext extends AbstractAttachable {
             if (containsRequestHeader(request, CONTENT_TYPE)) {
                 putRequestHeader(request, TRANSFER_ENCODING, CHUNKED);
             }
-            final boolean authAdded = retry || connection.getAuthenticationContext().prepareRequest(connection.getUri(), request, authenticationConfiguration);
+            final PoolAuthenticationContext poolAuthenticationContext = connectionPool.getAuthenticationContext(finalAuthenticationConfiguration);
+            final boolean authAdded = retry || poolAuthenticationContext.prepareRequest(connection.getUri(), request, authenticationConfiguration);
             connection.sendRequest(request, new ClientCallback<ClientExchange>() {
                 @Override
                 public void completed(ClientExchange result) {
@@ -206,23 +280,24 @@ public class HttpTargetContext extends AbstractAttachable {
                         public void completed(ClientExchange result) {
                             connection.getConnection().getWorker().execute(() -> {
                                 ClientResponse response = result.getResponse();
-                                if (!authAdded || connection.getAuthenticationContext().isStale(result)) {
+                                connection.setKeepAliveTimeout(parseKeepAliveTimeout(response));
+                                if (!authAdded || poolAuthenticationContext.isStale(result)) {
                                     handleSessionAffinity(request, response);
-                                    if (connection.getAuthenticationContext().handleResponse(response)) {
+                                    if (poolAuthenticationContext.handleResponse(response)) {
                                         URI uri = connection.getUri();
                                         connection.done(false);
                                         final AtomicBoolean done = new AtomicBoolean();
                                         ChannelListener<StreamSourceChannel> listener = ChannelListeners.drainListener(Long.MAX_VALUE, channel -> {
                                             done.set(true);
                                             connectionPool.getConnection((connection) -> {
-                                                if (connection.getAuthenticationContext().prepareRequest(uri, request, finalAuthenticationConfiguration)) {
+                                                if (poolAuthenticationContext.prepareRequest(uri, request, finalAuthenticationConfiguration)) {
                                                     //retry the invocation
                                                     sendRequestInternal(connection, request, finalAuthenticationConfiguration, httpMarshaller, httpResultHandler, failureHandler, expectedResponse, completedTask, allowNoContent, true, finalSslContext, classLoader);
                                                 } else {
                                                     failureHandler.handleFailure(HttpClientMessages.MESSAGES.authenticationFailed());
                                                     connection.done(true);
                                                 }
-                                            }, failureHandler::handleFailure, false, finalSslContext);
+                                            }, failureHandler::handleFailure, false, finalSslContext, priorityOf(request));
 
                                         }, (channel, exception) -> failureHandler.handleFailure(exception));
                                         listener.handleEvent(result.getResponseChannel());
@@ -233,12 +308,27 @@ public class HttpTargetContext extends AbstractAttachable {
                                         return;
                                     }
                                 }
+                                if (response.getResponseCode() == SERVICE_UNAVAILABLE) {
+                                    final long delay = getOverloadRetryDelay(request, response);
+                                    if (delay >= 0) {
+                                        HttpClientMessages.MESSAGES.debugf("Server is overloaded, sending request %s again in %d ms", request.getPath(), delay);
+                                        final XnioIoThread ioThread = connection.getConnection().getIoThread();
+                                        IoUtils.safeClose(new WildflyClientInputStream(result.getConnection().getBufferPool(), result.getResponseChannel()));
+                                        connection.done(false);
+                                        ioThread.executeAfter(resend, delay, TimeUnit.MILLISECONDS);
+                                        return;
+                                    }
+                                }
 
+                                final Consumer<ClientResponse> responseListener = request.getAttachment(RESPONSE_LISTENER);
+                                if (responseListener != null) {
+                                    responseListener.accept(response);
+                                }
                                 ContentType type = ContentType.parse(getResponseHeader(response, CONTENT_TYPE));
                                 final boolean ok;
                                 final boolean isException;
                                 if (type == null) {
-                                    ok = expectedResponse == null || (allowNoContent && response.getResponseCode() == NO_CONTENT);
+                                    ok = expectedResponse == null || (allowNoContent && isNoContent(response.getResponseCode()));
                                     isException = false;
                                 } else {
                                     if (type.getType().equals(EXCEPTION_TYPE)) {
@@ -311,7 +401,7 @@ public class HttpTargetContext extends AbstractAttachable {
                                                 }
                                                 connection.done(false);
                                             };
-                                            if (response.getResponseCode() == NO_CONTENT) {
+                                            if (isNoContent(response.getResponseCode())) {
                                                 IoUtils.safeClose(in);
                                                 httpResultHandler.handleResult(null, response, doneCallback);
                                             } else {
@@ -348,11 +438,7 @@ public class HttpTargetContext extends AbstractAttachable {
 
                         @Override
                         public void failed(IOException e) {
-                            try {
-                                failureHandler.handleFailure(e);
-                            } finally {
-                                connection.done(true);
-                            }
+                            handleAttemptFailure(connection, request, attemptFailed, e, true, resend, failureHandler);
                         }
                     });
 
@@ -375,11 +461,7 @@ public class HttpTargetContext extends AbstractAttachable {
                                 httpMarshaller.marshall(compress ? new GZIPOutputStream(outputStream) : outputStream);
 
                             } catch (Exception e) {
-                                try {
-                                    failureHandler.handleFailure(e);
-                                } finally {
-                                    connection.done(true);
-                                }
+                                handleAttemptFailure(connection, request, attemptFailed, e, true, resend, failureHandler);
                             }
                         });
                     }
@@ -387,11 +469,7 @@ public class HttpTargetContext extends AbstractAttachable {
 
                 @Override
                 public void failed(IOException e) {
-                    try {
-                        failureHandler.handleFailure(e);
-                    } finally {
-                        connection.done(true);
-                    }
+                    handleAttemptFailure(connection, request, attemptFailed, e, false, resend, failureHandler);
                 }
             });
         } catch (Throwable e) {
@@ -403,6 +481,105 @@ public class HttpTargetContext extends AbstractAttachable {
         }
     }
 
+    /**
+     * Handles I/O failure of single request attempt. Pooled connection may have been closed by the server
+     * just before it was reused. Nothing got processed by the server in such case if the request was not sent
+     * yet, or the request can be safely repeated if it is idempotent, so it is sent again on another connection.
+     * Otherwise the failure is reported to the caller.
+     */
+    private void handleAttemptFailure(final HttpConnectionPool.ConnectionHandle connection, final ClientRequest request, final AtomicBoolean attemptFailed,
+                                      final Throwable e, final boolean requestSent, final Runnable resend, final HttpFailureHandler failureHandler) {
+        if (!attemptFailed.compareAndSet(false, true)) {
+            // both request and response side of this attempt failed, already handled
+            connection.done(true);
+            return;
+        }
+        if (e instanceof IOException && connection.isReused() && !connection.getConnection().isOpen() && (!requestSent || isIdempotent(request))) {
+            HttpClientMessages.MESSAGES.debugf(e, "Request %s failed on stale connection, sending it again", request.getPath());
+            connection.done(true);
+            resend.run();
+            return;
+        }
+        try {
+            failureHandler.handleFailure(e);
+        } finally {
+            connection.done(true);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds to wait before sending request rejected by overloaded server again. Only
+     * rejections carrying {@code Retry-After} header are retried, the server did not process the request in that case.
+     * The delay doubles with each retry and is randomized so that concurrently rejected requests do not come back
+     * at the same moment.
+     *
+     * @return the delay or {@code -1} if the request must not be sent again
+     */
+    private static long getOverloadRetryDelay(final ClientRequest request, final ClientResponse response) {
+        final String retryAfter = getResponseHeader(response, RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        final Integer previousRetries = request.getAttachment(OVERLOAD_RETRIES);
+        final int retries = previousRetries == null ? 0 : previousRetries;
+        if (retries >= OVERLOAD_MAX_RETRIES) {
+            return -1;
+        }
+        long delay;
+        try {
+            delay = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            // HTTP-date form, not sent by our server
+            delay = 1000;
+        }
+        delay = Math.min(delay << Math.min(retries, 16), OVERLOAD_MAX_RETRY_DELAY);
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        final Long deadline = request.getAttachment(DEADLINE);
+        if (deadline != null && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - deadline >= 0) {
+            return -1;
+        }
+        request.putAttachment(OVERLOAD_RETRIES, retries + 1);
+        return delay;
+    }
+
+    private static RequestPriority priorityOf(final ClientRequest request) {
+        final RequestPriority priority = request.getAttachment(PRIORITY);
+        return priority == null ? RequestPriority.NORMAL : priority;
+    }
+
+    private static boolean isIdempotent(final ClientRequest request) {
+        if (Boolean.TRUE.equals(request.getAttachment(IDEMPOTENT))) {
+            return true;
+        }
+        return Methods.GET.equals(request.getMethod()) || Methods.HEAD.equals(request.getMethod());
+    }
+
+    /**
+     * Returns the time in milliseconds the server keeps idle connection open as advertised in {@code Keep-Alive} header,
+     * shortened so that the connection is closed on client side first.
+     *
+     * @return the keep-alive timeout or {@code -1} if not advertised
+     */
+    private static long parseKeepAliveTimeout(final ClientResponse response) {
+        final String keepAlive = getResponseHeader(response, KEEP_ALIVE);
+        if (keepAlive == null) {
+            return -1;
+        }
+        for (String parameter : keepAlive.split(",")) {
+            final int index = parameter.indexOf('=');
+            if (index > 0 && "timeout".equalsIgnoreCase(parameter.substring(0, index).trim())) {
+                try {
+                    final long timeout = Long.parseLong(parameter.substring(index + 1).trim()) * 1000;
+                    return timeout - Math.min(1000, timeout / 2);
+                } catch (NumberFormatException e) {
+                    HttpClientMessages.MESSAGES.debugf("Invalid Keep-Alive header %s", keepAlive);
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
     private void handleSessionAffinity(ClientRequest request, ClientResponse response) {
         //handle session affinity
         HeaderValues cookies = getResponseHeaders(response, SET_COOKIE);
@@ -460,6 +637,26 @@ public class HttpTargetContext extends AbstractAttachable {
         return uri;
     }
 
+    void setBulkheads(List<Bulkhead> bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    /**
+     * Returns the bulkhead limiting concurrent requests to given bean of this target.
+     *
+     * @param beanName the bean name
+     * @param viewClassName the view class name
+     * @return the first configured bulkhead matching the bean, or {@code null} if requests to the bean are not limited
+     */
+    public Bulkhead getBulkhead(String beanName, String viewClassName) {
+        for (Bulkhead bulkhead : bulkheads) {
+            if (bulkhead.matches(beanName, viewClassName)) {
+                return bulkhead;
+            }
+        }
+        return null;
+    }
+
     public void clearSessionId() {
         awaitSessionId(true, null); //to prevent a race make sure we have one before we clear it
         synchronized (this) {
@@ -471,6 +668,32 @@ public class HttpTargetContext extends AbstractAttachable {
         }
     }
 
+    /**
+     * Claims acquisition of session affinity for a request the caller is about to send, saving the dedicated affinity
+     * request. The response to the caller's request is expected to carry the session cookie. Until the returned task
+     * is run, other callers {@linkplain #awaitSessionId(boolean, AuthenticationConfiguration) awaiting} the session id
+     * are blocked. If the response carried no session cookie, as with older servers, the task sends the dedicated
+     * affinity request after all, and no further claims are granted.
+     *
+     * @param authenticationConfiguration the authentication configuration of the dedicated affinity request, if needed
+     * @return task to be run once the response to the caller's request has been processed, or {@code null} if
+     * affinity has already been acquired or is being acquired, or cannot be claimed with this target
+     */
+    public Runnable claimSessionAffinity(final AuthenticationConfiguration authenticationConfiguration) {
+        if (affinityClaimUnsupported || !affinityRequestSent.compareAndSet(false, true)) {
+            return null;
+        }
+        final CountDownLatch latch = sessionAffinityLatch;
+        return () -> {
+            if (sessionId != null) {
+                latch.countDown();
+            } else {
+                affinityClaimUnsupported = true;
+                acquireSessionAffinity(latch, authenticationConfiguration);
+            }
+        };
+    }
+
     public String awaitSessionId(boolean required, AuthenticationConfiguration authConfig) {
         if (required) {
             acquireAffinitiy(authConfig);
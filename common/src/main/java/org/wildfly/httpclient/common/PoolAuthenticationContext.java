@@ -37,12 +37,14 @@ import java.security.PrivilegedAction;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.LongAdder;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.NameCallback;
 import javax.security.auth.callback.PasswordCallback;
 import javax.security.auth.callback.UnsupportedCallbackException;
 
+import org.wildfly.security.auth.callback.CredentialCallback;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
 import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
@@ -57,15 +59,26 @@ import io.undertow.util.HeaderValues;
 import io.undertow.util.HexConverter;
 import io.undertow.util.AttachmentKey;
 import org.wildfly.security.auth.principal.NamePrincipal;
+import org.wildfly.security.credential.BearerTokenCredential;
+import org.wildfly.security.manager.WildFlySecurityManager;
 
 /**
- * Class that holds authentication information for a connection
+ * Class that holds authentication information for a connection pool. The mechanism learned from the first challenge
+ * and the digest nonces received from the target are kept for the lifetime of the pool, so reconnecting does not
+ * cost another challenge round trip. A pool keeps one such state per authentication configuration.
+ * <p>
+ * If the {@code org.wildfly.httpclient.auth.preemptive} system property is set, bearer token or basic credentials
+ * are sent over https with the very first request already, before any challenge was received.
  *
  * @author Stuart Douglas
  */
 class PoolAuthenticationContext {
 
     private static final AttachmentKey<DigestImpl> DIGEST = AttachmentKey.create(DigestImpl.class);
+    private static final AttachmentKey<Boolean> PREEMPTIVE_AUTH = AttachmentKey.create(Boolean.class);
+
+    private static final boolean PREEMPTIVE = Boolean.parseBoolean(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.auth.preemptive", "false"));
 
     private static final AuthenticationContextConfigurationClient AUTH_CONTEXT_CLIENT;
 
@@ -75,10 +88,27 @@ class PoolAuthenticationContext {
 
     private volatile Type current;
 
-    private static final LinkedBlockingDeque<DigestImpl> digestList = new LinkedBlockingDeque<>();
+    private final LinkedBlockingDeque<DigestImpl> digestList = new LinkedBlockingDeque<>();
 
     private static final SecureRandomSessionIdGenerator cnonceGenerator = new SecureRandomSessionIdGenerator();
 
+    private final LongAdder challenges;
+    private final LongAdder staleNonces;
+    private final LongAdder preemptiveRequests;
+
+    PoolAuthenticationContext() {
+        this(new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    /**
+     * Creates new authentication state counting into given counters, which may be shared with other states of the same pool.
+     */
+    PoolAuthenticationContext(final LongAdder challenges, final LongAdder staleNonces, final LongAdder preemptiveRequests) {
+        this.challenges = challenges;
+        this.staleNonces = staleNonces;
+        this.preemptiveRequests = preemptiveRequests;
+    }
+
     boolean handleResponse(ClientResponse response) {
         if (response.getResponseCode() != UNAUTHORIZED) {
             return false;
@@ -87,11 +117,16 @@ class PoolAuthenticationContext {
         if (authenticate == null) {
             return false;
         }
+        challenges.increment();
         String auth = authenticate.toLowerCase(Locale.ENGLISH);
         if (auth.startsWith("basic ")) {
             current = Type.BASIC;
             return true;
         }
+        if (auth.startsWith("bearer ") || auth.equals("bearer")) {
+            current = Type.BEARER;
+            return true;
+        }
         if (auth.startsWith("digest ")) {
             current = Type.DIGEST;
 
@@ -170,7 +205,15 @@ class PoolAuthenticationContext {
     }
 
     boolean prepareRequest(URI uri, ClientRequest request, AuthenticationConfiguration authenticationConfiguration) {
-        if (current == Type.NONE) {
+        request.removeAttachment(PREEMPTIVE_AUTH);
+        Type type = current;
+        if (type == Type.NONE || type == null && !PREEMPTIVE) {
+            return false;
+        }
+        // no challenge received yet, send whatever credentials are configured and learn the mechanism on a 401
+        final boolean preemptive = type == null;
+        if (preemptive && !"https".equals(uri.getScheme())) {
+            // never send credentials in cleartext unless the server asked for them
             return false;
         }
         AuthenticationConfiguration config = authenticationConfiguration;
@@ -179,6 +222,18 @@ class PoolAuthenticationContext {
         }
 
         final CallbackHandler callbackHandler = AUTH_CONTEXT_CLIENT.getCallbackHandler(config);
+        if (preemptive || type == Type.BEARER) {
+            final String token = getBearerToken(callbackHandler);
+            if (token != null) {
+                putRequestHeader(request, AUTHORIZATION, "Bearer " + token);
+                markPreemptive(request, preemptive);
+                return true;
+            }
+            if (!preemptive) {
+                return false;
+            }
+            type = Type.BASIC;
+        }
 
         // TODO: also try credential callback, passing in DIGEST parameters (if any) when DIGEST is in use
         NameCallback nameCallback = new NameCallback("user name");
@@ -197,11 +252,12 @@ class PoolAuthenticationContext {
             return false;
         }
         Principal principal = new NamePrincipal(name);
-        if (current == Type.BASIC) {
+        if (type == Type.BASIC) {
             String challenge = principal.getName() + ":" + new String(password);
             putRequestHeader(request, AUTHORIZATION, "Basic " + FlexBase64.encodeString(challenge.getBytes(StandardCharsets.UTF_8), false));
+            markPreemptive(request, preemptive);
             return true;
-        } else if (current == Type.DIGEST) {
+        } else if (type == Type.DIGEST) {
             DigestImpl current = digestList.poll();
             if (current == null) {
                 return false;
@@ -275,11 +331,33 @@ class PoolAuthenticationContext {
         return false;
     }
 
+    private static String getBearerToken(CallbackHandler callbackHandler) {
+        CredentialCallback credentialCallback = new CredentialCallback(BearerTokenCredential.class);
+        try {
+            callbackHandler.handle(new Callback[]{credentialCallback});
+        } catch (IOException | UnsupportedCallbackException e) {
+            return null;
+        }
+        BearerTokenCredential credential = credentialCallback.getCredential(BearerTokenCredential.class);
+        return credential == null ? null : credential.getToken();
+    }
+
+    private void markPreemptive(ClientRequest request, boolean preemptive) {
+        if (preemptive) {
+            request.putAttachment(PREEMPTIVE_AUTH, Boolean.TRUE);
+            preemptiveRequests.increment();
+        }
+    }
+
     boolean isStale(ClientExchange exchange) {
+        ClientResponse response = exchange.getResponse();
+        if (exchange.getRequest().getAttachment(PREEMPTIVE_AUTH) != null) {
+            // preemptive credentials were refused, retry with the mechanism from the challenge
+            return response.getResponseCode() == UNAUTHORIZED;
+        }
         if (current != Type.DIGEST) {
             return false;
         }
-        ClientResponse response = exchange.getResponse();
         if (response.getResponseCode() != UNAUTHORIZED) {
             DigestImpl digest = exchange.getRequest().getAttachment(DIGEST);
             if(digest != null) {
@@ -310,15 +388,38 @@ class PoolAuthenticationContext {
             }
             Map<DigestWWWAuthenticateToken, String> result = DigestWWWAuthenticateToken.parseHeader(authenticate.substring(7));
             if (result.containsKey(DigestWWWAuthenticateToken.STALE)) {
+                staleNonces.increment();
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Returns the number of authentication challenges received from the target.
+     */
+    long getChallenges() {
+        return challenges.sum();
+    }
+
+    /**
+     * Returns the number of requests rejected because of a stale digest nonce.
+     */
+    long getStaleNonces() {
+        return staleNonces.sum();
+    }
+
+    /**
+     * Returns the number of requests sent with credentials before any challenge was received.
+     */
+    long getPreemptiveRequests() {
+        return preemptiveRequests.sum();
+    }
+
     enum Type {
         NONE,
         BASIC,
+        BEARER,
         DIGEST
     }
 
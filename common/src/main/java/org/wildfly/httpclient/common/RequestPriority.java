@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+/**
+ * Priority of a request waiting for a pooled connection. Requests of higher priority take connections released
+ * to the pool first, requests waiting for too long are served regardless of their priority.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public enum RequestPriority {
+
+    /**
+     * Requests holding resources on the server until they complete, such as transaction completion.
+     */
+    HIGH,
+    /**
+     * Regular requests, such as invocations.
+     */
+    NORMAL,
+    /**
+     * Requests nobody actively waits for, such as discovery or recovery.
+     */
+    LOW,
+
+}
@@ -29,9 +29,12 @@ import org.xnio.XnioWorker;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -60,6 +63,10 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
      * TODO: figure out some way to remove these when all the connections are closed, it has the potential to be very racey
      */
     private final Map<URI, HttpTargetContext> uriConnectionPools = new ConcurrentHashMap<>();
+    /**
+     * Connection pools indexed by origin, target URIs differing only in path share connections to their server.
+     */
+    private final Map<URI, HttpConnectionPool> originConnectionPools = new ConcurrentHashMap<>();
 
     private final ConfigSection[] targets;
 
@@ -73,11 +80,12 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
     private final boolean tcpNoDelay;
     private final HttpConnectionPoolFactory httpConnectionPoolFactory;
     private final HttpMarshallerFactoryProvider httpMarshallerFactoryProvider;
+    private final XnioSslRegistry sslRegistry;
 
     WildflyHttpContext(ConfigSection[] targets, int maxConnections, int maxStreamsPerConnection, long idleTimeout,
                        boolean eagerlyAcquireAffinity, XnioWorker worker, ByteBufferPool pool, boolean enableHttp2,
                        boolean tcpNoDelay, HttpConnectionPoolFactory httpConnectionPoolFactory,
-                       HttpMarshallerFactoryProvider httpMarshallerFactoryProvider) {
+                       HttpMarshallerFactoryProvider httpMarshallerFactoryProvider, XnioSslRegistry sslRegistry) {
         this.targets = targets;
         this.maxConnections = maxConnections;
         this.maxStreamsPerConnection = maxStreamsPerConnection;
@@ -89,6 +97,7 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
         this.tcpNoDelay = tcpNoDelay;
         this.httpConnectionPoolFactory = httpConnectionPoolFactory;
         this.httpMarshallerFactoryProvider = httpMarshallerFactoryProvider;
+        this.sslRegistry = sslRegistry;
     }
 
     public static WildflyHttpContext getCurrent() {
@@ -122,16 +131,47 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             if (context != null) {
                 return context;
             }
-            HttpConnectionPool pool = httpConnectionPoolFactory.createHttpConnectionPool(
-                    maxConnections, maxStreamsPerConnection, worker, this.pool,
-                OptionMap.create(UndertowOptions.ENABLE_HTTP2, enableHttp2,
-                    Options.TCP_NODELAY, tcpNoDelay), new HostPool(uri), idleTimeout);
+            final URI origin = originOf(uri);
+            HttpConnectionPool pool = originConnectionPools.get(origin);
+            if (pool == null) {
+                for (ConfigSection target : targets) {
+                    if (origin.equals(originOf(target.getUri()))) {
+                        pool = target.getHttpTargetContext().getConnectionPool();
+                        break;
+                    }
+                }
+                if (pool == null) {
+                    pool = httpConnectionPoolFactory.createHttpConnectionPool(
+                            maxConnections, maxStreamsPerConnection, worker, this.pool,
+                        OptionMap.create(UndertowOptions.ENABLE_HTTP2, enableHttp2,
+                            Options.TCP_NODELAY, tcpNoDelay), new HostPool(uri), idleTimeout);
+                    pool.setSslRegistry(sslRegistry);
+                }
+                originConnectionPools.put(origin, pool);
+            }
             uriConnectionPools.put(uri, context = new HttpTargetContext(pool, eagerlyAcquireAffinity, uri, httpMarshallerFactoryProvider));
             context.init();
             return context;
         }
     }
 
+    /**
+     * Returns the origin of given URI, i.e. its scheme, host and port with the default port made explicit.
+     */
+    static URI originOf(final URI uri) {
+        final String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ENGLISH);
+        final String host = uri.getHost() == null ? null : uri.getHost().toLowerCase(Locale.ENGLISH);
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equals(scheme) ? 443 : "http".equals(scheme) ? 80 : -1;
+        }
+        try {
+            return new URI(scheme, null, host, port, null, null, null);
+        } catch (URISyntaxException e) {
+            return uri;
+        }
+    }
+
     static class ConfigSection {
         private final HttpTargetContext httpTargetContext;
         private final URI uri;
@@ -187,9 +227,11 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
                 httpConnectionPoolFactory = HttpConnectionPoolFactory.getDefault();
                 httpMarshallerFactoryProvider = HttpMarshallerFactoryProvider.getDefaultHttpMarshallerFactoryProvider();
             }
+            final XnioSslRegistry sslRegistry = new XnioSslRegistry();
+            // targets of the same origin share the connection pool, and the pool settings, of the first of them
+            final Map<URI, HttpConnectionPool> originConnectionPools = new HashMap<>();
             for (int i = 0; i < this.targets.size(); ++i) {
                 HttpConfigBuilder sb = this.targets.get(i);
-                HostPool hp = new HostPool(sb.getUri());
                 boolean eager = this.eagerlyAcquireSession == null ? false : this.eagerlyAcquireSession;
                 if (sb.getEagerlyAcquireSession() != null && sb.getEagerlyAcquireSession()) {
                     eager = true;
@@ -198,19 +240,27 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
                 if(sb.getEnableHttp2() != null) {
                     http2 = sb.getEnableHttp2();
                 }
-                ConfigSection connection = new ConfigSection(new HttpTargetContext(
-                    httpConnectionPoolFactory.createHttpConnectionPool(sb.getMaxConnections() > 0 ? sb.getMaxConnections() : maxConnections, sb.getMaxStreamsPerConnection() > 0 ? sb.getMaxStreamsPerConnection() : maxStreamsPerConnection, worker, pool,
-                        OptionMap.create(
-                            UndertowOptions.ENABLE_HTTP2, http2,
-                            Options.TCP_NODELAY, tcpNoDelay),
-                        hp, sb.getIdleTimeout() > 0 ? sb.getIdleTimeout() : idleTimout), eager, sb.getUri(), httpMarshallerFactoryProvider),
-                    sb.getUri());
+                final URI origin = originOf(sb.getUri());
+                HttpConnectionPool connectionPool = originConnectionPools.get(origin);
+                if (connectionPool == null) {
+                    HostPool hp = new HostPool(sb.getUri());
+                    connectionPool = httpConnectionPoolFactory.createHttpConnectionPool(sb.getMaxConnections() > 0 ? sb.getMaxConnections() : maxConnections, sb.getMaxStreamsPerConnection() > 0 ? sb.getMaxStreamsPerConnection() : maxStreamsPerConnection, worker, pool,
+                            OptionMap.create(
+                                UndertowOptions.ENABLE_HTTP2, http2,
+                                Options.TCP_NODELAY, tcpNoDelay),
+                            hp, sb.getIdleTimeout() > 0 ? sb.getIdleTimeout() : idleTimout);
+                    connectionPool.setSslRegistry(sslRegistry);
+                    originConnectionPools.put(origin, connectionPool);
+                }
+                HttpTargetContext targetContext = new HttpTargetContext(connectionPool, eager, sb.getUri(), httpMarshallerFactoryProvider);
+                targetContext.setBulkheads(List.copyOf(sb.getBulkheads()));
+                ConfigSection connection = new ConfigSection(targetContext, sb.getUri());
                 connections[i] = connection;
             }
             return new WildflyHttpContext(connections, maxConnections, maxStreamsPerConnection, idleTimeout,
                     eagerlyAcquireSession == null ? false : eagerlyAcquireSession, worker, pool,
                     enableHttp2 == null ? true : enableHttp2, tcpNoDelay,
-                    httpConnectionPoolFactory, httpMarshallerFactoryProvider);
+                    httpConnectionPoolFactory, httpMarshallerFactoryProvider, sslRegistry);
         }
 
         void setDefaultBindAddress(InetSocketAddress defaultBindAddress) {
@@ -298,6 +348,7 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             private Boolean eagerlyAcquireSession;
             private Boolean enableHttp2;
             private Boolean tcpNoDelay = false;
+            private final List<Bulkhead> bulkheads = new ArrayList<>();
 
             HttpConfigBuilder(URI uri) {
                 this.uri = uri;
@@ -362,6 +413,14 @@ public class WildflyHttpContext implements Contextual<WildflyHttpContext> {
             public Boolean getTcpNoDelay() {
                 return tcpNoDelay;
             }
+
+            void addBulkhead(String beanName, String viewClassName, int maxConcurrent, int maxQueued) {
+                bulkheads.add(new Bulkhead(beanName, viewClassName, maxConcurrent, maxQueued));
+            }
+
+            List<Bulkhead> getBulkheads() {
+                return bulkheads;
+            }
         }
     }
 
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import io.undertow.protocols.ssl.UndertowXnioSsl;
+import org.xnio.OptionMap;
+import org.xnio.Xnio;
+
+import javax.net.ssl.SSLContext;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SSL instances shared by the connection pools of one {@link WildflyHttpContext}. TLS sessions are cached by the
+ * SSL context, so reusing one instance per SSL context lets new connections to the same host resume the session
+ * instead of performing a full handshake. The registry lives as long as its HTTP context does.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class XnioSslRegistry {
+
+    private final Map<SSLContext, UndertowXnioSsl> instances = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the SSL instance for given SSL context, creating it on first use.
+     *
+     * @param xnio the XNIO instance
+     * @param sslContext the SSL context
+     * @return the shared SSL instance
+     */
+    UndertowXnioSsl get(final Xnio xnio, final SSLContext sslContext) {
+        return instances.computeIfAbsent(sslContext, context -> new UndertowXnioSsl(xnio, OptionMap.EMPTY, context));
+    }
+}
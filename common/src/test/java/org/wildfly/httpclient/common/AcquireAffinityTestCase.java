@@ -44,4 +44,19 @@ public class AcquireAffinityTestCase {
         Assert.assertEquals("foo", context.awaitSessionId(true, null));
 
     }
+
+    @Test
+    public void testClaimedAffinityWithoutCookie() throws URISyntaxException {
+        HTTPTestServer.registerServicesHandler("common/v1/affinity", exchange -> exchange.setResponseCookie(new CookieImpl("JSESSIONID", "bar")));
+
+        HttpTargetContext context = WildflyHttpContext.getCurrent().getTargetContext(new URI(HTTPTestServer.getDefaultServerURL()));
+        context.clearSessionId();
+        Runnable claim = context.claimSessionAffinity(null);
+        Assert.assertNotNull(claim);
+        // the claimed response carried no cookie, the affinity request is sent instead
+        claim.run();
+        Assert.assertEquals("bar", context.awaitSessionId(false, null));
+        context.clearSessionId();
+        Assert.assertNull(context.claimSessionAffinity(null));
+    }
 }
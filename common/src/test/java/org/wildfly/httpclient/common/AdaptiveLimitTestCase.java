@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class AdaptiveLimitTestCase {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testGrowsUpToMaximum() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 10);
+        for (int i = 0; i < 100; i++) {
+            limit.sample(RTT, limit.getLimit());
+        }
+        Assert.assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void testDoesNotGrowWhenUnused() {
+        AdaptiveLimit limit = new AdaptiveLimit(4, 10);
+        for (int i = 0; i < 100; i++) {
+            limit.sample(RTT, 1);
+        }
+        Assert.assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void testShrinksWhenLatencyGrows() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 10);
+        limit.sample(RTT, 10);
+        for (int i = 0; i < 100; i++) {
+            limit.sample(RTT * 10, 10);
+        }
+        // settles once the estimated number of requests queued on the server is acceptable
+        Assert.assertTrue(limit.getLimit() <= 6);
+    }
+}
@@ -19,6 +19,10 @@
 package org.wildfly.httpclient.common;
 
 import io.undertow.client.ClientRequest;
+import io.undertow.client.ClientResponse;
+import io.undertow.util.Headers;
+import io.undertow.util.Protocols;
+import io.undertow.util.StatusCodes;
 import java.net.URI;
 import java.net.URISyntaxException;
 import org.junit.Assert;
@@ -73,4 +77,21 @@ public class PoolAuthenticationContextTestCase {
                 PoolAuthenticationContext.createTargetUri(new URI("http", "::1", null, null), req));
     }
 
+    @Test
+    public void testHandleChallenge() {
+        PoolAuthenticationContext context = new PoolAuthenticationContext();
+        ClientResponse ok = new ClientResponse(StatusCodes.OK, "OK", Protocols.HTTP_1_1);
+        Assert.assertFalse(context.handleResponse(ok));
+
+        ClientResponse bearer = new ClientResponse(StatusCodes.UNAUTHORIZED, "Unauthorized", Protocols.HTTP_1_1);
+        bearer.getResponseHeaders().put(Headers.WWW_AUTHENTICATE, "Bearer realm=\"test\"");
+        Assert.assertTrue(context.handleResponse(bearer));
+
+        ClientResponse basic = new ClientResponse(StatusCodes.UNAUTHORIZED, "Unauthorized", Protocols.HTTP_1_1);
+        basic.getResponseHeaders().put(Headers.WWW_AUTHENTICATE, "Basic realm=\"test\"");
+        Assert.assertTrue(context.handleResponse(basic));
+        Assert.assertEquals(2, context.getChallenges());
+        Assert.assertEquals(0, context.getPreemptiveRequests());
+    }
+
 }
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.common;
+
+import static io.undertow.util.Headers.CONTENT_LENGTH;
+import static org.wildfly.httpclient.common.HeadersHelper.putRequestHeader;
+
+import io.undertow.client.ClientRequest;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests requests failed because the server closed the pooled connection they were sent on.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+@RunWith(HTTPTestServer.class)
+public class StaleConnectionTestCase {
+
+    private static final String PATH = "/stale-connection";
+
+    private final AtomicInteger received = new AtomicInteger();
+    private HttpConnectionPool pool;
+    private HttpTargetContext targetContext;
+
+    @Before
+    public void before() throws Exception {
+        HTTPTestServer.registerPathHandler(PATH, exchange -> {
+            if (received.incrementAndGet() == 2) {
+                // the request reached the server, but the connection is gone before the response is written
+                IoUtils.safeClose(exchange.getConnection());
+            }
+        });
+        final URI uri = new URI(HTTPTestServer.getDefaultRootServerURL());
+        // single connection, so that the second request is always sent on the connection used by the first one
+        pool = new HttpConnectionPool(1, 1, HTTPTestServer.getWorker(), HTTPTestServer.getBufferPool(), OptionMap.EMPTY, new HostPool(uri), 60000);
+        targetContext = new HttpTargetContext(pool, false, uri, EENamespaceInteroperability.getHttpMarshallerFactoryProvider());
+    }
+
+    @After
+    public void after() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testGetSentAgain() throws Exception {
+        Assert.assertNull(send(Methods.GET, false));
+        Assert.assertNull(send(Methods.GET, false));
+        Assert.assertEquals(3, received.get());
+    }
+
+    @Test
+    public void testIdempotentSentAgain() throws Exception {
+        Assert.assertNull(send(Methods.PUT, false));
+        Assert.assertNull(send(Methods.PUT, true));
+        Assert.assertEquals(3, received.get());
+    }
+
+    @Test
+    public void testPutNotSentAgain() throws Exception {
+        Assert.assertNull(send(Methods.PUT, false));
+        // the server may have processed the request already, sending it again could repeat its effect
+        Assert.assertNotNull(send(Methods.PUT, false));
+        Assert.assertEquals(2, received.get());
+    }
+
+    /**
+     * @return the failure reported for the request, {@code null} if it succeeded
+     */
+    private Throwable send(final HttpString method, final boolean idempotent) throws Exception {
+        final ClientRequest request = new ClientRequest().setMethod(method).setPath(PATH);
+        putRequestHeader(request, CONTENT_LENGTH, "0");
+        ClientAuthUtils.setupBasicAuth(request, new URI(HTTPTestServer.getDefaultRootServerURL() + PATH));
+        if (idempotent) {
+            request.putAttachment(HttpTargetContext.IDEMPOTENT, Boolean.TRUE);
+        }
+        final CompletableFuture<Throwable> outcome = new CompletableFuture<>();
+        targetContext.sendRequest(request, null, AuthenticationConfiguration.empty(), null,
+                (result, response, doneCallback) -> {
+                    IoUtils.safeClose(doneCallback);
+                    outcome.complete(null);
+                }, outcome::complete, null, null, true);
+        return outcome.get(10, TimeUnit.SECONDS);
+    }
+
+}
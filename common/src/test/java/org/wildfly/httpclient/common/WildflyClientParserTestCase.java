@@ -48,6 +48,19 @@ public class WildflyClientParserTestCase {
         Assert.assertTrue(context.getTcpNoDelay());
     }
 
+    @Test
+    public void testXMLParsing12() throws URISyntaxException, ConfigXMLParseException {
+        WildflyHttpContext.Builder builder = HttpClientXmlParser.parseConfig(getClass().getClassLoader().getResource("ejb-client-1.2.xml").toURI());
+        testValues10(builder);
+
+        WildflyHttpContext.Builder.HttpConfigBuilder context = builder.getTargets().get(0);
+        Assert.assertTrue(context.getTcpNoDelay());
+        Assert.assertEquals(2, context.getBulkheads().size());
+        Assert.assertTrue(context.getBulkheads().get(0).matches("BatchBean", "org.acme.BatchRemote"));
+        Assert.assertFalse(context.getBulkheads().get(0).matches("ReportBean", "org.acme.ReportRemote"));
+        Assert.assertTrue(context.getBulkheads().get(1).matches("ReportBean", "org.acme.ReportRemote"));
+    }
+
     private static void testValues10(WildflyHttpContext.Builder builder) throws URISyntaxException {
         Assert.assertEquals(InetSocketAddress.createUnresolved("127.0.0.1", 3456), builder.getDefaultBindAddress());
 
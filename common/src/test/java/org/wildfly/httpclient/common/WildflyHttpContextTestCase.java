@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.common;
+
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class WildflyHttpContextTestCase {
+
+    @Test
+    public void testOriginOf() {
+        Assert.assertEquals(URI.create("http://localhost:80"), WildflyHttpContext.originOf(URI.create("http://localhost/wildfly-services")));
+        Assert.assertEquals(URI.create("https://localhost:443"), WildflyHttpContext.originOf(URI.create("HTTPS://LocalHost/wildfly-services")));
+        Assert.assertEquals(WildflyHttpContext.originOf(URI.create("http://localhost:8080/wildfly-services")),
+                WildflyHttpContext.originOf(URI.create("http://localhost:8080/naming")));
+        Assert.assertNotEquals(WildflyHttpContext.originOf(URI.create("http://localhost:8080/wildfly-services")),
+                WildflyHttpContext.originOf(URI.create("http://localhost:8180/wildfly-services")));
+    }
+
+    @Test
+    public void testConfiguredTargetsShareConnectionPoolByOrigin() {
+        final WildflyHttpContext.Builder builder = new WildflyHttpContext.Builder();
+        builder.addConfig(URI.create("http://localhost:8080/wildfly-services"));
+        builder.addConfig(URI.create("http://LOCALHOST:8080/other-services"));
+        builder.addConfig(URI.create("http://localhost:8180/wildfly-services"));
+        final WildflyHttpContext context = builder.build();
+        final HttpConnectionPool first = context.getTargetContext(URI.create("http://localhost:8080/wildfly-services")).getConnectionPool();
+        Assert.assertSame(first, context.getTargetContext(URI.create("http://LOCALHOST:8080/other-services")).getConnectionPool());
+        Assert.assertNotSame(first, context.getTargetContext(URI.create("http://localhost:8180/wildfly-services")).getConnectionPool());
+    }
+
+    @Test
+    public void testAuthenticationStatePerConfiguration() {
+        final WildflyHttpContext.Builder builder = new WildflyHttpContext.Builder();
+        builder.addConfig(URI.create("http://localhost:8080/wildfly-services"));
+        final HttpConnectionPool pool = builder.build().getTargetContext(URI.create("http://localhost:8080/wildfly-services")).getConnectionPool();
+        final AuthenticationConfiguration alice = AuthenticationConfiguration.empty().useName("alice");
+        final AuthenticationConfiguration bob = AuthenticationConfiguration.empty().useName("bob");
+        Assert.assertSame(pool.getAuthenticationContext(alice), pool.getAuthenticationContext(alice));
+        Assert.assertNotSame(pool.getAuthenticationContext(alice), pool.getAuthenticationContext(bob));
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server side admission control of EJB invocations. At most {@code maxConcurrent} invocations proceed at the same time,
+ * at most {@code maxQueued} further invocations wait for their turn and the remaining ones are rejected. Limits apply
+ * to the whole server, to each deployment or to each bean, depending on the {@link Scope}.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class AdmissionController {
+
+    enum Scope {
+        SERVER,
+        DEPLOYMENT,
+        BEAN,
+    }
+
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Scope scope;
+
+    /**
+     * Creates new admission controller.
+     * @param maxConcurrent maximum number of concurrent invocations, zero or less disables admission control
+     * @param maxQueued maximum number of invocations waiting for their turn
+     * @param scope the scope limits apply to
+     */
+    AdmissionController(final int maxConcurrent, final int maxQueued, final Scope scope) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.scope = scope;
+    }
+
+    boolean isEnabled() {
+        return maxConcurrent > 0;
+    }
+
+    /**
+     * Returns the limiter guarding invocations of given bean.
+     */
+    Limiter limiterOf(final String app, final String module, final String distinct, final String bean) {
+        final String key;
+        switch (scope) {
+            case DEPLOYMENT:
+                key = app + '/' + module + '/' + distinct;
+                break;
+            case BEAN:
+                key = app + '/' + module + '/' + distinct + '/' + bean;
+                break;
+            default:
+                key = "";
+        }
+        return limiters.computeIfAbsent(key, k -> new Limiter());
+    }
+
+    final class Limiter {
+        private final Queue<Runnable> queued = new ArrayDeque<>();
+        private int running;
+
+        /**
+         * Runs the task if the concurrency limit was not reached yet, otherwise queues it. Every run task must
+         * be followed by {@link #release()} once its invocation completes.
+         *
+         * @param task the task proceeding with the invocation
+         * @return {@code false} if the task was rejected because both the concurrency limit and the queue are full
+         */
+        boolean submit(final Runnable task) {
+            synchronized (this) {
+                if (running >= maxConcurrent) {
+                    if (queued.size() >= maxQueued) {
+                        return false;
+                    }
+                    queued.add(task);
+                    return true;
+                }
+                running++;
+            }
+            task.run();
+            return true;
+        }
+
+        /**
+         * Called once an invocation completed, runs the next queued task if any.
+         */
+        void release() {
+            final Runnable next;
+            synchronized (this) {
+                next = queued.poll();
+                if (next == null) {
+                    running--;
+                }
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+
+        synchronized int getRunning() {
+            return running;
+        }
+
+        synchronized int getQueued() {
+            return queued.size();
+        }
+    }
+}
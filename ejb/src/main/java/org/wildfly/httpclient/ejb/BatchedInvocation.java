@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import org.jboss.ejb.client.EJBClientInvocationContext;
+import org.jboss.ejb.client.EJBReceiverInvocationContext;
+
+import java.util.Map;
+
+/**
+ * EJB invocation waiting to be sent as part of an invocation batch.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class BatchedInvocation {
+
+    private final String path;
+    private final TransactionInfo transactionInfo;
+    private final Object[] parameters;
+    private final Map<String, Object> contextData;
+    private final EJBReceiverInvocationContext receiverContext;
+    private final EJBClientInvocationContext clientContext;
+
+    private BatchedInvocation(final String path, final TransactionInfo transactionInfo, final Object[] parameters, final Map<String, Object> contextData,
+                              final EJBReceiverInvocationContext receiverContext, final EJBClientInvocationContext clientContext) {
+        this.path = path;
+        this.transactionInfo = transactionInfo;
+        this.parameters = parameters;
+        this.contextData = contextData;
+        this.receiverContext = receiverContext;
+        this.clientContext = clientContext;
+    }
+
+    /**
+     * Returns the invocation path relative to the invoke operation path.
+     * @return invocation path
+     */
+    String getPath() {
+        return path;
+    }
+
+    TransactionInfo getTransactionInfo() {
+        return transactionInfo;
+    }
+
+    Object[] getParameters() {
+        return parameters;
+    }
+
+    Map<String, Object> getContextData() {
+        return contextData;
+    }
+
+    EJBReceiverInvocationContext getReceiverContext() {
+        return receiverContext;
+    }
+
+    EJBClientInvocationContext getClientContext() {
+        return clientContext;
+    }
+
+    void failed(final Throwable failure) {
+        receiverContext.requestFailed(failure instanceof Exception ? (Exception) failure : new RuntimeException(failure));
+    }
+
+    static BatchedInvocation newInstance(final String path, final TransactionInfo transactionInfo, final Object[] parameters, final Map<String, Object> contextData,
+                                         final EJBReceiverInvocationContext receiverContext, final EJBClientInvocationContext clientContext) {
+        return new BatchedInvocation(path, transactionInfo, parameters, contextData, receiverContext, clientContext);
+    }
+
+}
@@ -20,7 +20,9 @@ package org.wildfly.httpclient.ejb;
 import static org.wildfly.httpclient.common.HeadersHelper.getResponseHeader;
 import static org.wildfly.httpclient.common.ByteInputs.byteInputOf;
 import static org.wildfly.httpclient.common.ByteOutputs.byteOutputOf;
+import static org.wildfly.httpclient.ejb.Constants.EJB_DISCOVERY_VERSION;
 import static org.wildfly.httpclient.ejb.Constants.EJB_SESSION_ID;
+import static org.wildfly.httpclient.ejb.Serializer.deserializeDiscoveryUpdate;
 import static org.wildfly.httpclient.ejb.Serializer.deserializeObject;
 import static org.wildfly.httpclient.ejb.Serializer.deserializeSet;
 import static org.wildfly.httpclient.ejb.Serializer.serializeMap;
@@ -38,17 +40,28 @@ import org.jboss.marshalling.ByteInput;
 import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpTargetContext;
 import org.xnio.IoUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -70,18 +83,32 @@ final class ClientHandlers {
         return new CreateSessionHttpMarshaller(marshaller, txnInfo);
     }
 
+    static BatchInvokeHandler batchInvokeHandler(final Marshaller marshaller, final HttpMarshallerFactory unmarshallerFactory, final URI uri,
+                                                 final List<BatchedInvocation> invocations) {
+        return new BatchInvokeHandler(marshaller, unmarshallerFactory, uri, invocations);
+    }
+
     static <T> HttpTargetContext.HttpResultHandler emptyHttpResultHandler(final CompletableFuture<T> result, final Function<ClientResponse, T> function) {
         return new EmptyHttpResultHandler<T>(result, function);
     }
 
-    static HttpTargetContext.HttpResultHandler discoveryHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<Set<EJBModuleIdentifier>> result) {
+    static HttpTargetContext.HttpResultHandler discoveryHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<DiscoveryUpdate> result) {
         return new DiscoveryHttpResultHandler(unmarshaller, result);
     }
 
+    static HttpTargetContext.HttpResultHandler discoveryUpdateHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<DiscoveryUpdate> result) {
+        return new DiscoveryUpdateHttpResultHandler(unmarshaller, result);
+    }
+
     static HttpTargetContext.HttpResultHandler invokeHttpResultHandler(final Unmarshaller unmarshaller, final EJBReceiverInvocationContext receiverCtx, final EJBClientInvocationContext clientCtx) {
         return new EjbClassLoaderAwareHttpResultHandler(unmarshaller, receiverCtx, clientCtx);
     }
 
+    static HttpTargetContext.HttpResultHandler detachedInvokeHttpResultHandler(final Unmarshaller unmarshaller, final EJBReceiverInvocationContext receiverCtx,
+                                                                              final EJBClientInvocationContext clientCtx, final Consumer<ClientResponse> pendingHandler) {
+        return new DetachedInvokeHttpResultHandler(unmarshaller, receiverCtx, clientCtx, pendingHandler);
+    }
+
     static Function<ClientResponse, Boolean> cancelInvocationResponseFunction() {
         return new CancelInvocationResponseFunction();
     }
@@ -159,21 +186,63 @@ final class ClientHandlers {
 
     private static final class DiscoveryHttpResultHandler implements HttpTargetContext.HttpResultHandler {
         private final Unmarshaller unmarshaller;
-        private final CompletableFuture<Set<EJBModuleIdentifier>> result;
+        private final CompletableFuture<DiscoveryUpdate> result;
 
-        private DiscoveryHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<Set<EJBModuleIdentifier>> result) {
+        private DiscoveryHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<DiscoveryUpdate> result) {
             this.unmarshaller = unmarshaller;
             this.result = result;
         }
 
         @Override
         public void handleResult(final InputStream is, final ClientResponse response, final Closeable doneCallback) {
+            if (is == null) {
+                // not modified, cached modules are still valid
+                try {
+                    result.complete(null);
+                } finally {
+                    safeClose(doneCallback);
+                }
+                return;
+            }
             try (ByteInput in = byteInputOf(is)) {
                 Set<EJBModuleIdentifier> modules;
                 unmarshaller.start(in);
                 modules = deserializeSet(unmarshaller);
                 unmarshaller.finish();
-                result.complete(modules);
+                result.complete(DiscoveryUpdate.newInstance(getResponseHeader(response, EJB_DISCOVERY_VERSION), true, modules, Collections.emptySet()));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                safeClose(doneCallback);
+            }
+        }
+    }
+
+    private static final class DiscoveryUpdateHttpResultHandler implements HttpTargetContext.HttpResultHandler {
+        private final Unmarshaller unmarshaller;
+        private final CompletableFuture<DiscoveryUpdate> result;
+
+        private DiscoveryUpdateHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<DiscoveryUpdate> result) {
+            this.unmarshaller = unmarshaller;
+            this.result = result;
+        }
+
+        @Override
+        public void handleResult(final InputStream is, final ClientResponse response, final Closeable doneCallback) {
+            if (is == null) {
+                // no content, modules did not change
+                try {
+                    result.complete(null);
+                } finally {
+                    safeClose(doneCallback);
+                }
+                return;
+            }
+            try (ByteInput in = byteInputOf(is)) {
+                unmarshaller.start(in);
+                final DiscoveryUpdate update = deserializeDiscoveryUpdate(unmarshaller, getResponseHeader(response, EJB_DISCOVERY_VERSION));
+                unmarshaller.finish();
+                result.complete(update);
             } catch (Exception e) {
                 result.completeExceptionally(e);
             } finally {
@@ -236,6 +305,35 @@ final class ClientHandlers {
         }
     }
 
+    /**
+     * Result handler of detached invocations. Empty responses, telling the outcome is not available yet,
+     * are passed to the pending handler once the connection was released.
+     */
+    private static final class DetachedInvokeHttpResultHandler implements HttpTargetContext.HttpResultHandler {
+        private final Unmarshaller unmarshaller;
+        private final EJBReceiverInvocationContext receiverCtx;
+        private final EJBClientInvocationContext clientCtx;
+        private final Consumer<ClientResponse> pendingHandler;
+
+        private DetachedInvokeHttpResultHandler(final Unmarshaller unmarshaller, final EJBReceiverInvocationContext receiverCtx,
+                                                final EJBClientInvocationContext clientCtx, final Consumer<ClientResponse> pendingHandler) {
+            this.unmarshaller = unmarshaller;
+            this.receiverCtx = receiverCtx;
+            this.clientCtx = clientCtx;
+            this.pendingHandler = pendingHandler;
+        }
+
+        @Override
+        public void handleResult(final InputStream is, final ClientResponse response, final Closeable doneCallback) {
+            if (is == null) {
+                safeClose(doneCallback);
+                pendingHandler.accept(response);
+                return;
+            }
+            invokeHttpResultHandler(unmarshaller, receiverCtx, clientCtx).handleResult(is, response, doneCallback);
+        }
+    }
+
     private static final class InvokeHttpResultHandler implements HttpTargetContext.HttpResultHandler {
         private final Unmarshaller unmarshaller;
         private final CompletableFuture<InvocationInfo> result;
@@ -261,6 +359,121 @@ final class ClientHandlers {
         }
     }
 
+    /**
+     * Marshaller, result handler and failure handler of an invocation batch. Invocations failing to marshall are
+     * failed right away and left out of the batch, outcomes in the response map to the invocations actually sent.
+     */
+    static final class BatchInvokeHandler implements HttpTargetContext.HttpMarshaller, HttpTargetContext.HttpResultHandler, HttpTargetContext.HttpFailureHandler {
+        private final Marshaller marshaller;
+        private final HttpMarshallerFactory unmarshallerFactory;
+        private final URI uri;
+        private volatile List<BatchedInvocation> sent;
+
+        private BatchInvokeHandler(final Marshaller marshaller, final HttpMarshallerFactory unmarshallerFactory, final URI uri, final List<BatchedInvocation> invocations) {
+            this.marshaller = marshaller;
+            this.unmarshallerFactory = unmarshallerFactory;
+            this.uri = uri;
+            this.sent = invocations;
+        }
+
+        @Override
+        public void marshall(final OutputStream os) throws Exception {
+            final List<BatchedInvocation> invocations = this.sent;
+            final List<BatchedInvocation> sent = new ArrayList<>(invocations.size());
+            final List<byte[]> contents = new ArrayList<>(invocations.size());
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            IOException broken = null;
+            for (BatchedInvocation invocation : invocations) {
+                if (broken != null) {
+                    invocation.failed(broken);
+                    continue;
+                }
+                content.reset();
+                try (ByteOutput out = byteOutputOf(content)) {
+                    marshaller.start(out);
+                    serializeTransaction(marshaller, invocation.getTransactionInfo());
+                    serializeObjectArray(marshaller, invocation.getParameters());
+                    serializeMap(marshaller, invocation.getContextData());
+                    marshaller.finish();
+                } catch (Exception e) {
+                    invocation.failed(e);
+                    try {
+                        // the marshaller is reused for next invocations
+                        marshaller.clearInstanceCache();
+                        marshaller.clearClassCache();
+                    } catch (IOException ioe) {
+                        broken = ioe;
+                    }
+                    continue;
+                }
+                sent.add(invocation);
+                contents.add(content.toByteArray());
+            }
+            this.sent = sent;
+            try (DataOutputStream out = new DataOutputStream(os)) {
+                out.writeInt(sent.size());
+                for (int i = 0; i < sent.size(); i++) {
+                    out.writeUTF(sent.get(i).getPath());
+                    out.writeInt(contents.get(i).length);
+                    out.write(contents.get(i));
+                }
+            }
+        }
+
+        @Override
+        public void handleResult(final InputStream is, final ClientResponse response, final Closeable doneCallback) {
+            final List<BatchedInvocation> sent = this.sent;
+            final boolean[] failures = new boolean[sent.size()];
+            final byte[][] outcomes = new byte[sent.size()][];
+            try (DataInputStream in = new DataInputStream(is)) {
+                final int count = in.readInt();
+                if (count != sent.size()) {
+                    throw EjbHttpClientMessages.MESSAGES.invalidBatchResponse(count, sent.size());
+                }
+                for (int i = 0; i < count; i++) {
+                    failures[i] = in.readBoolean();
+                    outcomes[i] = new byte[in.readInt()];
+                    in.readFully(outcomes[i]);
+                }
+            } catch (Exception e) {
+                handleFailure(e);
+                return;
+            } finally {
+                safeClose(doneCallback);
+            }
+            for (int i = 0; i < outcomes.length; i++) {
+                final BatchedInvocation invocation = sent.get(i);
+                final Unmarshaller unmarshaller;
+                try {
+                    unmarshaller = unmarshallerFactory.createUnmarshaller(new HttpProtocolV1ObjectResolver(uri), HttpProtocolV1ObjectTable.INSTANCE);
+                } catch (IOException e) {
+                    invocation.failed(e);
+                    continue;
+                }
+                if (failures[i]) {
+                    try (ByteInput in = byteInputOf(new ByteArrayInputStream(outcomes[i]))) {
+                        unmarshaller.start(in);
+                        final Throwable exception = (Throwable) unmarshaller.readObject();
+                        unmarshaller.finish();
+                        invocation.failed(exception);
+                    } catch (Exception e) {
+                        invocation.failed(e);
+                    }
+                } else {
+                    invokeHttpResultHandler(unmarshaller, invocation.getReceiverContext(), invocation.getClientContext())
+                            .handleResult(new ByteArrayInputStream(outcomes[i]), response, IoUtils.nullCloseable());
+                }
+            }
+        }
+
+        @Override
+        public void handleFailure(final Throwable failure) {
+            for (BatchedInvocation invocation : sent) {
+                invocation.failed(failure);
+            }
+        }
+    }
+
     private static final class CancelInvocationResponseFunction implements Function<ClientResponse, Boolean> {
         @Override
         public Boolean apply(final ClientResponse response) {
@@ -31,14 +31,23 @@ final class Constants {
     static final ContentType INVOCATION = new ContentType("application/x-wf-ejb-jbmar-invocation", 1);
     static final ContentType SESSION_OPEN = new ContentType("application/x-wf-jbmar-sess-open", 1);
     static final ContentType EJB_EXCEPTION = new ContentType("application/x-wf-jbmar-exception", 1);
+    static final ContentType EJB_BATCH_INVOCATION = new ContentType("application/x-wf-ejb-jbmar-batch-invocation", 1);
 
     // response headers
     static final ContentType EJB_RESPONSE = new ContentType("application/x-wf-ejb-jbmar-response", 1);
     static final ContentType EJB_RESPONSE_NEW_SESSION = new ContentType("application/x-wf-ejb-jbmar-new-session", 1);
+    static final ContentType EJB_BATCH_RESPONSE = new ContentType("application/x-wf-ejb-jbmar-batch-response", 1);
     static final ContentType EJB_DISCOVERY_RESPONSE = new ContentType("application/x-wf-ejb-jbmar-discovery-response", 1);
+    static final ContentType EJB_DISCOVERY_UPDATE = new ContentType("application/x-wf-ejb-jbmar-discovery-update", 1);
 
     static final HttpString EJB_SESSION_ID = new HttpString("x-wf-ejb-jbmar-session-id");
     static final HttpString INVOCATION_ID = new HttpString("X-wf-invocation-id");
+    static final HttpString EJB_DISCOVERY_VERSION = new HttpString("x-wf-ejb-discovery-version");
+    static final HttpString EJB_DETACHED = new HttpString("x-wf-ejb-detached");
+    static final HttpString EJB_INVOCATION_HANDLE = new HttpString("x-wf-ejb-invocation-handle");
+    static final HttpString EJB_RESULT_WAIT = new HttpString("x-wf-ejb-result-wait");
+    static final HttpString EJB_ONE_WAY = new HttpString("x-wf-ejb-one-way");
+    static final HttpString EJB_TRANSACTION_XID = new HttpString("x-wf-ejb-txn-xid");
 
     // context path
     static final String EJB_CONTEXT = "/ejb";
@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import io.undertow.server.session.SessionIdGenerator;
+import org.jboss.ejb.server.CancelHandle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side store of detached invocations. The client is answered with a handle as soon as the invocation is
+ * dispatched and retrieves the outcome later using that handle. The number of stored invocations is bounded and
+ * outcomes not retrieved within the expiration time are discarded.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class DetachedResultStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final SessionIdGenerator handleGenerator = new SecureRandomSessionIdGenerator();
+    private final int maxSize;
+    private final long expiration;
+
+    /**
+     * Creates new store.
+     * @param maxSize maximum number of stored invocations
+     * @param expiration time in milliseconds the outcome is kept after the invocation completed
+     */
+    DetachedResultStore(final int maxSize, final long expiration) {
+        this.maxSize = maxSize;
+        this.expiration = TimeUnit.MILLISECONDS.toNanos(expiration);
+    }
+
+    /**
+     * Registers new detached invocation.
+     * @return the invocation handle or {@code null} if the store is full
+     */
+    String register() {
+        if (entries.size() >= maxSize) {
+            final long now = System.nanoTime();
+            entries.values().removeIf(entry -> entry.isExpired(now));
+            if (entries.size() >= maxSize) {
+                return null;
+            }
+        }
+        final String handle = handleGenerator.createSessionId();
+        entries.put(handle, new Entry());
+        return handle;
+    }
+
+    Entry get(final String handle) {
+        return entries.get(handle);
+    }
+
+    boolean remove(final String handle, final Entry entry) {
+        return entries.remove(handle, entry);
+    }
+
+    final class Entry {
+        private volatile CancelHandle cancelHandle;
+        private byte[] outcome;
+        private boolean failure;
+        private long completed;
+        private Runnable listener;
+
+        CancelHandle getCancelHandle() {
+            return cancelHandle;
+        }
+
+        void setCancelHandle(final CancelHandle cancelHandle) {
+            this.cancelHandle = cancelHandle;
+        }
+
+        /**
+         * Returns the marshalled invocation result or exception.
+         * @return the outcome or {@code null} if the invocation did not complete yet
+         */
+        synchronized byte[] getOutcome() {
+            return outcome;
+        }
+
+        synchronized boolean isFailure() {
+            return failure;
+        }
+
+        void complete(final boolean failure, final byte[] outcome) {
+            final Runnable listener;
+            synchronized (this) {
+                if (this.outcome != null) {
+                    return;
+                }
+                this.outcome = outcome;
+                this.failure = failure;
+                this.completed = System.nanoTime();
+                listener = this.listener;
+                this.listener = null;
+            }
+            if (listener != null) {
+                listener.run();
+            }
+        }
+
+        /**
+         * Registers one-shot listener called once the invocation completes. The listener is called immediately
+         * if the invocation already completed.
+         * @param listener the listener
+         */
+        void setListener(final Runnable listener) {
+            synchronized (this) {
+                if (outcome == null) {
+                    this.listener = listener;
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        synchronized void removeListener(final Runnable listener) {
+            if (this.listener == listener) {
+                this.listener = null;
+            }
+        }
+
+        private synchronized boolean isExpired(final long now) {
+            return outcome != null && now - completed >= expiration;
+        }
+    }
+}
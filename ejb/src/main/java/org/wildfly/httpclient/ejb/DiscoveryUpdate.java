@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import org.jboss.ejb.client.EJBModuleIdentifier;
+
+import java.util.Set;
+
+/**
+ * Available EJB modules of a server. Either the full set of modules or the modules added and removed
+ * since the version known by the client.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class DiscoveryUpdate {
+
+    private final String version;
+    private final boolean full;
+    private final Set<EJBModuleIdentifier> addedModules;
+    private final Set<EJBModuleIdentifier> removedModules;
+
+    private DiscoveryUpdate(final String version, final boolean full, final Set<EJBModuleIdentifier> addedModules, final Set<EJBModuleIdentifier> removedModules) {
+        this.version = version;
+        this.full = full;
+        this.addedModules = addedModules;
+        this.removedModules = removedModules;
+    }
+
+    /**
+     * Returns the server side version of available modules, may be {@code null} if not provided by the server.
+     * @return available modules version
+     */
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns {@code true} if {@linkplain #getAddedModules() added modules} are all modules available on the server.
+     * @return whether this is full modules snapshot
+     */
+    boolean isFull() {
+        return full;
+    }
+
+    Set<EJBModuleIdentifier> getAddedModules() {
+        return addedModules;
+    }
+
+    Set<EJBModuleIdentifier> getRemovedModules() {
+        return removedModules;
+    }
+
+    static DiscoveryUpdate newInstance(final String version, final boolean full, final Set<EJBModuleIdentifier> addedModules, final Set<EJBModuleIdentifier> removedModules) {
+        return new DiscoveryUpdate(version, full, addedModules, removedModules);
+    }
+
+}
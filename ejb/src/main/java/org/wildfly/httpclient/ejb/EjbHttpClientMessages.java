@@ -21,6 +21,7 @@ package org.wildfly.httpclient.ejb;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import jakarta.ejb.EJBException;
+import jakarta.transaction.SystemException;
 
 import org.jboss.ejb.client.EJBLocator;
 import org.jboss.logging.BasicLogger;
@@ -29,6 +30,7 @@ import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.LogMessage;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageLogger;
+import org.wildfly.httpclient.common.Bulkhead;
 
 @MessageLogger(projectCode = "WFHTTPEJB")
 interface EjbHttpClientMessages extends BasicLogger {
@@ -77,4 +79,29 @@ interface EjbHttpClientMessages extends BasicLogger {
 
     @Message(id = 14, value = "Exception resolving class %s for unmarshalling; it has either been blocklisted or not allowlisted")
     InvalidClassException cannotResolveFilteredClass(String clazz);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 15, value = "HTTP discovery did not complete within %d ms, servers that did not respond are ignored")
+    void httpDiscoveryTimedOut(long timeout);
+
+    @Message(id = 16, value = "Invalid invocation batch response, %d outcomes received for %d invocations")
+    IOException invalidBatchResponse(int received, int sent);
+
+    @Message(id = 17, value = "No detached invocation found for handle %s, it may have expired")
+    IllegalStateException detachedResultNotFound(String handle);
+
+    @Message(id = 18, value = "Detached invocation was accepted without invocation handle")
+    IOException missingInvocationHandle();
+
+    @Message(id = 19, value = "Invocation of %s rejected, too many concurrent invocations limited by %s")
+    EJBException bulkheadFull(EJBLocator<?> locator, Bulkhead bulkhead);
+
+    @Message(id = 20, value = "Remote transaction was not begun by the server")
+    SystemException transactionNotBegun();
+
+    @Message(id = 21, value = "Beginning transactions with invocations is not supported by this server")
+    IllegalStateException transactionBeginNotSupported();
+
+    @Message(id = 22, value = "Invocation rejected, the server is overloaded")
+    EJBException invocationRejected();
 }
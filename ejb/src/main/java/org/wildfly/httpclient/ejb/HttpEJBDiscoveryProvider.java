@@ -22,6 +22,7 @@ import static org.jboss.ejb.client.EJBClientContext.getCurrent;
 import static org.wildfly.httpclient.ejb.Constants.HTTPS_SCHEME;
 import static org.wildfly.httpclient.ejb.Constants.HTTP_SCHEME;
 import static org.wildfly.httpclient.ejb.ClientHandlers.discoveryHttpResultHandler;
+import static org.wildfly.httpclient.ejb.ClientHandlers.discoveryUpdateHttpResultHandler;
 
 import io.undertow.client.ClientRequest;
 import org.jboss.ejb.client.EJBClientConnection;
@@ -29,6 +30,7 @@ import org.jboss.ejb.client.EJBClientContext;
 import org.jboss.ejb.client.EJBModuleIdentifier;
 import org.jboss.marshalling.Unmarshaller;
 import org.wildfly.discovery.AttributeValue;
+import org.wildfly.discovery.EqualsFilterSpec;
 import org.wildfly.discovery.FilterSpec;
 import org.wildfly.discovery.ServiceType;
 import org.wildfly.discovery.ServiceURL;
@@ -46,15 +48,20 @@ import org.wildfly.security.manager.WildFlySecurityManager;
 import javax.net.ssl.SSLContext;
 import java.net.URI;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 /**
  * @author <a href="mailto:tadamski@redhat.com">Tomasz Adamski</a>
@@ -66,9 +73,18 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
     private static final long CACHE_REFRESH_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
             WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.discovery.cache-refresh-timeout", "300000")));
 
-    private Set<ServiceURL> serviceURLCache = new HashSet<>();
-    private AtomicBoolean cacheInvalid = new AtomicBoolean(true);
-    private long cacheRefreshTimestamp = 0L;
+    private static final long DISCOVERY_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.discovery.timeout", "10000")));
+
+    private static final boolean LISTEN_FOR_UPDATES = Boolean.parseBoolean(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.discovery.listen-for-updates", "false"));
+
+    private volatile DiscoveryCache serviceURLCache = DiscoveryCache.EMPTY;
+    private final AtomicBoolean cacheInvalid = new AtomicBoolean(true);
+    private volatile long cacheRefreshTimestamp = 0L;
+    private final Object refreshLock = new Object();
+    private final Object updateLock = new Object();
+    private final Set<URI> subscriptions = ConcurrentHashMap.newKeySet();
 
     HttpEJBDiscoveryProvider() {
     }
@@ -105,13 +121,14 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
         final boolean resultsPresent = doSearchCache(discoveryResult, filterSpec);
         if(!resultsPresent){
             refreshCache(ejbClientContext);
+            doSearchCache(discoveryResult, filterSpec);
         }
         discoveryResult.complete();
     }
 
     private boolean doSearchCache(final DiscoveryResult discoveryResult, final FilterSpec filterSpec) {
         boolean resultsPresent = false;
-        for (ServiceURL serviceURL : serviceURLCache) {
+        for (ServiceURL serviceURL : serviceURLCache.getCandidates(filterSpec)) {
             if (serviceURL.satisfies(filterSpec)) {
                 discoveryResult.addMatch(serviceURL.getLocationURI());
                 resultsPresent = true;
@@ -121,63 +138,117 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
     }
 
     private void refreshCache(final EJBClientContext ejbClientContext){
-        serviceURLCache.clear();
-        final List<EJBClientConnection> httpConnections = ejbClientContext.getConfiguredConnections().stream().filter(
-                (connection) -> supportsScheme(connection.getDestination().getScheme())
-        ).collect(Collectors.toList());
-        final CountDownLatch outstandingLatch = new CountDownLatch(httpConnections.size());
-        for (EJBClientConnection connection : httpConnections) {
-            discoverFromConnection(connection, outstandingLatch);
-        }
-        try {
-            outstandingLatch.await();
-            cacheInvalid.set(false);
+        final long refreshRequested = System.nanoTime();
+        synchronized (refreshLock) {
+            if (!cacheInvalid.get() && cacheRefreshTimestamp - refreshRequested > 0) {
+                // concurrent refresh completed while we were waiting for it
+                return;
+            }
+            // query all servers concurrently, the new cache is built aside and published at once
+            final AuthenticationContext authenticationContext = AuthenticationContext.captureCurrent();
+            final Map<URI, HttpTargetContext> targetContexts = new LinkedHashMap<>();
+            final Map<URI, CompletableFuture<DiscoveryUpdate>> results = new LinkedHashMap<>();
+            for (EJBClientConnection connection : ejbClientContext.getConfiguredConnections()) {
+                final URI uri = connection.getDestination();
+                if (supportsScheme(uri.getScheme()) && !results.containsKey(uri)) {
+                    final HttpTargetContext targetContext = WildflyHttpContext.getCurrent().getTargetContext(uri);
+                    targetContexts.put(uri, targetContext);
+                    // servers whose modules version is known are asked to answer only if their modules changed
+                    results.put(uri, sendDiscoveryRequest(targetContext, authenticationContext, RequestType.DISCOVER, serviceURLCache.versions.get(uri)));
+                }
+            }
+            try {
+                CompletableFuture.allOf(results.values().toArray(new CompletableFuture[0])).get(DISCOVERY_TIMEOUT, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                EjbHttpClientMessages.MESSAGES.httpDiscoveryInterrupted(e);
+            } catch (ExecutionException e) {
+                // failed servers are left out of the cache
+            } catch (TimeoutException e) {
+                EjbHttpClientMessages.MESSAGES.httpDiscoveryTimedOut(TimeUnit.NANOSECONDS.toMillis(DISCOVERY_TIMEOUT));
+            }
+            final Map<URI, DiscoveryUpdate> updates = new HashMap<>();
+            for (Map.Entry<URI, CompletableFuture<DiscoveryUpdate>> entry : results.entrySet()) {
+                final CompletableFuture<DiscoveryUpdate> result = entry.getValue();
+                if (result.isDone() && !result.isCompletedExceptionally()) {
+                    updates.put(entry.getKey(), result.join());
+                }
+            }
+            synchronized (updateLock) {
+                serviceURLCache = serviceURLCache.refresh(updates);
+            }
             cacheRefreshTimestamp = System.nanoTime();
-        } catch(InterruptedException e){
-            EjbHttpClientMessages.MESSAGES.httpDiscoveryInterrupted(e);
+            cacheInvalid.set(false);
+            if (LISTEN_FOR_UPDATES) {
+                for (URI uri : updates.keySet()) {
+                    if (subscriptions.add(uri)) {
+                        listenForUpdates(targetContexts.get(uri), authenticationContext);
+                    }
+                }
+            }
         }
-        cacheInvalid.set(false);
     }
 
-    private void discoverFromConnection(final EJBClientConnection connection, final CountDownLatch outstandingLatch) {
-        final URI newUri = connection.getDestination();
-
-        HttpTargetContext targetContext = WildflyHttpContext.getCurrent().getTargetContext(newUri);
-        AuthenticationContext authenticationContext = AuthenticationContext.captureCurrent();
+    /**
+     * Long polls the server for changes of available modules. Each response is applied to the cache and
+     * the next poll is sent. On failure the subscription ends and the cache falls back to periodic refresh.
+     */
+    private void listenForUpdates(final HttpTargetContext targetContext, final AuthenticationContext authenticationContext) {
+        final URI uri = targetContext.getUri();
+        final String version = serviceURLCache.versions.get(uri);
+        if (version == null) {
+            // server dropped from the cache or not supporting versions
+            subscriptions.remove(uri);
+            return;
+        }
+        sendDiscoveryRequest(targetContext, authenticationContext, RequestType.DISCOVER_UPDATES, version).whenComplete((update, failure) -> {
+            if (failure != null) {
+                subscriptions.remove(uri);
+                cacheInvalid.set(true);
+                return;
+            }
+            if (update != null) {
+                synchronized (updateLock) {
+                    serviceURLCache = serviceURLCache.update(uri, version, update);
+                }
+            }
+            listenForUpdates(targetContext, authenticationContext);
+        });
+    }
 
+    private CompletableFuture<DiscoveryUpdate> sendDiscoveryRequest(final HttpTargetContext targetContext, final AuthenticationContext authenticationContext,
+                                                                    final RequestType requestType, final String knownVersion) {
+        final CompletableFuture<DiscoveryUpdate> result = new CompletableFuture<>();
+        final URI newUri = targetContext.getUri();
         final AuthenticationContextConfigurationClient client = AUTH_CONFIGURATION_CLIENT;
         final SSLContext sslContext;
         try {
             sslContext = client.getSSLContext(newUri, authenticationContext);
         } catch (GeneralSecurityException e) {
-            return;
+            result.completeExceptionally(e);
+            return result;
         }
 
         final AuthenticationConfiguration authenticationConfiguration = client.getAuthenticationConfiguration(newUri, authenticationContext, -1, "ejb", "jboss");
-        final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.DISCOVER).setVersion(targetContext.getProtocolVersion());
+        final RequestBuilder builder = new RequestBuilder().setRequestType(requestType).setDiscoveryVersion(knownVersion).setVersion(targetContext.getProtocolVersion());
         final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
-        final CompletableFuture<Set<EJBModuleIdentifier>> result = new CompletableFuture<>();
         final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
         final Unmarshaller unmarshaller = marshallerFactory.createUnmarshaller(result);
         if (unmarshaller != null) {
-            targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
-                    discoveryHttpResultHandler(unmarshaller, result),
-                    result::completeExceptionally, Constants.EJB_DISCOVERY_RESPONSE, null);
-        }
-        try {
-            Set<EJBModuleIdentifier> modules = result.get();
-            for (EJBModuleIdentifier ejbModuleIdentifier : modules) {
-                ServiceURL url = createServiceURL(newUri, ejbModuleIdentifier);
-                serviceURLCache.add(url);
+            if (requestType == RequestType.DISCOVER_UPDATES) {
+                targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
+                        discoveryUpdateHttpResultHandler(unmarshaller, result),
+                        result::completeExceptionally, Constants.EJB_DISCOVERY_UPDATE, null, true);
+            } else {
+                targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
+                        discoveryHttpResultHandler(unmarshaller, result),
+                        result::completeExceptionally, Constants.EJB_DISCOVERY_RESPONSE, null, true);
             }
-        } catch (InterruptedException| ExecutionException e) {
-            result.completeExceptionally(e);
-        } finally {
-            outstandingLatch.countDown();
         }
+        return result;
     }
 
-    private ServiceURL createServiceURL(final URI newUri, final EJBModuleIdentifier moduleIdentifier) {
+    private static ServiceURL createServiceURL(final URI newUri, final EJBModuleIdentifier moduleIdentifier) {
         final ServiceURL.Builder builder = new ServiceURL.Builder();
         builder.setUri(newUri);
         builder.setAbstractType(EJBClientContext.EJB_SERVICE_TYPE.getAbstractType());
@@ -206,5 +277,138 @@ public final class HttpEJBDiscoveryProvider implements DiscoveryProvider {
     public void processMissingTarget(URI location, Exception cause) {
         cacheInvalid.set(true);
     }
-}
 
+    /**
+     * Returns {@code true} if {@code candidate} modules version is not older than {@code current} one.
+     * Versions of different server runs are not comparable, the candidate always wins then.
+     */
+    private static boolean isNotOlder(final String candidate, final String current) {
+        if (candidate == null || current == null) {
+            return true;
+        }
+        final int candidateSeparator = candidate.lastIndexOf('-');
+        final int currentSeparator = current.lastIndexOf('-');
+        if (candidateSeparator < 0 || candidateSeparator != currentSeparator || !candidate.regionMatches(0, current, 0, candidateSeparator)) {
+            return true;
+        }
+        try {
+            return Long.parseLong(candidate.substring(candidateSeparator + 1)) >= Long.parseLong(current.substring(currentSeparator + 1));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Immutable snapshot of discovered modules with service URLs indexed by attribute values.
+     */
+    private static final class DiscoveryCache {
+        private static final DiscoveryCache EMPTY = new DiscoveryCache(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyList(), Collections.emptyMap());
+
+        private final Map<URI, Set<EJBModuleIdentifier>> modules;
+        private final Map<URI, String> versions;
+        private final List<ServiceURL> serviceURLs;
+        private final Map<String, Map<AttributeValue, List<ServiceURL>>> index;
+
+        private DiscoveryCache(final Map<URI, Set<EJBModuleIdentifier>> modules, final Map<URI, String> versions, final List<ServiceURL> serviceURLs,
+                               final Map<String, Map<AttributeValue, List<ServiceURL>>> index) {
+            this.modules = modules;
+            this.versions = versions;
+            this.serviceURLs = serviceURLs;
+            this.index = index;
+        }
+
+        private static DiscoveryCache create(final Map<URI, Set<EJBModuleIdentifier>> modules, final Map<URI, String> versions) {
+            final List<ServiceURL> serviceURLs = new ArrayList<>();
+            final Map<String, Map<AttributeValue, List<ServiceURL>>> index = new HashMap<>();
+            for (Map.Entry<URI, Set<EJBModuleIdentifier>> entry : modules.entrySet()) {
+                for (EJBModuleIdentifier moduleIdentifier : entry.getValue()) {
+                    final ServiceURL serviceURL = createServiceURL(entry.getKey(), moduleIdentifier);
+                    serviceURLs.add(serviceURL);
+                    for (String name : serviceURL.getAttributeNames()) {
+                        final Map<AttributeValue, List<ServiceURL>> values = index.computeIfAbsent(name, k -> new HashMap<>());
+                        for (AttributeValue value : serviceURL.getAttributeValues(name)) {
+                            values.computeIfAbsent(value, k -> new ArrayList<>()).add(serviceURL);
+                        }
+                    }
+                }
+            }
+            return new DiscoveryCache(modules, versions, serviceURLs, index);
+        }
+
+        /**
+         * Returns new cache containing only the servers that answered the full discovery. Servers already
+         * known in a newer version, thanks to an update received meanwhile, keep their current modules.
+         * A {@code null} update means the server answered that its modules did not change, the cached
+         * modules are kept then.
+         */
+        private DiscoveryCache refresh(final Map<URI, DiscoveryUpdate> updates) {
+            final Map<URI, Set<EJBModuleIdentifier>> modules = new HashMap<>();
+            final Map<URI, String> versions = new HashMap<>();
+            for (Map.Entry<URI, DiscoveryUpdate> entry : updates.entrySet()) {
+                final URI uri = entry.getKey();
+                final DiscoveryUpdate update = entry.getValue();
+                if (update == null) {
+                    if (this.modules.containsKey(uri)) {
+                        modules.put(uri, this.modules.get(uri));
+                        putVersion(versions, uri, this.versions.get(uri));
+                    }
+                } else if (this.modules.containsKey(uri) && !isNotOlder(update.getVersion(), this.versions.get(uri))) {
+                    modules.put(uri, this.modules.get(uri));
+                    putVersion(versions, uri, this.versions.get(uri));
+                } else {
+                    modules.put(uri, update.getAddedModules());
+                    putVersion(versions, uri, update.getVersion());
+                }
+            }
+            return create(modules, versions);
+        }
+
+        /**
+         * Returns new cache with the update applied. Partial updates are applied only on top of the version
+         * they were computed for.
+         */
+        private DiscoveryCache update(final URI uri, final String knownVersion, final DiscoveryUpdate update) {
+            final Set<EJBModuleIdentifier> current = this.modules.get(uri);
+            if (current == null) {
+                return this;
+            }
+            final Set<EJBModuleIdentifier> updated;
+            if (update.isFull()) {
+                if (!isNotOlder(update.getVersion(), versions.get(uri))) {
+                    return this;
+                }
+                updated = update.getAddedModules();
+            } else {
+                if (!knownVersion.equals(versions.get(uri))) {
+                    return this;
+                }
+                updated = new HashSet<>(current);
+                updated.removeAll(update.getRemovedModules());
+                updated.addAll(update.getAddedModules());
+            }
+            final Map<URI, Set<EJBModuleIdentifier>> modules = new HashMap<>(this.modules);
+            modules.put(uri, updated);
+            final Map<URI, String> versions = new HashMap<>(this.versions);
+            putVersion(versions, uri, update.getVersion());
+            return create(modules, versions);
+        }
+
+        private static void putVersion(final Map<URI, String> versions, final URI uri, final String version) {
+            if (version != null) {
+                versions.put(uri, version);
+            } else {
+                versions.remove(uri);
+            }
+        }
+
+        private List<ServiceURL> getCandidates(final FilterSpec filterSpec) {
+            if (filterSpec instanceof EqualsFilterSpec) {
+                final EqualsFilterSpec equalsFilterSpec = (EqualsFilterSpec) filterSpec;
+                final Map<AttributeValue, List<ServiceURL>> values = index.get(equalsFilterSpec.getAttribute());
+                final List<ServiceURL> candidates = values == null ? null : values.get(equalsFilterSpec.getValue());
+                return candidates == null ? Collections.emptyList() : candidates;
+            }
+            return serviceURLs;
+        }
+    }
+}
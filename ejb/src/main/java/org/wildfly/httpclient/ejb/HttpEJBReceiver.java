@@ -18,16 +18,20 @@
 
 package org.wildfly.httpclient.ejb;
 
-import static java.security.AccessController.doPrivileged;
 import static org.wildfly.httpclient.ejb.ClientHandlers.cancelInvocationResponseFunction;
 import static org.wildfly.httpclient.ejb.ClientHandlers.invokeHttpResultHandler;
 import static org.wildfly.httpclient.ejb.ClientHandlers.createSessionResponseFunction;
+import static org.wildfly.httpclient.ejb.ClientHandlers.detachedInvokeHttpResultHandler;
 import static org.wildfly.httpclient.ejb.ClientHandlers.emptyHttpResultHandler;
 import static org.wildfly.httpclient.ejb.ClientHandlers.invokeHttpMarshaller;
 import static org.wildfly.httpclient.ejb.ClientHandlers.createSessionHttpMarshaller;
+import static org.wildfly.httpclient.common.HeadersHelper.getResponseHeader;
 import static org.wildfly.httpclient.ejb.Constants.HTTPS_PORT;
 import static org.wildfly.httpclient.ejb.Constants.HTTPS_SCHEME;
 import static org.wildfly.httpclient.ejb.Constants.HTTP_PORT;
+import static org.wildfly.httpclient.ejb.Serializer.xidFromHeader;
+import static org.wildfly.httpclient.ejb.TransactionInfo.BEGIN_TRANSACTION;
+import static org.wildfly.httpclient.ejb.TransactionInfo.beginTransaction;
 import static org.wildfly.httpclient.ejb.TransactionInfo.localTransaction;
 import static org.wildfly.httpclient.ejb.TransactionInfo.nullTransaction;
 import static org.wildfly.httpclient.ejb.TransactionInfo.remoteTransaction;
@@ -44,13 +48,16 @@ import org.jboss.ejb.client.SessionID;
 import org.jboss.ejb.client.StatefulEJBLocator;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.AuthenticationConfigurationCache;
+import org.wildfly.httpclient.common.Bulkhead;
 import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.httpclient.common.WildflyHttpContext;
+import org.wildfly.httpclient.transaction.LazyTransactionBegin;
 import org.wildfly.httpclient.transaction.XidProvider;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
-import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
 import org.wildfly.transaction.client.ContextTransactionManager;
 import org.wildfly.transaction.client.LocalTransaction;
 import org.wildfly.transaction.client.RemoteTransaction;
@@ -58,10 +65,12 @@ import org.wildfly.transaction.client.RemoteTransactionContext;
 import org.wildfly.transaction.client.XAOutflowHandle;
 
 import jakarta.ejb.Asynchronous;
+import jakarta.ejb.EJBException;
 import javax.net.ssl.SSLContext;
 import jakarta.transaction.RollbackException;
 import jakarta.transaction.SystemException;
 import jakarta.transaction.Transaction;
+import javax.transaction.xa.Xid;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URI;
@@ -72,10 +81,13 @@ import java.util.Base64;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -85,15 +97,21 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 class HttpEJBReceiver extends EJBReceiver {
 
-    private static final AuthenticationContextConfigurationClient AUTH_CONTEXT_CLIENT;
-
-    static {
-        AUTH_CONTEXT_CLIENT = AccessController.doPrivileged((PrivilegedAction<AuthenticationContextConfigurationClient>) () -> new AuthenticationContextConfigurationClient());
-    }
+    private static final boolean DETACHED_RESULTS = Boolean.parseBoolean(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results", "false"));
+    private static final long DETACHED_RESULTS_POLL_WAIT = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results.poll-wait", "0"));
+    private static final long DETACHED_RESULTS_MAX_POLL_INTERVAL = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results.max-poll-interval", "1000"));
+    private static final long DETACHED_RESULTS_MIN_POLL_INTERVAL = 10;
+    private static final boolean ONE_WAY_INVOCATIONS = Boolean.parseBoolean(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.one-way-invocations", "true"));
 
     private final AttachmentKey<EjbContextData> EJB_CONTEXT_DATA = AttachmentKey.create(EjbContextData.class);
     private final org.jboss.ejb.client.AttachmentKey<String> INVOCATION_ID = new org.jboss.ejb.client.AttachmentKey<>();
+    private final org.jboss.ejb.client.AttachmentKey<String> INVOCATION_HANDLE = new org.jboss.ejb.client.AttachmentKey<>();
     private final RemoteTransactionContext transactionContext;
+    private final InvocationBatcher batcher = new InvocationBatcher();
 
     private static final AtomicLong invocationIdGenerator = new AtomicLong();
 
@@ -129,7 +147,7 @@ class HttpEJBReceiver extends EJBReceiver {
                 }
             }
         }
-        targetContext.awaitSessionId(false, AUTH_CONTEXT_CLIENT.getAuthenticationConfiguration(targetContext.getUri(), receiverContext.getAuthenticationContext()));
+        targetContext.awaitSessionId(false, AuthenticationConfigurationCache.getInstance().getAuthenticationConfiguration(targetContext.getUri(), receiverContext.getAuthenticationContext(), -1, null, null));
 
 
         EjbContextData ejbData = targetContext.getAttachment(EJB_CONTEXT_DATA);
@@ -147,8 +165,24 @@ class HttpEJBReceiver extends EJBReceiver {
             builder.setBeanId(Base64.getUrlEncoder().encodeToString(locator.asStateful().getSessionId().getEncodedForm()));
         }
 
+        // the effective timeout, honouring per proxy and per invocation timeouts over the client context default
+        final long invocationTimeout = clientInvocationContext.getInvocationTimeout();
+        // only plain synchronous calls of stateless beans outside of transactions are batched,
+        // the batch framing carries no deadline, so neither are calls the server should drop once their caller gave up
+        boolean batchable = batcher.isEnabled() && !(locator instanceof StatefulEJBLocator) && !compressRequest && !compressResponse
+                && clientInvocationContext.getTransaction() == null && invocationTimeout <= 0;
+        boolean detached = false;
+        boolean oneWay = false;
+        boolean synchronous = true;
         if (clientInvocationContext.getInvokedMethod().getReturnType() == Future.class) {
             receiverContext.proceedAsynchronously();
+            synchronous = false;
+            batchable = false;
+            // the server accepts the invocation right away and the outcome is polled for, servers not supporting it ignore the header
+            if (DETACHED_RESULTS) {
+                builder.setDetached(true);
+                detached = true;
+            }
             //cancellation is only supported if we have affinity
             if (targetContext.getSessionId() != null) {
                 long invocationId = invocationIdGenerator.incrementAndGet();
@@ -159,33 +193,169 @@ class HttpEJBReceiver extends EJBReceiver {
         } else if (clientInvocationContext.getInvokedMethod().getReturnType() == void.class) {
             if (clientInvocationContext.getInvokedMethod().isAnnotationPresent(Asynchronous.class)) {
                 receiverContext.proceedAsynchronously();
+                synchronous = false;
+                batchable = false;
+                oneWay = ONE_WAY_INVOCATIONS;
             } else if (ejbData.asyncMethods.contains(clientInvocationContext.getInvokedMethod())) {
                 receiverContext.proceedAsynchronously();
+                synchronous = false;
+                batchable = false;
+                oneWay = ONE_WAY_INVOCATIONS;
             }
+            // the server acknowledges the invocation before it runs, servers not supporting it ignore the header
+            builder.setOneWay(oneWay);
         }
-        ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
         final AuthenticationContext context = receiverContext.getAuthenticationContext();
-        final AuthenticationContextConfigurationClient client = CLIENT;
+        final AuthenticationConfigurationCache client = AuthenticationConfigurationCache.getInstance();
         final int defaultPort = uri.getScheme().equals(HTTPS_SCHEME) ? HTTPS_PORT : HTTP_PORT;
         final AuthenticationConfiguration authenticationConfiguration = client.getAuthenticationConfiguration(uri, context, defaultPort, "jndi", "jboss");
         final SSLContext sslContext = client.getSSLContext(uri, context, "jndi", "jboss");
+        final Bulkhead bulkhead = targetContext.getBulkhead(locator.getBeanName(), clientInvocationContext.getViewClass().getName());
+        if (batchable && bulkhead == null) {
+            batcher.invoke(targetContext, sslContext, authenticationConfiguration, BatchedInvocation.newInstance(builder.createInvocationPath(),
+                    nullTransaction(), clientInvocationContext.getParameters(), clientInvocationContext.getContextData(), receiverContext, clientInvocationContext));
+            return;
+        }
+        ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
+        if (synchronous) {
+            // the server drops the invocation once the caller stopped waiting for it
+            HttpTargetContext.setTimeout(request, invocationTimeout);
+        }
         Marshaller marshaller = createMarshaller(targetContext.getUri(), targetContext.getHttpMarshallerFactory(request));
-        TransactionInfo transactionInfo = getTransactionInfo(clientInvocationContext.getTransaction(), targetContext.getUri());
-        Object[] parameters = clientInvocationContext.getParameters();
-        Map<String, Object> contextData = clientInvocationContext.getContextData();
-        final Unmarshaller unmarshaller = createUnmarshaller(targetContext.getUri(), targetContext.getHttpMarshallerFactory(request));
-        targetContext.sendRequest(request, sslContext, authenticationConfiguration, invokeHttpMarshaller(marshaller, transactionInfo, parameters, contextData),
-                invokeHttpResultHandler(unmarshaller, receiverContext, clientInvocationContext),
-                (e) -> receiverContext.requestFailed(e instanceof Exception ? (Exception) e : new RuntimeException(e)), Constants.EJB_RESPONSE, null);
+        // only synchronous invocations begin the transaction, the caller waits for the outcome anyway
+        TransactionInfo transactionInfo = getTransactionInfo(clientInvocationContext.getTransaction(), targetContext.getUri(), synchronous);
+        final LazyTransactionBegin lazyBegin = transactionInfo.getType() == BEGIN_TRANSACTION
+                ? ((RemoteTransaction) clientInvocationContext.getTransaction()).getProviderInterface(LazyTransactionBegin.class) : null;
+        try {
+            if (lazyBegin != null) {
+                request.putAttachment(HttpTargetContext.RESPONSE_LISTENER, response -> {
+                    final String xid = getResponseHeader(response, Constants.EJB_TRANSACTION_XID);
+                    if (xid != null) {
+                        lazyBegin.begun(xidFromHeader(xid));
+                    } else {
+                        lazyBegin.beginFailed(EjbHttpClientMessages.MESSAGES.transactionNotBegun());
+                    }
+                });
+            }
+            Object[] parameters = clientInvocationContext.getParameters();
+            Map<String, Object> contextData = clientInvocationContext.getContextData();
+            final Unmarshaller unmarshaller = createUnmarshaller(targetContext.getUri(), targetContext.getHttpMarshallerFactory(request));
+            HttpTargetContext.HttpResultHandler resultHandler;
+            HttpTargetContext.HttpFailureHandler failureHandler = (e) -> {
+                if (lazyBegin != null) {
+                    lazyBegin.beginFailed(e);
+                }
+                receiverContext.requestFailed(e instanceof Exception ? (Exception) e : new RuntimeException(e));
+            };
+            if (detached) {
+                resultHandler = detachedInvokeHttpResultHandler(unmarshaller, receiverContext, clientInvocationContext, response -> {
+                    final String handle = getResponseHeader(response, Constants.EJB_INVOCATION_HANDLE);
+                    if (handle == null) {
+                        receiverContext.requestFailed(EjbHttpClientMessages.MESSAGES.missingInvocationHandle());
+                        return;
+                    }
+                    clientInvocationContext.putAttachment(INVOCATION_HANDLE, handle);
+                    pollDetachedResult(targetContext, sslContext, authenticationConfiguration, receiverContext, handle,
+                            DETACHED_RESULTS_POLL_WAIT > 0 ? 0 : DETACHED_RESULTS_MIN_POLL_INTERVAL);
+                });
+            } else if (oneWay) {
+                // acknowledged, nothing is returned for void methods anyway
+                resultHandler = detachedInvokeHttpResultHandler(unmarshaller, receiverContext, clientInvocationContext,
+                        response -> receiverContext.resultReady(new EJBReceiverInvocationContext.ResultProducer.Immediate(null)));
+            } else {
+                resultHandler = invokeHttpResultHandler(unmarshaller, receiverContext, clientInvocationContext);
+            }
+            if (bulkhead != null) {
+                // the bulkhead is held as long as the connection is, until the response is consumed
+                final AtomicBoolean released = new AtomicBoolean();
+                final Runnable release = () -> {
+                    if (released.compareAndSet(false, true)) {
+                        bulkhead.release();
+                    }
+                };
+                final HttpTargetContext.HttpResultHandler guardedResultHandler = resultHandler;
+                final HttpTargetContext.HttpFailureHandler guardedFailureHandler = failureHandler;
+                resultHandler = (is, response, doneCallback) -> guardedResultHandler.handleResult(is, response, () -> {
+                    try {
+                        doneCallback.close();
+                    } finally {
+                        release.run();
+                    }
+                });
+                failureHandler = (e) -> {
+                    release.run();
+                    guardedFailureHandler.handleFailure(e);
+                };
+            }
+            final HttpTargetContext.HttpResultHandler finalResultHandler = resultHandler;
+            final HttpTargetContext.HttpFailureHandler finalFailureHandler = failureHandler;
+            final Runnable send = () -> targetContext.sendRequest(request, sslContext, authenticationConfiguration, invokeHttpMarshaller(marshaller, transactionInfo, parameters, contextData),
+                    finalResultHandler, finalFailureHandler, Constants.EJB_RESPONSE, null, detached || oneWay);
+            if (bulkhead == null) {
+                send.run();
+            } else if (!bulkhead.submit(send)) {
+                final EJBException e = EjbHttpClientMessages.MESSAGES.bulkheadFull(locator, bulkhead);
+                if (lazyBegin != null) {
+                    lazyBegin.beginFailed(e);
+                }
+                receiverContext.requestFailed(e);
+            }
+        } catch (Throwable t) {
+            // the request was not sent, so the claimed begin never happens
+            if (lazyBegin != null) {
+                lazyBegin.beginFailed(t);
+            }
+            throw t;
+        }
     }
 
-    private static final AuthenticationContextConfigurationClient CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
+    /**
+     * Retrieves the outcome of detached invocation after {@code interval} milliseconds. Long polls are repeated right away
+     * while short polls back off up to {@code max-poll-interval} milliseconds until the outcome is available.
+     */
+    private void pollDetachedResult(final HttpTargetContext targetContext, final SSLContext sslContext, final AuthenticationConfiguration authenticationConfiguration,
+                                    final EJBReceiverInvocationContext receiverContext, final String handle, final long interval) {
+        if (interval > 0) {
+            targetContext.getConnectionPool().getWorker().getIoThread().executeAfter(() ->
+                    fetchDetachedResult(targetContext, sslContext, authenticationConfiguration, receiverContext, handle, interval), interval, TimeUnit.MILLISECONDS);
+        } else {
+            fetchDetachedResult(targetContext, sslContext, authenticationConfiguration, receiverContext, handle, interval);
+        }
+    }
+
+    private void fetchDetachedResult(final HttpTargetContext targetContext, final SSLContext sslContext, final AuthenticationConfiguration authenticationConfiguration,
+                                     final EJBReceiverInvocationContext receiverContext, final String handle, final long interval) {
+        final ClientRequest request = new RequestBuilder()
+                .setRequestType(RequestType.RESULT)
+                .setInvocationHandle(handle)
+                .setResultWait(DETACHED_RESULTS_POLL_WAIT)
+                .setVersion(targetContext.getProtocolVersion())
+                .createRequest(targetContext.getUri().getPath());
+        final Unmarshaller unmarshaller;
+        try {
+            unmarshaller = createUnmarshaller(targetContext.getUri(), targetContext.getHttpMarshallerFactory(request));
+        } catch (IOException e) {
+            receiverContext.requestFailed(e);
+            return;
+        }
+        final long nextInterval = DETACHED_RESULTS_POLL_WAIT > 0 ? 0 : Math.min(interval * 2, DETACHED_RESULTS_MAX_POLL_INTERVAL);
+        targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
+                detachedInvokeHttpResultHandler(unmarshaller, receiverContext, receiverContext.getClientInvocationContext(), response ->
+                        pollDetachedResult(targetContext, sslContext, authenticationConfiguration, receiverContext, handle, nextInterval)),
+                (e) -> {
+                    if (e instanceof CancellationException) {
+                        receiverContext.requestCancelled();
+                    } else {
+                        receiverContext.requestFailed(e instanceof Exception ? (Exception) e : new RuntimeException(e));
+                    }
+                }, Constants.EJB_RESPONSE, null, true);
+    }
 
     protected SessionID createSession(final EJBReceiverSessionCreationContext receiverContext) throws Exception {
         final EJBLocator<?> locator = receiverContext.getClientInvocationContext().getLocator();
         URI uri = receiverContext.getClientInvocationContext().getDestination();
         final AuthenticationContext context = receiverContext.getAuthenticationContext();
-        final AuthenticationContextConfigurationClient client = CLIENT;
+        final AuthenticationConfigurationCache client = AuthenticationConfigurationCache.getInstance();
         final int defaultPort = uri.getScheme().equals(HTTPS_SCHEME) ? HTTPS_PORT : HTTP_PORT;
         final AuthenticationConfiguration authenticationConfiguration = client.getAuthenticationConfiguration(uri, context, defaultPort, "jndi", "jboss");
         final SSLContext sslContext = client.getSSLContext(uri, context, "jndi", "jboss");
@@ -202,23 +372,33 @@ class HttpEJBReceiver extends EJBReceiver {
             }
         }
 
-        targetContext.awaitSessionId(true, authenticationConfiguration);
-        CompletableFuture<SessionID> result = new CompletableFuture<>();
+        // the server issues the session cookie along with the new session, older servers get the dedicated affinity request afterwards
+        final Runnable affinityClaim = targetContext.claimSessionAffinity(authenticationConfiguration);
+        try {
+            if (affinityClaim == null) {
+                targetContext.awaitSessionId(true, authenticationConfiguration);
+            }
+            CompletableFuture<SessionID> result = new CompletableFuture<>();
 
-        RequestBuilder builder = new RequestBuilder()
-                .setRequestType(RequestType.CREATE_SESSION)
-                .setLocator(locator)
-                .setView(locator.getViewType().getName())
-                .setVersion(targetContext.getProtocolVersion());
-        ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
-        TransactionInfo transactionInfo = getTransactionInfo(ContextTransactionManager.getInstance().getTransaction(), targetContext.getUri());
-        Marshaller marshaller = createMarshaller(targetContext.getUri(), targetContext.getHttpMarshallerFactory(request));
-        targetContext.sendRequest(request, sslContext, authenticationConfiguration,
-                createSessionHttpMarshaller(marshaller, transactionInfo),
-                emptyHttpResultHandler(result, createSessionResponseFunction()),
-                result::completeExceptionally, Constants.EJB_RESPONSE_NEW_SESSION, null);
+            RequestBuilder builder = new RequestBuilder()
+                    .setRequestType(RequestType.CREATE_SESSION)
+                    .setLocator(locator)
+                    .setView(locator.getViewType().getName())
+                    .setVersion(targetContext.getProtocolVersion());
+            ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
+            TransactionInfo transactionInfo = getTransactionInfo(ContextTransactionManager.getInstance().getTransaction(), targetContext.getUri(), false);
+            Marshaller marshaller = createMarshaller(targetContext.getUri(), targetContext.getHttpMarshallerFactory(request));
+            targetContext.sendRequest(request, sslContext, authenticationConfiguration,
+                    createSessionHttpMarshaller(marshaller, transactionInfo),
+                    emptyHttpResultHandler(result, createSessionResponseFunction()),
+                    result::completeExceptionally, Constants.EJB_RESPONSE_NEW_SESSION, null);
 
-        return result.get();
+            return result.get();
+        } finally {
+            if (affinityClaim != null) {
+                affinityClaim.run();
+            }
+        }
     }
 
     @Override
@@ -230,7 +410,7 @@ class HttpEJBReceiver extends EJBReceiver {
         Affinity affinity = locator.getAffinity();
         URI uri = clientInvocationContext.getDestination();
         final AuthenticationContext context = receiverContext.getAuthenticationContext();
-        final AuthenticationContextConfigurationClient client = CLIENT;
+        final AuthenticationConfigurationCache client = AuthenticationConfigurationCache.getInstance();
         final int defaultPort = uri.getScheme().equals(HTTPS_SCHEME) ? HTTPS_PORT : HTTP_PORT;
         final AuthenticationConfiguration authenticationConfiguration = client.getAuthenticationConfiguration(uri, context, defaultPort, "jndi", "jboss");
         final SSLContext sslContext;
@@ -252,13 +432,24 @@ class HttpEJBReceiver extends EJBReceiver {
                 }
             }
         }
-        targetContext.awaitSessionId(false, authenticationConfiguration);
-        RequestBuilder builder = new RequestBuilder()
-                .setRequestType(RequestType.CANCEL)
-                .setLocator(locator)
-                .setCancelIfRunning(cancelIfRunning)
-                .setInvocationId(receiverContext.getClientInvocationContext().getAttachment(INVOCATION_ID))
-                .setVersion(targetContext.getProtocolVersion());
+        final String invocationHandle = clientInvocationContext.getAttachment(INVOCATION_HANDLE);
+        final RequestBuilder builder;
+        if (invocationHandle != null) {
+            // detached invocations are cancelled by their handle, no session affinity needed
+            builder = new RequestBuilder()
+                    .setRequestType(RequestType.CANCEL_RESULT)
+                    .setInvocationHandle(invocationHandle)
+                    .setCancelIfRunning(cancelIfRunning)
+                    .setVersion(targetContext.getProtocolVersion());
+        } else {
+            targetContext.awaitSessionId(false, authenticationConfiguration);
+            builder = new RequestBuilder()
+                    .setRequestType(RequestType.CANCEL)
+                    .setLocator(locator)
+                    .setCancelIfRunning(cancelIfRunning)
+                    .setInvocationId(receiverContext.getClientInvocationContext().getAttachment(INVOCATION_ID))
+                    .setVersion(targetContext.getProtocolVersion());
+        }
         final CompletableFuture<Boolean> result = new CompletableFuture<>();
         ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
         targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
@@ -279,15 +470,27 @@ class HttpEJBReceiver extends EJBReceiver {
         return httpMarshallerFactory.createUnmarshaller(new HttpProtocolV1ObjectResolver(uri), HttpProtocolV1ObjectTable.INSTANCE);
     }
 
-    private TransactionInfo getTransactionInfo(final Transaction transaction, final URI uri) throws RollbackException, SystemException {
+    /**
+     * @param claimBegin whether the invocation may begin the remote transaction not begun yet
+     */
+    private TransactionInfo getTransactionInfo(final Transaction transaction, final URI uri, final boolean claimBegin) throws RollbackException, SystemException {
         if (transaction == null) {
             return nullTransaction();
         } else if (transaction instanceof RemoteTransaction) {
             final RemoteTransaction remoteTransaction = (RemoteTransaction) transaction;
             remoteTransaction.setLocation(uri);
+            if (claimBegin) {
+                final LazyTransactionBegin lazyBegin = remoteTransaction.getProviderInterface(LazyTransactionBegin.class);
+                final int timeout = lazyBegin == null ? -1 : lazyBegin.claimBegin();
+                if (timeout != -1) {
+                    return beginTransaction(timeout);
+                }
+            }
             final XidProvider xidProvider = remoteTransaction.getProviderInterface(XidProvider.class);
             if (xidProvider == null) throw EjbHttpClientMessages.MESSAGES.cannotEnlistTx();
-            return remoteTransaction(xidProvider.getXid());
+            final Xid xid = xidProvider.getXid();
+            if (xid == null) throw EjbHttpClientMessages.MESSAGES.transactionNotBegun();
+            return remoteTransaction(xid);
         } else if (transaction instanceof LocalTransaction) {
             final LocalTransaction localTransaction = (LocalTransaction) transaction;
             final XAOutflowHandle outflowHandle = transactionContext.outflowTransaction(uri, localTransaction);
@@ -30,8 +30,11 @@ import io.undertow.server.handlers.encoding.GzipEncodingProvider;
 import io.undertow.server.handlers.encoding.RequestEncodingHandler;
 import org.jboss.ejb.server.Association;
 import org.wildfly.httpclient.common.HttpServiceConfig;
+import org.wildfly.httpclient.transaction.ImportedTransactionCache;
+import org.wildfly.transaction.client.LocalTransaction;
 import org.wildfly.transaction.client.LocalTransactionContext;
 
+import javax.transaction.xa.Xid;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
@@ -48,13 +51,37 @@ public class HttpRemoteEjbService {
 
     public HttpRemoteEjbService(Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
                                 Function<String, Boolean> classResolverFilter) {
-        this(HttpServiceConfig.getInstance(), association, executorService, localTransactionContext, classResolverFilter);
+        this(HttpServiceConfig.getInstance(), association, executorService, localTransactionContext, classResolverFilter, null);
+    }
+
+    /**
+     * Creates the service able to begin transactions requested by invocations.
+     *
+     * @param xidResolver resolves the id of a transaction begun on behalf of an invocation, reported back to the client
+     */
+    public HttpRemoteEjbService(Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
+                                Function<String, Boolean> classResolverFilter, Function<LocalTransaction, Xid> xidResolver) {
+        this(HttpServiceConfig.getInstance(), association, executorService, localTransactionContext, classResolverFilter, xidResolver);
     }
 
     protected HttpRemoteEjbService(HttpServiceConfig config, Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
                                  Function<String, Boolean> classResolverFilter) {
+        this(config, association, executorService, localTransactionContext, classResolverFilter, null);
+    }
+
+    protected HttpRemoteEjbService(HttpServiceConfig config, Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
+                                 Function<String, Boolean> classResolverFilter, Function<LocalTransaction, Xid> xidResolver) {
         this.config = config;
-        this.serverHandlers = ServerHandlers.newInstance(config, association, executorService, localTransactionContext, classResolverFilter);
+        this.serverHandlers = ServerHandlers.newInstance(config, association, executorService, localTransactionContext, classResolverFilter, xidResolver);
+    }
+
+    /**
+     * Returns the cache of transactions imported by invocations, providing its hit and miss counts.
+     *
+     * @return the imported transaction cache
+     */
+    public ImportedTransactionCache getImportedTransactionCache() {
+        return serverHandlers.getImportedTransactions();
     }
 
     public HttpHandler createHttpHandler() {
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import static org.wildfly.httpclient.ejb.ClientHandlers.batchInvokeHandler;
+
+import io.undertow.client.ClientRequest;
+import org.jboss.marshalling.Marshaller;
+import org.wildfly.httpclient.common.HttpMarshallerFactory;
+import org.wildfly.httpclient.common.HttpTargetContext;
+import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.wildfly.security.manager.WildFlySecurityManager;
+import org.xnio.XnioExecutor;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups concurrent EJB invocations to the same server into {@link RequestType#INVOKE_BATCH} requests.
+ * The first invocation opens a batch that is sent once it holds {@code max-size} invocations or {@code max-delay}
+ * milliseconds elapsed, whichever comes first. Batching is disabled unless {@code max-size} is greater than one.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class InvocationBatcher {
+
+    private final Map<BatchKey, Batch> openBatches = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long maxDelay;
+
+    /**
+     * Creates new batcher configured by {@code org.wildfly.httpclient.ejb.batch.*} system properties.
+     */
+    InvocationBatcher() {
+        this(Integer.parseInt(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.batch.max-size", "0")),
+                Long.parseLong(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.batch.max-delay", "1")));
+    }
+
+    InvocationBatcher(final int maxSize, final long maxDelay) {
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Returns {@code true} if invocations are to be batched.
+     * @return whether batching is enabled
+     */
+    boolean isEnabled() {
+        return maxSize > 1;
+    }
+
+    /**
+     * Adds the invocation to the open batch of the target, opening new batch if there is none.
+     */
+    void invoke(final HttpTargetContext targetContext, final SSLContext sslContext, final AuthenticationConfiguration authenticationConfiguration,
+                final BatchedInvocation invocation) {
+        final BatchKey key = new BatchKey(targetContext, sslContext, authenticationConfiguration);
+        for (;;) {
+            final Batch batch = openBatches.computeIfAbsent(key, Batch::new);
+            if (batch.add(invocation)) {
+                return;
+            }
+            // the batch has been closed meanwhile
+            openBatches.remove(key, batch);
+        }
+    }
+
+    private void send(final BatchKey key, final List<BatchedInvocation> invocations) {
+        final HttpTargetContext targetContext = key.targetContext;
+        final ClientRequest request = new RequestBuilder()
+                .setRequestType(RequestType.INVOKE_BATCH)
+                .setVersion(targetContext.getProtocolVersion())
+                .createRequest(targetContext.getUri().getPath());
+        final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
+        final Marshaller marshaller;
+        try {
+            marshaller = marshallerFactory.createMarshaller(new HttpProtocolV1ObjectResolver(targetContext.getUri()), HttpProtocolV1ObjectTable.INSTANCE);
+        } catch (IOException e) {
+            for (BatchedInvocation invocation : invocations) {
+                invocation.failed(e);
+            }
+            return;
+        }
+        final ClientHandlers.BatchInvokeHandler handler = batchInvokeHandler(marshaller, marshallerFactory, targetContext.getUri(), invocations);
+        targetContext.sendRequest(request, key.sslContext, key.authenticationConfiguration, handler, handler, handler,
+                Constants.EJB_BATCH_RESPONSE, null);
+    }
+
+    private final class Batch implements Runnable {
+        private final BatchKey key;
+        private final List<BatchedInvocation> invocations = new ArrayList<>();
+        private boolean closed;
+        private volatile XnioExecutor.Key timeoutKey;
+
+        private Batch(final BatchKey key) {
+            this.key = key;
+        }
+
+        private boolean add(final BatchedInvocation invocation) {
+            final boolean first;
+            final boolean full;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                invocations.add(invocation);
+                first = invocations.size() == 1;
+                full = invocations.size() >= maxSize;
+                closed = full;
+            }
+            if (full) {
+                openBatches.remove(key, this);
+                final XnioExecutor.Key timeoutKey = this.timeoutKey;
+                if (timeoutKey != null) {
+                    timeoutKey.remove();
+                }
+                send(key, invocations);
+            } else if (first) {
+                timeoutKey = key.targetContext.getConnectionPool().getWorker().getIoThread().executeAfter(this, maxDelay, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            openBatches.remove(key, this);
+            send(key, invocations);
+        }
+    }
+
+    private static final class BatchKey {
+        private final HttpTargetContext targetContext;
+        private final SSLContext sslContext;
+        private final AuthenticationConfiguration authenticationConfiguration;
+        private final int hashCode;
+
+        private BatchKey(final HttpTargetContext targetContext, final SSLContext sslContext, final AuthenticationConfiguration authenticationConfiguration) {
+            this.targetContext = targetContext;
+            this.sslContext = sslContext;
+            this.authenticationConfiguration = authenticationConfiguration;
+            this.hashCode = Objects.hash(targetContext, sslContext, authenticationConfiguration);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BatchKey)) return false;
+            final BatchKey that = (BatchKey) o;
+            return targetContext == that.targetContext && sslContext == that.sslContext
+                    && Objects.equals(authenticationConfiguration, that.authenticationConfiguration);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import org.jboss.ejb.client.EJBModuleIdentifier;
+import org.jboss.ejb.server.ModuleAvailabilityListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Server side view of available EJB modules. Every availability change increments the modules version and
+ * is remembered so that clients knowing a recent version can be sent only the modules added and removed since.
+ * Versions are prefixed with a random epoch, so versions issued by a previous server run are never mistaken
+ * for current ones.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class ModuleAvailabilityTracker implements ModuleAvailabilityListener {
+
+    private static final int MAX_CHANGES = 128;
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final Set<EJBModuleIdentifier> modules = new HashSet<>();
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+    private long version;
+
+    @Override
+    public void moduleAvailable(final List<EJBModuleIdentifier> modules) {
+        update(modules, true);
+    }
+
+    @Override
+    public void moduleUnavailable(final List<EJBModuleIdentifier> modules) {
+        update(modules, false);
+    }
+
+    private void update(final List<EJBModuleIdentifier> modules, final boolean available) {
+        synchronized (this) {
+            version++;
+            if (available) {
+                this.modules.addAll(modules);
+            } else {
+                this.modules.removeAll(modules);
+            }
+            changes.addLast(new Change(version, new ArrayList<>(modules), available));
+            if (changes.size() > MAX_CHANGES) {
+                changes.removeFirst();
+            }
+        }
+        final Iterator<Runnable> i = listeners.iterator();
+        while (i.hasNext()) {
+            final Runnable listener = i.next();
+            i.remove();
+            listener.run();
+        }
+    }
+
+    /**
+     * Returns current version of available modules.
+     * @return modules version
+     */
+    synchronized String getVersion() {
+        return epoch + "-" + version;
+    }
+
+    /**
+     * Returns all available modules.
+     * @return full modules snapshot
+     */
+    synchronized DiscoveryUpdate getSnapshot() {
+        return DiscoveryUpdate.newInstance(getVersion(), true, new HashSet<>(modules), Collections.emptySet());
+    }
+
+    /**
+     * Returns modules changes since the given version. Full modules snapshot is returned if the given
+     * version is unknown or too old.
+     * @param knownVersion the version known by the client, may be {@code null}
+     * @return modules changes or {@code null} if modules did not change since {@code knownVersion}
+     */
+    synchronized DiscoveryUpdate getUpdate(final String knownVersion) {
+        final long known = parseVersion(knownVersion);
+        if (known == version) {
+            return null;
+        }
+        if (known < 0 || known > version || changes.isEmpty() || changes.peekFirst().version > known + 1) {
+            return getSnapshot();
+        }
+        final Set<EJBModuleIdentifier> added = new HashSet<>();
+        final Set<EJBModuleIdentifier> removed = new HashSet<>();
+        for (Change change : changes) {
+            if (change.version <= known) {
+                continue;
+            }
+            for (EJBModuleIdentifier module : change.modules) {
+                if (change.available) {
+                    removed.remove(module);
+                    added.add(module);
+                } else {
+                    added.remove(module);
+                    removed.add(module);
+                }
+            }
+        }
+        return DiscoveryUpdate.newInstance(getVersion(), false, added, removed);
+    }
+
+    /**
+     * Registers one-shot listener called on next modules change. The listener is called immediately
+     * if modules already differ from {@code knownVersion}.
+     * @param knownVersion the version known by the client
+     * @param listener the listener
+     */
+    void addListener(final String knownVersion, final Runnable listener) {
+        listeners.add(listener);
+        final boolean changed;
+        synchronized (this) {
+            changed = parseVersion(knownVersion) != version;
+        }
+        if (changed && listeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    void removeListener(final Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private long parseVersion(final String knownVersion) {
+        if (knownVersion == null || knownVersion.length() <= epoch.length() + 1 || !knownVersion.startsWith(epoch)
+                || knownVersion.charAt(epoch.length()) != '-') {
+            return -1;
+        }
+        try {
+            return Long.parseLong(knownVersion.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Change {
+        private final long version;
+        private final List<EJBModuleIdentifier> modules;
+        private final boolean available;
+
+        private Change(final long version, final List<EJBModuleIdentifier> modules, final boolean available) {
+            this.version = version;
+            this.modules = modules;
+            this.available = available;
+        }
+    }
+}
@@ -24,13 +24,20 @@ import static io.undertow.util.Headers.CONTENT_ENCODING;
 import static io.undertow.util.Headers.CONTENT_TYPE;
 import static io.undertow.util.Headers.CHUNKED;
 import static io.undertow.util.Headers.GZIP;
+import static io.undertow.util.Headers.IF_NONE_MATCH;
 import static io.undertow.util.Headers.TRANSFER_ENCODING;
 
 import static org.wildfly.httpclient.common.HeadersHelper.putRequestHeader;
 import static org.wildfly.httpclient.common.Protocol.VERSION_PATH;
+import static org.wildfly.httpclient.ejb.Constants.EJB_BATCH_INVOCATION;
+import static org.wildfly.httpclient.ejb.Constants.EJB_BATCH_RESPONSE;
 import static org.wildfly.httpclient.ejb.Constants.EJB_CONTEXT;
+import static org.wildfly.httpclient.ejb.Constants.EJB_DETACHED;
 import static org.wildfly.httpclient.ejb.Constants.EJB_DISCOVERY_RESPONSE;
+import static org.wildfly.httpclient.ejb.Constants.EJB_DISCOVERY_UPDATE;
 import static org.wildfly.httpclient.ejb.Constants.EJB_EXCEPTION;
+import static org.wildfly.httpclient.ejb.Constants.EJB_ONE_WAY;
+import static org.wildfly.httpclient.ejb.Constants.EJB_RESULT_WAIT;
 import static org.wildfly.httpclient.ejb.Constants.INVOCATION_ACCEPT;
 import static org.wildfly.httpclient.ejb.Constants.INVOCATION_ID;
 import static org.wildfly.httpclient.ejb.Constants.INVOCATION;
@@ -41,9 +48,16 @@ import static java.net.URLEncoder.encode;
 
 import io.undertow.client.ClientRequest;
 import org.jboss.ejb.client.EJBLocator;
+import org.wildfly.httpclient.common.BoundedCache;
+import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.httpclient.common.Protocol;
+import org.wildfly.security.manager.WildFlySecurityManager;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * HTTP EJB module client request builder. Encapsulates all information needed to create HTTP EJB client requests.
@@ -54,6 +68,16 @@ import java.lang.reflect.Method;
  */
 final class RequestBuilder {
 
+    private static final int INVOCATION_PATH_CACHE_SIZE = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.invocation-path-cache-size", "256"));
+    private static final BoundedCache<InvocationPathKey, InvocationPath> INVOCATION_PATHS = new BoundedCache<>(INVOCATION_PATH_CACHE_SIZE);
+    private static final ClassValue<Map<Method, MethodKey>> METHOD_KEYS = new ClassValue<Map<Method, MethodKey>>() {
+        @Override
+        protected Map<Method, MethodKey> computeValue(final Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     private EJBLocator<?> locator;
     private String beanId;
     private String view;
@@ -64,6 +88,11 @@ final class RequestBuilder {
     private boolean cancelIfRunning;
     private boolean compressRequest;
     private boolean compressResponse;
+    private String discoveryVersion;
+    private boolean detached;
+    private boolean oneWay;
+    private String invocationHandle;
+    private long resultWait;
 
     RequestBuilder setCompressRequest(final boolean compressRequest) {
         this.compressRequest = compressRequest;
@@ -115,11 +144,41 @@ final class RequestBuilder {
         return this;
     }
 
+    RequestBuilder setDiscoveryVersion(final String discoveryVersion) {
+        this.discoveryVersion = discoveryVersion;
+        return this;
+    }
+
+    RequestBuilder setDetached(final boolean detached) {
+        this.detached = detached;
+        return this;
+    }
+
+    RequestBuilder setOneWay(final boolean oneWay) {
+        this.oneWay = oneWay;
+        return this;
+    }
+
+    RequestBuilder setInvocationHandle(final String invocationHandle) {
+        this.invocationHandle = invocationHandle;
+        return this;
+    }
+
+    RequestBuilder setResultWait(final long resultWait) {
+        this.resultWait = resultWait;
+        return this;
+    }
+
     ClientRequest createRequest(final String prefix) {
         final ClientRequest request = new ClientRequest();
         setRequestMethod(request);
         setRequestPath(request, prefix);
         setRequestHeaders(request);
+        request.putAttachment(HttpTargetContext.PRIORITY, requestType.getPriority());
+        if (requestType == RequestType.DISCOVER_UPDATES || requestType == RequestType.RESULT && resultWait > 0) {
+            // the server holds these until there is something to respond with
+            request.putAttachment(HttpTargetContext.LONG_POLL, Boolean.TRUE);
+        }
         return request;
     }
 
@@ -130,9 +189,13 @@ final class RequestBuilder {
     private void setRequestPath(final ClientRequest request, final String prefix) {
         switch (requestType) {
             case INVOKE: request.setPath(getStartEjbInvocationRequestPath(prefix)); break;
+            case INVOKE_BATCH: request.setPath(getBatchEjbInvocationRequestPath(prefix)); break;
             case CREATE_SESSION: request.setPath(getCreateSessionEjbRequestPath(prefix)); break;
             case DISCOVER: request.setPath(getDiscoverEjbRequestPath(prefix)); break;
+            case DISCOVER_UPDATES: request.setPath(getDiscoverUpdatesEjbRequestPath(prefix)); break;
             case CANCEL: request.setPath(getCancelEjbInvocationRequestPath(prefix)); break;
+            case RESULT: request.setPath(getResultEjbInvocationRequestPath(prefix)); break;
+            case CANCEL_RESULT: request.setPath(getCancelResultEjbInvocationRequestPath(prefix)); break;
             default: throw new IllegalStateException();
         }
     }
@@ -145,6 +208,12 @@ final class RequestBuilder {
                 if (invocationId != null) {
                     putRequestHeader(request, INVOCATION_ID, invocationId);
                 }
+                if (detached) {
+                    putRequestHeader(request, EJB_DETACHED, "true");
+                }
+                if (oneWay) {
+                    putRequestHeader(request, EJB_ONE_WAY, "true");
+                }
                 if (compressRequest) {
                     putRequestHeader(request, CONTENT_ENCODING, GZIP);
                 }
@@ -153,20 +222,55 @@ final class RequestBuilder {
                 }
                 putRequestHeader(request, TRANSFER_ENCODING, CHUNKED);
             } break;
+            case INVOKE_BATCH: {
+                putRequestHeader(request, ACCEPT, EJB_BATCH_RESPONSE + "," + EJB_EXCEPTION);
+                putRequestHeader(request, CONTENT_TYPE, EJB_BATCH_INVOCATION);
+                putRequestHeader(request, TRANSFER_ENCODING, CHUNKED);
+            } break;
             case CREATE_SESSION: {
                 putRequestHeader(request, ACCEPT, EJB_EXCEPTION);
                 putRequestHeader(request, CONTENT_TYPE, SESSION_OPEN);
             } break;
             case DISCOVER: {
                 putRequestHeader(request, ACCEPT, EJB_DISCOVERY_RESPONSE + "," + EJB_EXCEPTION);
+                if (discoveryVersion != null) {
+                    putRequestHeader(request, IF_NONE_MATCH, "\"" + discoveryVersion + "\"");
+                }
+            } break;
+            case DISCOVER_UPDATES: {
+                putRequestHeader(request, ACCEPT, EJB_DISCOVERY_UPDATE + "," + EJB_EXCEPTION);
+            } break;
+            case RESULT: {
+                putRequestHeader(request, ACCEPT, INVOCATION_ACCEPT + "," + EJB_EXCEPTION);
+                if (resultWait > 0) {
+                    putRequestHeader(request, EJB_RESULT_WAIT, Long.toString(resultWait));
+                }
             } break;
-            case CANCEL: {
+            case CANCEL:
+            case CANCEL_RESULT: {
                 // no headers to be added
             } break;
             default: throw new IllegalStateException();
         }
     }
 
+    /**
+     * Returns the path of the configured invocation relative to the {@link RequestType#INVOKE} operation path.
+     * Such paths address the invocations carried by {@link RequestType#INVOKE_BATCH} requests.
+     * @return the invocation path
+     */
+    String createInvocationPath() {
+        final StringBuilder operationPath = new StringBuilder();
+        appendOperationPath(operationPath, null);
+        return getStartEjbInvocationRequestPath(null).substring(operationPath.length());
+    }
+
+    private String getBatchEjbInvocationRequestPath(final String prefix) {
+        final StringBuilder sb = new StringBuilder();
+        appendOperationPath(sb, prefix);
+        return sb.toString();
+    }
+
     private String getCreateSessionEjbRequestPath(final String prefix) {
         final StringBuilder sb = new StringBuilder();
         appendOperationPath(sb, prefix);
@@ -180,6 +284,13 @@ final class RequestBuilder {
         return sb.toString();
     }
 
+    private String getDiscoverUpdatesEjbRequestPath(final String prefix) {
+        final StringBuilder sb = new StringBuilder();
+        appendOperationPath(sb, prefix);
+        appendPath(sb, discoveryVersion, false);
+        return sb.toString();
+    }
+
     private String getCancelEjbInvocationRequestPath(final String prefix) {
         final StringBuilder sb = new StringBuilder();
         appendOperationPath(sb, prefix);
@@ -189,19 +300,51 @@ final class RequestBuilder {
         return sb.toString();
     }
 
-    private String getStartEjbInvocationRequestPath(final String prefix) {
+    private String getResultEjbInvocationRequestPath(final String prefix) {
         final StringBuilder sb = new StringBuilder();
         appendOperationPath(sb, prefix);
-        appendBeanPath(sb);
-        appendPath(sb, beanId, false);
-        appendPath(sb, view, false);
-        appendPath(sb, method.getName(), false);
-        for (final Class<?> param : method.getParameterTypes()) {
-            appendPath(sb, param.getName(), true);
+        appendPath(sb, invocationHandle, false);
+        return sb.toString();
+    }
+
+    private String getCancelResultEjbInvocationRequestPath(final String prefix) {
+        final StringBuilder sb = new StringBuilder();
+        appendOperationPath(sb, prefix);
+        appendPath(sb, invocationHandle, false);
+        appendPath(sb, "" + cancelIfRunning, false);
+        return sb.toString();
+    }
+
+    private String getStartEjbInvocationRequestPath(final String prefix) {
+        // only the bean id differs between invocations of the same method, everything else is cached
+        final MethodKey methodKey = METHOD_KEYS.get(method.getDeclaringClass()).computeIfAbsent(method, MethodKey::new);
+        final String app = locator.getAppName();
+        final String module = locator.getModuleName();
+        final String distinct = locator.getDistinctName();
+        final String bean = locator.getBeanName();
+        InvocationPath path = methodKey.lastPath;
+        if (path == null || !path.key.matches(prefix, version, app, module, distinct, bean, view)) {
+            final InvocationPathKey key = new InvocationPathKey(prefix, version, app, module, distinct, bean, view, methodKey);
+            path = INVOCATION_PATHS.computeIfAbsent(key, this::newInvocationPath);
+            methodKey.lastPath = path;
         }
+        final StringBuilder sb = new StringBuilder(path.head.length() + path.tail.length() + 64);
+        sb.append(path.head);
+        appendPath(sb, beanId, false);
+        sb.append(path.tail);
         return sb.toString();
     }
 
+    private InvocationPath newInvocationPath(final InvocationPathKey key) {
+        final StringBuilder head = new StringBuilder();
+        appendOperationPath(head, key.prefix);
+        appendBeanPath(head);
+        final StringBuilder tail = new StringBuilder();
+        appendPath(tail, view, false);
+        tail.append(key.method.path);
+        return new InvocationPath(key, head.toString(), tail.toString());
+    }
+
     private void appendBeanPath(final StringBuilder sb) {
         appendPath(sb, locator.getAppName(), true);
         appendPath(sb, locator.getModuleName(), true);
@@ -225,4 +368,112 @@ final class RequestBuilder {
         sb.append(path == null || path.isEmpty() ? "-" : encode ? encode(path, UTF_8) : path);
     }
 
+    private static final class InvocationPath {
+        private final InvocationPathKey key;
+        private final String head;
+        private final String tail;
+
+        private InvocationPath(final InvocationPathKey key, final String head, final String tail) {
+            this.key = key;
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * Method part of the invocation path, computed once per {@link Method}. Made of strings only, so that the JVM wide
+     * cache does not keep deployment class loaders reachable when the client runs inside a server.
+     */
+    private static final class MethodKey {
+        private final String name;
+        private final String[] parameterTypeNames;
+        private final String path;
+        private final int hashCode;
+        // the path this method was last invoked with, most methods are only ever invoked on a single bean
+        private volatile InvocationPath lastPath;
+
+        private MethodKey(final Method method) {
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            final StringBuilder sb = new StringBuilder();
+            name = method.getName();
+            appendPath(sb, name, false);
+            parameterTypeNames = new String[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypeNames[i] = parameterTypes[i].getName();
+                appendPath(sb, parameterTypeNames[i], true);
+            }
+            path = sb.toString();
+            hashCode = 31 * name.hashCode() + Arrays.hashCode(parameterTypeNames);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MethodKey)) return false;
+            final MethodKey that = (MethodKey) o;
+            return hashCode == that.hashCode && name.equals(that.name) && Arrays.equals(parameterTypeNames, that.parameterTypeNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Invocation path cache key.
+     */
+    private static final class InvocationPathKey {
+        private final String prefix;
+        private final int version;
+        private final String app;
+        private final String module;
+        private final String distinct;
+        private final String bean;
+        private final String view;
+        private final MethodKey method;
+        private final int hashCode;
+
+        private InvocationPathKey(final String prefix, final int version, final String app, final String module, final String distinct,
+                                  final String bean, final String view, final MethodKey method) {
+            this.prefix = prefix;
+            this.version = version;
+            this.app = app;
+            this.module = module;
+            this.distinct = distinct;
+            this.bean = bean;
+            this.view = view;
+            this.method = method;
+            int hash = Objects.hashCode(prefix);
+            hash = 31 * hash + version;
+            hash = 31 * hash + Objects.hashCode(app);
+            hash = 31 * hash + Objects.hashCode(module);
+            hash = 31 * hash + Objects.hashCode(distinct);
+            hash = 31 * hash + Objects.hashCode(bean);
+            hash = 31 * hash + Objects.hashCode(view);
+            this.hashCode = 31 * hash + method.hashCode;
+        }
+
+        private boolean matches(final String prefix, final int version, final String app, final String module, final String distinct,
+                                final String bean, final String view) {
+            return this.version == version && Objects.equals(this.prefix, prefix) && Objects.equals(this.app, app)
+                    && Objects.equals(this.module, module) && Objects.equals(this.distinct, distinct) && Objects.equals(this.bean, bean)
+                    && Objects.equals(this.view, view);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof InvocationPathKey)) return false;
+            final InvocationPathKey that = (InvocationPathKey) o;
+            return hashCode == that.hashCode && matches(that.prefix, that.version, that.app, that.module, that.distinct, that.bean, that.view)
+                    && method.equals(that.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
 }
@@ -21,8 +21,11 @@ package org.wildfly.httpclient.ejb;
 import static io.undertow.util.Methods.DELETE;
 import static io.undertow.util.Methods.GET;
 import static io.undertow.util.Methods.POST;
+import static org.wildfly.httpclient.common.RequestPriority.HIGH;
+import static org.wildfly.httpclient.common.RequestPriority.LOW;
 
 import io.undertow.util.HttpString;
+import org.wildfly.httpclient.common.RequestPriority;
 
 /**
  * HTTP EJB module invocation types. Each invocation type has {@linkplain #getName() name}, {@linkplain #getMethod() method}
@@ -31,15 +34,27 @@ import io.undertow.util.HttpString;
  *     <li>{@link #INVOKE}<br>
  *     Start EJB method invocation.
  *     </li>
+ *     <li>{@link #INVOKE_BATCH}<br>
+ *     Start multiple EJB method invocations at once.
+ *     </li>
  *     <li>{@link #CANCEL}<br>
  *     Cancel EJB method invocation.
  *     </li>
+ *     <li>{@link #RESULT}<br>
+ *     Retrieve outcome of detached EJB method invocation.
+ *     </li>
+ *     <li>{@link #CANCEL_RESULT}<br>
+ *     Cancel detached EJB method invocation.
+ *     </li>
  *     <li>{@link #CREATE_SESSION}<br>
  *     Create EJB session bean.
  *     </li>
  *     <li>{@link #DISCOVER}<br>
  *     Discover available EJB beans.
  *     </li>
+ *     <li>{@link #DISCOVER_UPDATES}<br>
+ *     Wait for changes of available EJB beans.
+ *     </li>
  * </ul>
  *
  * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
@@ -50,10 +65,22 @@ enum RequestType {
      * {@code INVOKE} invocation type: used to start EJB method invocation via HTTP protocol.
      */
     INVOKE(POST, "/invoke"),
+    /**
+     * {@code INVOKE_BATCH} invocation type: used to start multiple EJB method invocations via single HTTP request.
+     */
+    INVOKE_BATCH(POST, "/batch"),
     /**
      * {@code CANCEL} invocation type: used to cancel EJB method invocation via HTTP protocol.
      */
-    CANCEL(DELETE, "/cancel"),
+    CANCEL(DELETE, "/cancel", HIGH),
+    /**
+     * {@code RESULT} invocation type: used to retrieve outcome of detached EJB method invocation via HTTP protocol.
+     */
+    RESULT(GET, "/result"),
+    /**
+     * {@code CANCEL_RESULT} invocation type: used to cancel detached EJB method invocation via HTTP protocol.
+     */
+    CANCEL_RESULT(DELETE, "/cancel-result", HIGH),
     /**
      * {@code OPEN} invocation type: used to create EJB session bean via HTTP protocol.
      */
@@ -61,14 +88,24 @@ enum RequestType {
     /**
      * {@code DISCOVER} invocation type: used to discover available EJB beans via HTTP protocol.
      */
-    DISCOVER(GET, "/discover");
+    DISCOVER(GET, "/discover", LOW),
+    /**
+     * {@code DISCOVER_UPDATES} invocation type: used to wait for changes of available EJB beans via HTTP protocol.
+     */
+    DISCOVER_UPDATES(GET, "/discover-updates", LOW);
 
     private final HttpString method;
     private final String path;
+    private final RequestPriority priority;
 
     RequestType(final HttpString method, final String path) {
+        this(method, path, RequestPriority.NORMAL);
+    }
+
+    RequestType(final HttpString method, final String path, final RequestPriority priority) {
         this.method = method;
         this.path = path;
+        this.priority = priority;
     }
 
     /**
@@ -95,4 +132,12 @@ enum RequestType {
         return path;
     }
 
+    /**
+     * Returns the priority of this invocation while waiting for a pooled connection.
+     * @return this invocation priority.
+     */
+    final RequestPriority getPriority() {
+        return priority;
+    }
+
 }
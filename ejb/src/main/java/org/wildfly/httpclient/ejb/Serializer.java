@@ -17,9 +17,11 @@
  */
 package org.wildfly.httpclient.ejb;
 
+import static org.wildfly.httpclient.ejb.TransactionInfo.BEGIN_TRANSACTION;
 import static org.wildfly.httpclient.ejb.TransactionInfo.LOCAL_TRANSACTION;
 import static org.wildfly.httpclient.ejb.TransactionInfo.NULL_TRANSACTION;
 import static org.wildfly.httpclient.ejb.TransactionInfo.REMOTE_TRANSACTION;
+import static org.wildfly.httpclient.ejb.TransactionInfo.beginTransaction;
 import static org.wildfly.httpclient.ejb.TransactionInfo.localTransaction;
 import static org.wildfly.httpclient.ejb.TransactionInfo.nullTransaction;
 import static org.wildfly.httpclient.ejb.TransactionInfo.remoteTransaction;
@@ -31,6 +33,7 @@ import javax.transaction.xa.Xid;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -130,12 +133,29 @@ final class Serializer {
         return ret;
     }
 
+    static void serializeDiscoveryUpdate(final ObjectOutput output, final DiscoveryUpdate update) throws IOException {
+        output.writeBoolean(update.isFull());
+        serializeSet(output, update.getAddedModules());
+        serializeSet(output, update.getRemovedModules());
+    }
+
+    static DiscoveryUpdate deserializeDiscoveryUpdate(final ObjectInput input, final String version) throws IOException, ClassNotFoundException {
+        final boolean full = input.readBoolean();
+        final Set<EJBModuleIdentifier> added = deserializeSet(input);
+        final Set<EJBModuleIdentifier> removed = deserializeSet(input);
+        return DiscoveryUpdate.newInstance(version, full, added, removed);
+    }
+
     static void serializeTransaction(final ObjectOutput output, final TransactionInfo txnInfo) throws IOException {
         final byte transactionType = txnInfo.getType();
         output.writeByte(transactionType);
         if (transactionType == NULL_TRANSACTION) {
             return;
         }
+        if (transactionType == BEGIN_TRANSACTION) {
+            output.writeInt(txnInfo.getRemainingTime());
+            return;
+        }
         serializeXid(output, txnInfo.getXid());
         if (transactionType == REMOTE_TRANSACTION) {
             return;
@@ -149,6 +169,8 @@ final class Serializer {
         final int txnType = input.readByte();
         if (txnType == NULL_TRANSACTION) {
             return nullTransaction();
+        } else if (txnType == BEGIN_TRANSACTION) {
+            return beginTransaction(input.readInt());
         } else if (txnType == REMOTE_TRANSACTION || txnType == LOCAL_TRANSACTION) {
             final Xid xid = deserializeXid(input);
             return txnType == REMOTE_TRANSACTION ? remoteTransaction(xid) : localTransaction(xid, input.readInt());
@@ -175,4 +197,21 @@ final class Serializer {
         return new SimpleXid(formatId, globalId, branchId);
     }
 
+    /**
+     * Encodes the Xid as a header value, {@code formatId.globalId.branchId} with both ids base64url encoded.
+     */
+    static String xidToHeader(final Xid xid) {
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return xid.getFormatId() + "." + encoder.encodeToString(xid.getGlobalTransactionId()) + "." + encoder.encodeToString(xid.getBranchQualifier());
+    }
+
+    static Xid xidFromHeader(final String header) {
+        final String[] parts = header.split("\\.", -1);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException(header);
+        }
+        final Base64.Decoder decoder = Base64.getUrlDecoder();
+        return new SimpleXid(Integer.parseInt(parts[0]), decoder.decode(parts[1]), decoder.decode(parts[2]));
+    }
+
 }
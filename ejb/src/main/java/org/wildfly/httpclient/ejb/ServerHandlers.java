@@ -18,16 +18,28 @@
 package org.wildfly.httpclient.ejb;
 
 import static io.undertow.util.Headers.CONTENT_TYPE;
+import static io.undertow.util.Headers.ETAG;
+import static io.undertow.util.Headers.IF_NONE_MATCH;
+import static io.undertow.util.StatusCodes.ACCEPTED;
 import static io.undertow.util.StatusCodes.BAD_REQUEST;
 import static io.undertow.util.StatusCodes.INTERNAL_SERVER_ERROR;
 import static io.undertow.util.StatusCodes.NO_CONTENT;
 import static io.undertow.util.StatusCodes.NOT_FOUND;
+import static io.undertow.util.StatusCodes.NOT_MODIFIED;
+import static io.undertow.util.StatusCodes.REQUEST_ENTITY_TOO_LARGE;
+import static io.undertow.util.StatusCodes.SERVICE_UNAVAILABLE;
 import static org.wildfly.httpclient.common.ByteInputs.byteInputOf;
 import static org.wildfly.httpclient.common.ByteOutputs.byteOutputOf;
 import static org.wildfly.httpclient.common.HeadersHelper.getRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.putResponseHeader;
+import static org.wildfly.httpclient.common.HttpServerHelper.rejectExpired;
 import static org.wildfly.httpclient.common.HttpServerHelper.sendException;
+import static org.wildfly.httpclient.common.HttpServerHelper.sendServiceUnavailable;
+import static org.wildfly.httpclient.ejb.Constants.EJB_BATCH_INVOCATION;
+import static org.wildfly.httpclient.ejb.Constants.EJB_BATCH_RESPONSE;
 import static org.wildfly.httpclient.ejb.Constants.EJB_DISCOVERY_RESPONSE;
+import static org.wildfly.httpclient.ejb.Constants.EJB_DISCOVERY_UPDATE;
+import static org.wildfly.httpclient.ejb.Constants.EJB_DISCOVERY_VERSION;
 import static org.wildfly.httpclient.ejb.Constants.EJB_RESPONSE_NEW_SESSION;
 import static org.wildfly.httpclient.ejb.Constants.EJB_SESSION_ID;
 import static org.wildfly.httpclient.ejb.Constants.INVOCATION;
@@ -36,6 +48,8 @@ import static org.wildfly.httpclient.ejb.Constants.SESSION_OPEN;
 import static org.wildfly.httpclient.ejb.Serializer.deserializeMap;
 import static org.wildfly.httpclient.ejb.Serializer.deserializeObjectArray;
 import static org.wildfly.httpclient.ejb.Serializer.deserializeTransaction;
+import static org.wildfly.httpclient.ejb.Serializer.xidToHeader;
+import static org.wildfly.httpclient.ejb.Serializer.serializeDiscoveryUpdate;
 import static org.wildfly.httpclient.ejb.Serializer.serializeObject;
 import static org.wildfly.httpclient.ejb.Serializer.serializeMap;
 import static org.wildfly.httpclient.ejb.Serializer.serializeSet;
@@ -47,6 +61,7 @@ import io.undertow.server.handlers.CookieImpl;
 import io.undertow.server.session.SecureRandomSessionIdGenerator;
 import io.undertow.server.session.SessionIdGenerator;
 import io.undertow.util.AttachmentKey;
+import io.undertow.util.SameThreadExecutor;
 import jakarta.ejb.EJBHome;
 import jakarta.ejb.NoSuchEJBException;
 import jakarta.transaction.SystemException;
@@ -70,31 +85,46 @@ import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.SimpleClassResolver;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.BoundedCache;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.ElytronIdentityHandler;
 import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpServiceConfig;
 import org.wildfly.common.annotation.NotNull;
+import org.wildfly.httpclient.transaction.ImportedTransactionCache;
 import org.wildfly.security.auth.server.SecurityIdentity;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.wildfly.transaction.client.ImportResult;
 import org.wildfly.transaction.client.LocalTransaction;
 import org.wildfly.transaction.client.LocalTransactionContext;
+import org.xnio.XnioExecutor;
 
 import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.InvalidClassException;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -104,37 +134,103 @@ import java.util.function.Function;
  */
 final class ServerHandlers {
 
+    private static final int INVOCATION_TARGET_CACHE_SIZE = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.invocation-target-cache-size", "256"));
+    private static final int BATCH_MAX_INVOCATIONS = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.batch.max-invocations", "1024"));
+    private static final int BATCH_MAX_INVOCATION_LENGTH = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.batch.max-invocation-length", "8388608"));
+    private static final long BATCH_MAX_LENGTH = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.batch.max-length", "33554432"));
+    private static final int DETACHED_MAX_INVOCATION_LENGTH = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results.max-invocation-length", "8388608"));
+    private static final long DISCOVERY_UPDATES_TIMEOUT = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.discovery.updates-timeout", "30000"));
+    private static final int DETACHED_RESULTS_MAX_SIZE = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results.max-size", "1024"));
+    private static final long DETACHED_RESULTS_EXPIRATION = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results.expiration", "60000"));
+    private static final long DETACHED_RESULTS_MAX_WAIT = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.detached-results.max-wait", "30000"));
+    private static final int ADMISSION_MAX_CONCURRENT = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.admission.max-concurrent", "0"));
+    private static final int ADMISSION_MAX_QUEUED = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.admission.max-queued", "0"));
+    private static final AdmissionController.Scope ADMISSION_SCOPE = AdmissionController.Scope.valueOf(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.admission.scope", "server").toUpperCase(Locale.ENGLISH));
+    private static final long ADMISSION_RETRY_AFTER = Long.parseLong(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.admission.retry-after", "1"));
+    private static final int IMPORTED_TRANSACTIONS_CACHE_SIZE = Integer.parseInt(
+            WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.ejb.imported-transaction-cache-size", "1024"));
+
     private final HttpServiceConfig config;
     private final Association association;
     private final ExecutorService executorService;
     private final LocalTransactionContext ctx;
     private final Function<String, Boolean> classFilter;
+    private final Function<LocalTransaction, Xid> xidResolver;
     private final Map<InvocationIdentifier, CancelHandle> cancellationFlags = new ConcurrentHashMap<>();
+    private final ModuleAvailabilityTracker availableModules = new ModuleAvailabilityTracker();
+    private final DetachedResultStore detachedResults = new DetachedResultStore(DETACHED_RESULTS_MAX_SIZE, DETACHED_RESULTS_EXPIRATION);
+    private final AdmissionController admissionController = new AdmissionController(ADMISSION_MAX_CONCURRENT, ADMISSION_MAX_QUEUED, ADMISSION_SCOPE);
+    private final ImportedTransactionCache importedTransactions = new ImportedTransactionCache(IMPORTED_TRANSACTIONS_CACHE_SIZE);
+    // resolved invocation targets shared by the invocation handlers, evicted when their module goes away
+    private final BoundedCache<HttpInvocationHandler.InvocationTargetKey, HttpInvocationHandler.InvocationTarget> invocationTargets =
+            new BoundedCache<>(INVOCATION_TARGET_CACHE_SIZE);
 
     private ServerHandlers(final HttpServiceConfig config, final Association association, final ExecutorService executorService, final LocalTransactionContext ctx,
-                           final Function<String, Boolean> classFilter) {
+                           final Function<String, Boolean> classFilter, final Function<LocalTransaction, Xid> xidResolver) {
         this.config = config;
         this.association = association;
         this.executorService = executorService;
         this.ctx = ctx;
         this.classFilter = classFilter;
+        this.xidResolver = xidResolver;
+        association.registerModuleAvailabilityListener(availableModules);
+        association.registerModuleAvailabilityListener(new ModuleAvailabilityListener() {
+            @Override
+            public void moduleAvailable(List<EJBModuleIdentifier> modules) {
+                // nothing to do, targets are resolved lazily
+            }
+
+            @Override
+            public void moduleUnavailable(List<EJBModuleIdentifier> modules) {
+                // resolved view classes and locators must not outlive the deployment class loader
+                invocationTargets.removeIf((key, target) -> modules.contains(target.ejbIdentifier.getModuleIdentifier()));
+            }
+        });
     }
 
     static ServerHandlers newInstance(final HttpServiceConfig config, final Association association, final ExecutorService executorService, final LocalTransactionContext ctx,
-                                      final Function<String, Boolean> classFilter) {
-        return new ServerHandlers(config, association, executorService, ctx, classFilter);
+                                      final Function<String, Boolean> classFilter, final Function<LocalTransaction, Xid> xidResolver) {
+        return new ServerHandlers(config, association, executorService, ctx, classFilter, xidResolver);
+    }
+
+    ImportedTransactionCache getImportedTransactions() {
+        return importedTransactions;
     }
 
     HttpHandler handlerOf(final RequestType requestType) {
         switch (requestType) {
             case INVOKE:
-                return new HttpInvocationHandler(config, association, executorService, ctx, cancellationFlags, classFilter);
+                return new HttpInvocationHandler(config, association, executorService, ctx, xidResolver, importedTransactions, cancellationFlags, classFilter, detachedResults,
+                        admissionController.isEnabled() ? admissionController : null, invocationTargets);
+            case INVOKE_BATCH:
+                return new HttpBatchInvocationHandler(config, executorService,
+                        new HttpInvocationHandler(config, association, executorService, ctx, xidResolver, importedTransactions, cancellationFlags, classFilter, null,
+                                admissionController.isEnabled() ? admissionController : null, invocationTargets));
             case CANCEL :
                 return new HttpCancelHandler(config, executorService, cancellationFlags);
+            case RESULT:
+                return new HttpDetachedResultHandler(config, executorService, detachedResults);
+            case CANCEL_RESULT:
+                return new HttpCancelDetachedHandler(executorService, detachedResults);
             case CREATE_SESSION:
-                return new HttpSessionOpenHandler(config, association, executorService, ctx);
+                return new HttpSessionOpenHandler(config, association, executorService, ctx, importedTransactions);
             case DISCOVER:
-                return new HttpDiscoveryHandler(config, executorService, association);
+                return new HttpDiscoveryHandler(config, executorService, availableModules);
+            case DISCOVER_UPDATES:
+                return new HttpDiscoveryUpdatesHandler(config, executorService, availableModules);
             default:
                 throw new IllegalStateException();
         }
@@ -144,19 +240,31 @@ final class ServerHandlers {
         private final Association association;
         private final ExecutorService executorService;
         private final LocalTransactionContext localTransactionContext;
+        private final Function<LocalTransaction, Xid> xidResolver;
+        private final ImportedTransactionCache importedTransactions;
         private final Map<InvocationIdentifier, CancelHandle> cancellationFlags;
         private final Function<String, Boolean> classResolverFilter;
         private final HttpServiceConfig config;
+        private final DetachedResultStore detachedResults;
+        private final AdmissionController admissionController;
+        private final BoundedCache<InvocationTargetKey, InvocationTarget> invocationTargets;
 
         HttpInvocationHandler(HttpServiceConfig config, Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
-                              Map<InvocationIdentifier, CancelHandle> cancellationFlags, Function<String, Boolean> classResolverFilter) {
+                              Function<LocalTransaction, Xid> xidResolver, ImportedTransactionCache importedTransactions, Map<InvocationIdentifier, CancelHandle> cancellationFlags, Function<String, Boolean> classResolverFilter,
+                              DetachedResultStore detachedResults, AdmissionController admissionController,
+                              BoundedCache<InvocationTargetKey, InvocationTarget> invocationTargets) {
             super(executorService);
             this.config = config;
+            this.detachedResults = detachedResults;
+            this.admissionController = admissionController;
             this.association = association;
             this.executorService = executorService;
             this.localTransactionContext = localTransactionContext;
+            this.xidResolver = xidResolver;
+            this.importedTransactions = importedTransactions;
             this.cancellationFlags = cancellationFlags;
             this.classResolverFilter = classResolverFilter;
+            this.invocationTargets = invocationTargets;
         }
 
         @Override
@@ -169,30 +277,13 @@ final class ServerHandlers {
                 return;
             }
 
-            String relativePath = exchange.getRelativePath();
-            if(relativePath.startsWith("/")) {
-                relativePath = relativePath.substring(1);
-            }
-            String[] parts = relativePath.split("/");
-            if(parts.length < 7) {
+            final TargetedInvocation invocation = resolveInvocation(exchange.getRelativePath());
+            if (invocation == null) {
                 exchange.setStatusCode(NOT_FOUND);
                 return;
             }
-            final String app = handleDash(parts[0]);
-            final String module = handleDash(parts[1]);
-            final String distinct = handleDash(parts[2]);
-            final String bean = parts[3];
-
-
-            String originalSessionId = handleDash(parts[4]);
-            final byte[] sessionID = originalSessionId.isEmpty() ? null : Base64.getUrlDecoder().decode(originalSessionId);
-            String viewName = parts[5];
-            String method = parts[6];
-            String[] parameterTypeNames = new String[parts.length - 7];
-            System.arraycopy(parts, 7, parameterTypeNames, 0, parameterTypeNames.length);
             Cookie cookie = exchange.getRequestCookie(JSESSIONID_COOKIE_NAME);
             final String sessionAffinity = cookie != null ? cookie.getValue() : null;
-            final EJBIdentifier ejbIdentifier = new EJBIdentifier(app, module, bean, distinct);
 
             final String cancellationId = getRequestHeader(exchange, Constants.INVOCATION_ID);
             final InvocationIdentifier identifier;
@@ -201,161 +292,358 @@ final class ServerHandlers {
             } else {
                 identifier = null;
             }
-
-            exchange.dispatch(executorService, () -> {
-                CancelHandle handle = association.receiveInvocationRequest(new InvocationRequest() {
-
-                    @Override
-                    public SocketAddress getPeerAddress() {
-                        return exchange.getSourceAddress();
-                    }
-
-                    @Override
-                    public SocketAddress getLocalAddress() {
-                        return exchange.getDestinationAddress();
+            final InvocationTarget target = invocation.target;
+            final AdmissionController.Limiter limiter = admissionController == null ? null
+                    : admissionController.limiterOf(target.app, target.module, target.distinct, target.bean);
+
+            if (detachedResults != null && getRequestHeader(exchange, Constants.EJB_DETACHED) != null) {
+                final String handle = detachedResults.register();
+                if (handle != null) {
+                    final DetachedResultStore.Entry entry = detachedResults.get(handle);
+                    // the exchange ends before the invocation does, so its content must be read upfront
+                    final byte[] content;
+                    try (InputStream is = exchange.getInputStream()) {
+                        content = is.readNBytes(DETACHED_MAX_INVOCATION_LENGTH);
+                        if (is.read() != -1) {
+                            detachedResults.remove(handle, entry);
+                            exchange.setStatusCode(REQUEST_ENTITY_TOO_LARGE);
+                            EjbHttpClientMessages.MESSAGES.debugf("Detached invocation %s too large", exchange.getRelativePath());
+                            return;
+                        }
                     }
+                    dispatchInvocation(exchange, limiter, responder -> {
+                        final InvocationSource source = new InvocationSource(config, exchange, false);
+                        entry.setCancelHandle(receiveInvocation(source, invocation, sessionAffinity, identifier,
+                                new ByteArrayInputStream(content), responder));
+                        putResponseHeader(exchange, Constants.EJB_INVOCATION_HANDLE, handle);
+                        exchange.setStatusCode(ACCEPTED);
+                        exchange.endExchange();
+                    }, new BufferingResponder(config, exchange) {
+                        @Override
+                        protected void complete(final boolean failure, final byte[] outcome) {
+                            entry.complete(failure, outcome);
+                        }
+                    }, () -> detachedResults.remove(handle, entry));
+                    return;
+                }
+                // too many detached invocations, this one stays attached to the exchange
+                EjbHttpClientMessages.MESSAGES.debugf("Detached results store is full, invocation %s proceeds attached", exchange.getRelativePath());
+            }
 
-                    @Override
-                    public Resolved getRequestContent(final ClassLoader classLoader) throws IOException, ClassNotFoundException {
-                        final Class<?> view = Class.forName(viewName, false, classLoader);
-                        final HttpMarshallerFactory unmarshallingFactory = config.getHttpUnmarshallerFactory(exchange);
-                        final Unmarshaller unmarshaller = unmarshallingFactory.createUnmarshaller(new FilteringClassResolver(classLoader, classResolverFilter), HttpProtocolV1ObjectTable.INSTANCE);
-
-                        try (InputStream is = exchange.getInputStream()) {
-                            unmarshaller.start(byteInputOf(is));
-                            final TransactionInfo txnInfo = deserializeTransaction(unmarshaller);
-                            final Object[] methodParams = new Object[parameterTypeNames.length];
-                            deserializeObjectArray(unmarshaller, methodParams);
-                            final Map<String, Object> contextData = deserializeMap(unmarshaller);
-                            unmarshaller.finish();
-
-                            contextData.put(EJBClient.SOURCE_ADDRESS_KEY, exchange.getConnection().getPeerAddress());
-                            EJBLocator<?> locator;
-                            if (EJBHome.class.isAssignableFrom(view)) {
-                                locator = new EJBHomeLocator(view, app, module, bean, distinct, Affinity.LOCAL); //TODO: what is the correct affinity?
-                            } else if (sessionID != null) {
-                                locator = new StatefulEJBLocator<>(view, app, module, bean, distinct,
-                                        SessionID.createSessionID(sessionID), Affinity.LOCAL);
-                            } else {
-                                locator = new StatelessEJBLocator<>(view, app, module, bean, distinct, Affinity.LOCAL);
-                            }
+            final InvocationResponder responder = getRequestHeader(exchange, Constants.EJB_ONE_WAY) != null
+                    ? new OneWayResponder(exchange) : new ExchangeResponder(exchange);
+            dispatchInvocation(exchange, limiter, r -> receiveInvocation(new InvocationSource(config, exchange, true), invocation, sessionAffinity, identifier,
+                    exchange.getInputStream(), r), responder, null);
+        }
 
-                            final HttpMarshallerFactory marshallerFactory = config.getHttpMarshallerFactory(exchange);
-                            final Marshaller marshaller = marshallerFactory.createMarshaller(new FilteringClassResolver(classLoader, classResolverFilter), HttpProtocolV1ObjectTable.INSTANCE);
-                            final Transaction transaction;
-                            if ((txnInfo.getType() == TransactionInfo.NULL_TRANSACTION) || localTransactionContext == null) { //the TX context may be null in unit tests
-                                transaction = null;
-                            } else {
-                                try {
-                                    ImportResult<LocalTransaction> result = localTransactionContext.findOrImportTransaction(txnInfo.getXid(), txnInfo.getRemainingTime());
-                                    transaction = result.getTransaction();
-                                } catch (XAException e) {
-                                    throw new IllegalStateException(e); //TODO: what to do here?
-                                }
+        /**
+         * Dispatches the invocation to the executor. If admission control is enabled, the invocation either proceeds,
+         * waits until another invocation guarded by the same limiter completes or is rejected with 503 response.
+         *
+         * @param limiter the limiter guarding the invocation, {@code null} if admission control is disabled
+         * @param task the task proceeding with the invocation using the responder passed to it
+         * @param responder the responder writing the invocation outcome
+         * @param rejectedTask the task to run if the invocation was rejected, may be {@code null}
+         */
+        private void dispatchInvocation(final HttpServerExchange exchange, final AdmissionController.Limiter limiter,
+                                        final Consumer<InvocationResponder> task, final InvocationResponder responder,
+                                        final Runnable rejectedTask) {
+            if (limiter == null) {
+                exchange.dispatch(executorService, () -> task.accept(responder));
+                return;
+            }
+            final Executor executor = executorService != null ? executorService : exchange.getIoThread().getWorker();
+            final AdmittedResponder admittedResponder = new AdmittedResponder(responder, limiter);
+            exchange.dispatch(SameThreadExecutor.INSTANCE, () -> {
+                final boolean admitted = limiter.submit(() -> executor.execute(() -> {
+                    try {
+                        // the invocation may have been queued for a while
+                        if (rejectExpired(exchange)) {
+                            admittedResponder.release();
+                            if (rejectedTask != null) {
+                                rejectedTask.run();
                             }
-                            return new ResolvedInvocation(contextData, methodParams, locator, exchange, marshaller, sessionAffinity, transaction, identifier);
-                        } catch (IOException | ClassNotFoundException e) {
-                            throw e;
-                        } catch (Throwable e) {
-                            throw new IOException(e);
+                            return;
                         }
+                        task.accept(admittedResponder);
+                    } catch (Throwable t) {
+                        admittedResponder.release();
+                        throw t;
                     }
-
-                    @Override
-                    public EJBMethodLocator getMethodLocator() {
-                        return new EJBMethodLocator(method, parameterTypeNames);
+                }));
+                if (!admitted) {
+                    EjbHttpClientMessages.MESSAGES.debugf("Rejecting invocation %s, server is overloaded", exchange.getRelativePath());
+                    if (rejectedTask != null) {
+                        rejectedTask.run();
                     }
+                    sendServiceUnavailable(exchange, ADMISSION_RETRY_AFTER);
+                }
+            });
+        }
 
-                    @Override
-                    public void writeNoSuchMethod() {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
-                        }
-                        sendException(exchange, config, NOT_FOUND, EjbHttpClientMessages.MESSAGES.noSuchMethod());
-                    }
+        /**
+         * Hands the batched invocation over to the association, subject to admission control if enabled. Batched
+         * invocations carry no invocation id, they cannot be cancelled.
+         *
+         * @return {@code false} if the invocation was rejected because its limiter is saturated, the responder is not
+         * used then
+         */
+        boolean admitBatched(final HttpServerExchange exchange, final TargetedInvocation invocation, final String sessionAffinity,
+                             final byte[] content, final InvocationResponder responder) {
+            if (admissionController == null) {
+                receiveInvocation(new InvocationSource(config, exchange, true), invocation, sessionAffinity, null, new ByteArrayInputStream(content), responder);
+                return true;
+            }
+            final InvocationTarget target = invocation.target;
+            final AdmissionController.Limiter limiter = admissionController.limiterOf(target.app, target.module, target.distinct, target.bean);
+            final Executor executor = executorService != null ? executorService : exchange.getIoThread().getWorker();
+            final AdmittedResponder admittedResponder = new AdmittedResponder(responder, limiter);
+            return limiter.submit(() -> executor.execute(() -> {
+                try {
+                    receiveInvocation(new InvocationSource(config, exchange, true), invocation, sessionAffinity, null, new ByteArrayInputStream(content), admittedResponder);
+                } catch (Throwable t) {
+                    admittedResponder.release();
+                    throw t;
+                }
+            }));
+        }
 
-                    @Override
-                    public void writeSessionNotActive() {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
+        /**
+         * Resolves the invocation target and session id from the invocation path.
+         *
+         * @param relativePath the path relative to the invoke operation path
+         * @return the resolved invocation or {@code null} if the path does not denote an invocation
+         */
+        TargetedInvocation resolveInvocation(final String relativePath) {
+            final int start = relativePath.startsWith("/") ? 1 : 0;
+            // the session id segment is the only one differing between invocations of the same bean method
+            final int sessionStart = indexOfSegment(relativePath, start, 4);
+            final int sessionEnd = sessionStart < 0 ? -1 : relativePath.indexOf('/', sessionStart);
+            if (sessionEnd < 0) {
+                return null;
+            }
+            final InvocationTargetKey key = new InvocationTargetKey(relativePath, sessionStart, sessionEnd);
+            InvocationTarget target = invocationTargets.get(key);
+            if (target == null) {
+                target = InvocationTarget.parse(relativePath.substring(start));
+                if (target == null) {
+                    return null;
+                }
+                invocationTargets.put(key, target);
+            }
+            final byte[] sessionID = sessionEnd - sessionStart == 0 || (sessionEnd - sessionStart == 1 && relativePath.charAt(sessionStart) == '-')
+                    ? null : Base64.getUrlDecoder().decode(relativePath.substring(sessionStart, sessionEnd));
+            return new TargetedInvocation(target, sessionID);
+        }
+
+        /**
+         * Hands the invocation over to the association. The invocation content is read from {@code input}
+         * and its outcome is written to {@code responder}.
+         *
+         * @return the handle to cancel the invocation with, may be {@code null}
+         */
+        CancelHandle receiveInvocation(final InvocationSource source, final TargetedInvocation invocation, final String sessionAffinity,
+                               final InvocationIdentifier identifier, final InputStream input, final InvocationResponder responder) {
+            final InvocationTarget invocationTarget = invocation.target;
+            final byte[] sessionID = invocation.sessionID;
+            final String app = invocationTarget.app;
+            final String module = invocationTarget.module;
+            final String distinct = invocationTarget.distinct;
+            final String bean = invocationTarget.bean;
+            final EJBIdentifier ejbIdentifier = invocationTarget.ejbIdentifier;
+
+            CancelHandle handle = association.receiveInvocationRequest(new InvocationRequest() {
+
+                @Override
+                public SocketAddress getPeerAddress() {
+                    return source.sourceAddress;
+                }
+
+                @Override
+                public SocketAddress getLocalAddress() {
+                    return source.destinationAddress;
+                }
+
+                @Override
+                public Resolved getRequestContent(final ClassLoader classLoader) throws IOException, ClassNotFoundException {
+                    final ResolvedView resolvedView = invocationTarget.resolveView(classLoader);
+                    final Class<?> view = resolvedView.view;
+                    final HttpMarshallerFactory unmarshallingFactory = source.unmarshallerFactory;
+                    final Unmarshaller unmarshaller = unmarshallingFactory.createUnmarshaller(new FilteringClassResolver(classLoader, classResolverFilter), HttpProtocolV1ObjectTable.INSTANCE);
+
+                    try (InputStream is = input) {
+                        unmarshaller.start(byteInputOf(is));
+                        final TransactionInfo txnInfo = deserializeTransaction(unmarshaller);
+                        final Object[] methodParams = new Object[invocationTarget.methodLocator.getParameterCount()];
+                        deserializeObjectArray(unmarshaller, methodParams);
+                        final Map<String, Object> contextData = deserializeMap(unmarshaller);
+                        unmarshaller.finish();
+
+                        contextData.put(EJBClient.SOURCE_ADDRESS_KEY, source.peerAddress);
+                        EJBLocator<?> locator;
+                        if (sessionID != null && !(resolvedView.locator instanceof EJBHomeLocator)) {
+                            locator = new StatefulEJBLocator<>(view, app, module, bean, distinct,
+                                    SessionID.createSessionID(sessionID), Affinity.LOCAL);
+                        } else {
+                            locator = resolvedView.locator;
                         }
-                        sendException(exchange, config, INTERNAL_SERVER_ERROR, EjbHttpClientMessages.MESSAGES.sessionNotActive());
-                    }
 
-                    @Override
-                    public void writeWrongViewType() {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
+                        final Marshaller marshaller = source.marshallerFactory.createMarshaller(new FilteringClassResolver(classLoader, classResolverFilter), HttpProtocolV1ObjectTable.INSTANCE);
+                        final Transaction transaction;
+                        if ((txnInfo.getType() == TransactionInfo.NULL_TRANSACTION) || localTransactionContext == null) { //the TX context may be null in unit tests
+                            transaction = null;
+                        } else if (txnInfo.getType() == TransactionInfo.BEGIN_TRANSACTION) {
+                            // detached invocations end the exchange before the id could be reported
+                            if (xidResolver == null || source.exchange == null) {
+                                throw EjbHttpClientMessages.MESSAGES.transactionBeginNotSupported();
+                            }
+                            // the client learns the id from the response and completes the transaction by it later
+                            final LocalTransaction localTransaction = localTransactionContext.beginTransaction(txnInfo.getRemainingTime());
+                            putResponseHeader(source.exchange, Constants.EJB_TRANSACTION_XID, xidToHeader(xidResolver.apply(localTransaction)));
+                            transaction = localTransaction;
+                        } else {
+                            try {
+                                ImportResult<LocalTransaction> result = importedTransactions.findOrImportTransaction(localTransactionContext, txnInfo.getXid(), txnInfo.getRemainingTime());
+                                transaction = result.getTransaction();
+                            } catch (XAException e) {
+                                throw new IllegalStateException(e); //TODO: what to do here?
+                            }
                         }
-                        sendException(exchange, config, NOT_FOUND, EjbHttpClientMessages.MESSAGES.wrongViewType());
+                        responder.invocationResolved();
+                        return new ResolvedInvocation(contextData, methodParams, locator, source.exchange, marshaller, sessionAffinity, transaction, identifier, responder);
+                    } catch (IOException | ClassNotFoundException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IOException(e);
                     }
+                }
 
-                    @Override
-                    public Executor getRequestExecutor() {
-                        return executorService == null ? exchange.getIoThread().getWorker() : executorService;
-                    }
+                @Override
+                public EJBMethodLocator getMethodLocator() {
+                    return invocationTarget.methodLocator;
+                }
 
-                    @Override
-                    public String getProtocol() {
-                        return exchange.getProtocol().toString();
+                @Override
+                public void writeNoSuchMethod() {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
+                    responder.writeException(NOT_FOUND, EjbHttpClientMessages.MESSAGES.noSuchMethod());
+                }
 
-                    @Override
-                    public boolean isBlockingCaller() {
-                        return false;
+                @Override
+                public void writeSessionNotActive() {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
+                    responder.writeException(INTERNAL_SERVER_ERROR, EjbHttpClientMessages.MESSAGES.sessionNotActive());
+                }
 
-                    @Override
-                    public EJBIdentifier getEJBIdentifier() {
-                        return ejbIdentifier;
+                @Override
+                public void writeWrongViewType() {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
+                    responder.writeException(NOT_FOUND, EjbHttpClientMessages.MESSAGES.wrongViewType());
+                }
 
-    //                @Override
-                    public SecurityIdentity getSecurityIdentity() {
-                        return exchange.getAttachment(ElytronIdentityHandler.IDENTITY_KEY);
-                    }
+                @Override
+                public Executor getRequestExecutor() {
+                    return executorService == null ? source.worker : executorService;
+                }
 
-                    @Override
-                    public void writeException(@NotNull Exception exception) {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
-                        }
-                        sendException(exchange, config, INTERNAL_SERVER_ERROR, exception);
-                    }
+                @Override
+                public String getProtocol() {
+                    return source.protocol;
+                }
 
-                    @Override
-                    public void writeNoSuchEJB() {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
-                        }
-                        sendException(exchange, config, NOT_FOUND, new NoSuchEJBException());
+                @Override
+                public boolean isBlockingCaller() {
+                    return false;
+                }
+
+                @Override
+                public EJBIdentifier getEJBIdentifier() {
+                    return ejbIdentifier;
+                }
+
+//                @Override
+                public SecurityIdentity getSecurityIdentity() {
+                    return source.identity;
+                }
+
+                @Override
+                public void writeException(@NotNull Exception exception) {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
+                    responder.writeException(INTERNAL_SERVER_ERROR, exception);
+                }
 
-                    @Override
-                    public void writeCancelResponse() {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
-                        }
-                        //we don't actually need to implement this method
+                @Override
+                public void writeNoSuchEJB() {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
+                    responder.writeException(NOT_FOUND, new NoSuchEJBException());
+                }
 
-                    @Override
-                    public void writeNotStateful() {
-                        if(identifier != null) {
-                            cancellationFlags.remove(identifier);
-                        }
-                        sendException(exchange, config, INTERNAL_SERVER_ERROR, EjbHttpClientMessages.MESSAGES.notStateful());
+                @Override
+                public void writeCancelResponse() {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
+                    responder.writeCancelled();
+                }
 
-                    @Override
-                    public void convertToStateful(@NotNull SessionID sessionId) throws IllegalArgumentException, IllegalStateException {
-                        throw new RuntimeException("nyi");
+                @Override
+                public void writeNotStateful() {
+                    if(identifier != null) {
+                        cancellationFlags.remove(identifier);
                     }
-                });
-                if(handle != null && identifier != null) {
-                    cancellationFlags.put(identifier, handle);
+                    responder.writeException(INTERNAL_SERVER_ERROR, EjbHttpClientMessages.MESSAGES.notStateful());
+                }
+
+                @Override
+                public void convertToStateful(@NotNull SessionID sessionId) throws IllegalArgumentException, IllegalStateException {
+                    throw new RuntimeException("nyi");
                 }
             });
+            if(handle != null && identifier != null) {
+                cancellationFlags.put(identifier, handle);
+            }
+            return handle;
+        }
+
+        /**
+         * What the invocation needs from the exchange carrying it. Captured upfront, so that the invocation
+         * may outlive the exchange.
+         */
+        static final class InvocationSource {
+            private final HttpServerExchange exchange;
+            private final SocketAddress sourceAddress;
+            private final SocketAddress destinationAddress;
+            private final SocketAddress peerAddress;
+            private final HttpMarshallerFactory marshallerFactory;
+            private final HttpMarshallerFactory unmarshallerFactory;
+            private final Executor worker;
+            private final String protocol;
+            private final SecurityIdentity identity;
+
+            /**
+             * @param attached whether the exchange lasts until the invocation outcome is written to it
+             */
+            InvocationSource(final HttpServiceConfig config, final HttpServerExchange exchange, final boolean attached) {
+                this.exchange = attached ? exchange : null;
+                this.sourceAddress = exchange.getSourceAddress();
+                this.destinationAddress = exchange.getDestinationAddress();
+                this.peerAddress = exchange.getConnection().getPeerAddress();
+                this.marshallerFactory = config.getHttpMarshallerFactory(exchange);
+                this.unmarshallerFactory = config.getHttpUnmarshallerFactory(exchange);
+                this.worker = exchange.getIoThread().getWorker();
+                this.protocol = exchange.getProtocol().toString();
+                this.identity = exchange.getAttachment(ElytronIdentityHandler.IDENTITY_KEY);
+            }
         }
 
         class ResolvedInvocation implements InvocationRequest.Resolved {
@@ -367,8 +655,10 @@ final class ServerHandlers {
             private final String sessionAffinity;
             private final Transaction transaction;
             private final InvocationIdentifier identifier;
+            private final InvocationResponder responder;
 
-            public ResolvedInvocation(Map<String, Object> contextData, Object[] methodParams, EJBLocator<?> locator, HttpServerExchange exchange, Marshaller marshaller, String sessionAffinity, Transaction transaction, final InvocationIdentifier identifier) {
+            public ResolvedInvocation(Map<String, Object> contextData, Object[] methodParams, EJBLocator<?> locator, HttpServerExchange exchange, Marshaller marshaller, String sessionAffinity, Transaction transaction, final InvocationIdentifier identifier,
+                                      final InvocationResponder responder) {
                 this.contextData = contextData;
                 this.methodParams = methodParams;
                 this.locator = locator;
@@ -377,6 +667,7 @@ final class ServerHandlers {
                 this.sessionAffinity = sessionAffinity;
                 this.transaction = transaction;
                 this.identifier = identifier;
+                this.responder = responder;
             }
 
             @Override
@@ -408,6 +699,9 @@ final class ServerHandlers {
                 return sessionAffinity;
             }
 
+            /**
+             * @return the exchange carrying the invocation, {@code null} if the invocation is detached from it
+             */
             HttpServerExchange getExchange() {
                 return exchange;
             }
@@ -417,11 +711,43 @@ final class ServerHandlers {
                 if(identifier != null) {
                     cancellationFlags.remove(identifier);
                 }
+                responder.writeResult(marshaller, result, contextData);
+            }
+        }
+
+        /**
+         * Destination of the outcome of a single invocation.
+         */
+        interface InvocationResponder {
+            void writeResult(Marshaller marshaller, Object result, Map<String, Object> contextData);
+
+            void writeException(int status, Throwable exception);
+
+            void writeCancelled();
+
+            /**
+             * Called once the invocation content was unmarshalled, right before the invocation proceeds.
+             */
+            void invocationResolved();
+        }
+
+        /**
+         * Writes the invocation outcome as the response of the exchange carrying the invocation.
+         */
+        private final class ExchangeResponder implements InvocationResponder {
+            private final HttpServerExchange exchange;
+
+            private ExchangeResponder(final HttpServerExchange exchange) {
+                this.exchange = exchange;
+            }
+
+            @Override
+            public void writeResult(final Marshaller marshaller, final Object result, final Map<String, Object> contextData) {
                 try {
                     putResponseHeader(exchange, CONTENT_TYPE, Constants.EJB_RESPONSE);
-    //                                    if (output.getSessionAffinity() != null) {
-    //                                        exchange.setResponseCookie(new CookieImpl("JSESSIONID", output.getSessionAffinity()).setPath(WILDFLY_SERVICES));
-    //                                    }
+//                                    if (output.getSessionAffinity() != null) {
+//                                        exchange.setResponseCookie(new CookieImpl("JSESSIONID", output.getSessionAffinity()).setPath(WILDFLY_SERVICES));
+//                                    }
                     try (final ByteOutput out = byteOutputOf(exchange.getOutputStream())) {
                         marshaller.start(out);
                         serializeObject(marshaller, result);
@@ -433,6 +759,242 @@ final class ServerHandlers {
                     sendException(exchange, config, 500, e);
                 }
             }
+
+            @Override
+            public void writeException(final int status, final Throwable exception) {
+                sendException(exchange, config, status, exception);
+            }
+
+            @Override
+            public void writeCancelled() {
+                //we don't actually need to implement this method
+            }
+
+            @Override
+            public void invocationResolved() {
+                // the outcome is written once available
+            }
+        }
+
+        /**
+         * Acknowledges one-way invocation as soon as its content is unmarshalled so that the client does not wait
+         * for the invocation to complete. Failures occurring earlier are still sent, the outcome itself is discarded.
+         */
+        private final class OneWayResponder implements InvocationResponder {
+            private final HttpServerExchange exchange;
+            private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+            private OneWayResponder(final HttpServerExchange exchange) {
+                this.exchange = exchange;
+            }
+
+            @Override
+            public void writeResult(final Marshaller marshaller, final Object result, final Map<String, Object> contextData) {
+                acknowledge();
+            }
+
+            @Override
+            public void writeException(final int status, final Throwable exception) {
+                if (acknowledged.compareAndSet(false, true)) {
+                    sendException(exchange, config, status, exception);
+                } else {
+                    EjbHttpClientMessages.MESSAGES.debugf(exception, "One-way invocation %s failed", exchange.getRelativePath());
+                }
+            }
+
+            @Override
+            public void writeCancelled() {
+                acknowledge();
+            }
+
+            @Override
+            public void invocationResolved() {
+                acknowledge();
+            }
+
+            private void acknowledge() {
+                if (acknowledged.compareAndSet(false, true)) {
+                    exchange.setStatusCode(ACCEPTED);
+                    exchange.endExchange();
+                }
+            }
+        }
+
+        /**
+         * Releases the admission of the invocation once its outcome is written.
+         */
+        private static final class AdmittedResponder implements InvocationResponder {
+            private final InvocationResponder delegate;
+            private final AdmissionController.Limiter limiter;
+            private final AtomicBoolean released = new AtomicBoolean();
+
+            private AdmittedResponder(final InvocationResponder delegate, final AdmissionController.Limiter limiter) {
+                this.delegate = delegate;
+                this.limiter = limiter;
+            }
+
+            @Override
+            public void writeResult(final Marshaller marshaller, final Object result, final Map<String, Object> contextData) {
+                try {
+                    delegate.writeResult(marshaller, result, contextData);
+                } finally {
+                    release();
+                }
+            }
+
+            @Override
+            public void writeException(final int status, final Throwable exception) {
+                try {
+                    delegate.writeException(status, exception);
+                } finally {
+                    release();
+                }
+            }
+
+            @Override
+            public void writeCancelled() {
+                try {
+                    delegate.writeCancelled();
+                } finally {
+                    release();
+                }
+            }
+
+            @Override
+            public void invocationResolved() {
+                delegate.invocationResolved();
+            }
+
+            private void release() {
+                if (released.compareAndSet(false, true)) {
+                    limiter.release();
+                }
+            }
+        }
+
+        static final class TargetedInvocation {
+            private final InvocationTarget target;
+            private final byte[] sessionID;
+
+            private TargetedInvocation(final InvocationTarget target, final byte[] sessionID) {
+                this.target = target;
+                this.sessionID = sessionID;
+            }
+        }
+
+        private static int indexOfSegment(final String path, final int start, final int segment) {
+            int index = start;
+            for (int i = 0; i < segment; i++) {
+                index = path.indexOf('/', index);
+                if (index < 0) {
+                    return -1;
+                }
+                index++;
+            }
+            return index;
+        }
+
+        /**
+         * Invocation path without the session id segment. Hash code and equality skip the session id
+         * so that the key can be created without copying the request path.
+         */
+        private static final class InvocationTargetKey {
+            private final String path;
+            private final int sessionStart;
+            private final int sessionEnd;
+            private final int hashCode;
+
+            private InvocationTargetKey(final String path, final int sessionStart, final int sessionEnd) {
+                this.path = path;
+                this.sessionStart = sessionStart;
+                this.sessionEnd = sessionEnd;
+                int h = 0;
+                for (int i = 0; i < sessionStart; i++) {
+                    h = 31 * h + path.charAt(i);
+                }
+                for (int i = sessionEnd; i < path.length(); i++) {
+                    h = 31 * h + path.charAt(i);
+                }
+                this.hashCode = h;
+            }
+
+            @Override
+            public boolean equals(final Object o) {
+                if (this == o) return true;
+                if (!(o instanceof InvocationTargetKey)) return false;
+                final InvocationTargetKey that = (InvocationTargetKey) o;
+                final int tailLength = path.length() - sessionEnd;
+                return hashCode == that.hashCode && sessionStart == that.sessionStart && tailLength == that.path.length() - that.sessionEnd
+                        && path.regionMatches(0, that.path, 0, sessionStart)
+                        && path.regionMatches(sessionEnd, that.path, that.sessionEnd, tailLength);
+            }
+
+            @Override
+            public int hashCode() {
+                return hashCode;
+            }
+        }
+
+        /**
+         * Pre-parsed invocation path with the view class and locator resolved against the deployment class loader.
+         */
+        private static final class InvocationTarget {
+            private final String app;
+            private final String module;
+            private final String distinct;
+            private final String bean;
+            private final String viewName;
+            private final EJBIdentifier ejbIdentifier;
+            private final EJBMethodLocator methodLocator;
+            private volatile ResolvedView resolvedView;
+
+            private InvocationTarget(final String app, final String module, final String distinct, final String bean, final String viewName, final EJBMethodLocator methodLocator) {
+                this.app = app;
+                this.module = module;
+                this.distinct = distinct;
+                this.bean = bean;
+                this.viewName = viewName;
+                this.ejbIdentifier = new EJBIdentifier(app, module, bean, distinct);
+                this.methodLocator = methodLocator;
+            }
+
+            private static InvocationTarget parse(final String relativePath) {
+                final String[] parts = relativePath.split("/");
+                if (parts.length < 7) {
+                    return null;
+                }
+                final String[] parameterTypeNames = new String[parts.length - 7];
+                System.arraycopy(parts, 7, parameterTypeNames, 0, parameterTypeNames.length);
+                return new InvocationTarget(handleDash(parts[0]), handleDash(parts[1]), handleDash(parts[2]), parts[3], parts[5],
+                        new EJBMethodLocator(parts[6], parameterTypeNames));
+            }
+
+            private ResolvedView resolveView(final ClassLoader classLoader) throws ClassNotFoundException {
+                ResolvedView resolvedView = this.resolvedView;
+                if (resolvedView == null || resolvedView.classLoader != classLoader) {
+                    final Class<?> view = Class.forName(viewName, false, classLoader);
+                    final EJBLocator<?> locator;
+                    if (EJBHome.class.isAssignableFrom(view)) {
+                        locator = new EJBHomeLocator(view, app, module, bean, distinct, Affinity.LOCAL); //TODO: what is the correct affinity?
+                    } else {
+                        locator = new StatelessEJBLocator<>(view, app, module, bean, distinct, Affinity.LOCAL);
+                    }
+                    this.resolvedView = resolvedView = new ResolvedView(classLoader, view, locator);
+                }
+                return resolvedView;
+            }
+        }
+
+        private static final class ResolvedView {
+            private final ClassLoader classLoader;
+            private final Class<?> view;
+            private final EJBLocator<?> locator;
+
+            private ResolvedView(final ClassLoader classLoader, final Class<?> view, final EJBLocator<?> locator) {
+                this.classLoader = classLoader;
+                this.view = view;
+                this.locator = locator;
+            }
         }
 
         private static class FilteringClassResolver extends SimpleClassResolver {
@@ -465,6 +1027,203 @@ final class ServerHandlers {
         }
     }
 
+    /**
+     * Handler of invocation batches. Every invocation of the batch is handed over to the association on its own
+     * and the response carrying outcomes of all the invocations is sent once the last of them completes.
+     */
+    private static final class HttpBatchInvocationHandler extends AbstractEjbHandler {
+        private final HttpInvocationHandler invocationHandler;
+        private final ExecutorService executorService;
+        private final HttpServiceConfig config;
+
+        HttpBatchInvocationHandler(HttpServiceConfig config, ExecutorService executorService, HttpInvocationHandler invocationHandler) {
+            super(executorService);
+            this.config = config;
+            this.executorService = executorService;
+            this.invocationHandler = invocationHandler;
+        }
+
+        @Override
+        protected void handleInternal(final HttpServerExchange exchange) throws Exception {
+            String ct = getRequestHeader(exchange, CONTENT_TYPE);
+            ContentType contentType = ContentType.parse(ct);
+            if (contentType == null || contentType.getVersion() != 1 || !EJB_BATCH_INVOCATION.getType().equals(contentType.getType())) {
+                exchange.setStatusCode(BAD_REQUEST);
+                EjbHttpClientMessages.MESSAGES.debugf("Bad content type %s", ct);
+                return;
+            }
+
+            final HttpInvocationHandler.TargetedInvocation[] invocations;
+            final byte[][] contents;
+            try (DataInputStream in = new DataInputStream(exchange.getInputStream())) {
+                final int count = in.readInt();
+                if (count <= 0 || count > BATCH_MAX_INVOCATIONS) {
+                    exchange.setStatusCode(BAD_REQUEST);
+                    EjbHttpClientMessages.MESSAGES.debugf("Bad invocation batch size %d", count);
+                    return;
+                }
+                invocations = new HttpInvocationHandler.TargetedInvocation[count];
+                contents = new byte[count][];
+                long total = 0;
+                for (int i = 0; i < count; i++) {
+                    invocations[i] = invocationHandler.resolveInvocation(in.readUTF());
+                    if (invocations[i] == null) {
+                        exchange.setStatusCode(NOT_FOUND);
+                        return;
+                    }
+                    final int length = in.readInt();
+                    if (length < 0) {
+                        exchange.setStatusCode(BAD_REQUEST);
+                        EjbHttpClientMessages.MESSAGES.debugf("Bad invocation content length %d", length);
+                        return;
+                    }
+                    // lengths come from the client, never allocate more than the limits allow
+                    total += length;
+                    if (length > BATCH_MAX_INVOCATION_LENGTH || total > BATCH_MAX_LENGTH) {
+                        exchange.setStatusCode(REQUEST_ENTITY_TOO_LARGE);
+                        EjbHttpClientMessages.MESSAGES.debugf("Invocation batch too large, invocation %d of length %d, %d bytes in total", i, length, total);
+                        return;
+                    }
+                    contents[i] = new byte[length];
+                    in.readFully(contents[i]);
+                }
+            }
+            Cookie cookie = exchange.getRequestCookie(JSESSIONID_COOKIE_NAME);
+            final String sessionAffinity = cookie != null ? cookie.getValue() : null;
+            final BatchResponse response = new BatchResponse(exchange, invocations.length);
+
+            exchange.dispatch(executorService, () -> {
+                final List<Integer> rejected = new ArrayList<>();
+                for (int i = 0; i < invocations.length; i++) {
+                    if (!invocationHandler.admitBatched(exchange, invocations[i], sessionAffinity, contents[i], response.responderOf(i))) {
+                        rejected.add(i);
+                    }
+                }
+                if (rejected.size() == invocations.length) {
+                    // nothing was admitted, the client sends the whole batch again later
+                    EjbHttpClientMessages.MESSAGES.debugf("Rejecting invocation batch, server is overloaded");
+                    sendServiceUnavailable(exchange, ADMISSION_RETRY_AFTER);
+                    return;
+                }
+                for (int i : rejected) {
+                    response.responderOf(i).writeException(SERVICE_UNAVAILABLE, EjbHttpClientMessages.MESSAGES.invocationRejected());
+                }
+            });
+        }
+
+        /**
+         * Collects outcomes of batched invocations. Each outcome is the marshalled result or exception
+         * exactly as it would be sent in response to a single invocation.
+         */
+        private final class BatchResponse {
+            private final HttpServerExchange exchange;
+            private final byte[][] outcomes;
+            private final boolean[] failures;
+            private final AtomicInteger remaining;
+
+            private BatchResponse(final HttpServerExchange exchange, final int count) {
+                this.exchange = exchange;
+                this.outcomes = new byte[count][];
+                this.failures = new boolean[count];
+                this.remaining = new AtomicInteger(count);
+            }
+
+            private HttpInvocationHandler.InvocationResponder responderOf(final int index) {
+                return new BufferingResponder(config, exchange) {
+                    @Override
+                    protected void complete(final boolean failure, final byte[] outcome) {
+                        BatchResponse.this.complete(index, failure, outcome);
+                    }
+                };
+            }
+
+            private void complete(final int index, final boolean failure, final byte[] outcome) {
+                outcomes[index] = outcome;
+                failures[index] = failure;
+                if (remaining.decrementAndGet() > 0) {
+                    return;
+                }
+                try {
+                    putResponseHeader(exchange, CONTENT_TYPE, EJB_BATCH_RESPONSE);
+                    try (DataOutputStream out = new DataOutputStream(exchange.getOutputStream())) {
+                        out.writeInt(outcomes.length);
+                        for (int i = 0; i < outcomes.length; i++) {
+                            out.writeBoolean(failures[i]);
+                            out.writeInt(outcomes[i].length);
+                            out.write(outcomes[i]);
+                        }
+                    }
+                    exchange.endExchange();
+                } catch (Exception e) {
+                    sendException(exchange, config, INTERNAL_SERVER_ERROR, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marshals the invocation outcome exactly as it would be sent in response to a single invocation
+     * and hands it over to {@link #complete(boolean, byte[])} instead of writing it to the exchange.
+     */
+    private abstract static class BufferingResponder implements HttpInvocationHandler.InvocationResponder {
+        // the outcome may come after the exchange ended
+        private final HttpMarshallerFactory marshallerFactory;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private BufferingResponder(final HttpServiceConfig config, final HttpServerExchange exchange) {
+            this.marshallerFactory = config.getHttpMarshallerFactory(exchange);
+        }
+
+        @Override
+        public void writeResult(final Marshaller marshaller, final Object result, final Map<String, Object> contextData) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ByteOutput byteOutput = byteOutputOf(out)) {
+                marshaller.start(byteOutput);
+                serializeObject(marshaller, result);
+                serializeMap(marshaller, contextData);
+                marshaller.finish();
+            } catch (Exception e) {
+                writeException(INTERNAL_SERVER_ERROR, e);
+                return;
+            }
+            if (completed.compareAndSet(false, true)) {
+                complete(false, out.toByteArray());
+            }
+        }
+
+        @Override
+        public void writeException(final int status, final Throwable exception) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ByteOutput byteOutput = byteOutputOf(out)) {
+                final Marshaller marshaller = marshallerFactory.createMarshaller();
+                marshaller.start(byteOutput);
+                marshaller.writeObject(exception);
+                marshaller.write(0);
+                marshaller.finish();
+            } catch (Exception e) {
+                // the client fails the invocation when reading the empty outcome
+                EjbHttpClientMessages.MESSAGES.debugf(e, "Failed to write exception %s of invocation", exception);
+                out.reset();
+            }
+            if (completed.compareAndSet(false, true)) {
+                complete(true, out.toByteArray());
+            }
+        }
+
+        @Override
+        public void writeCancelled() {
+            // unlike the attached client, the client waiting for buffered outcome has to be told
+            writeException(INTERNAL_SERVER_ERROR, new CancellationException());
+        }
+
+        @Override
+        public void invocationResolved() {
+            // the outcome is buffered once available
+        }
+
+        protected abstract void complete(boolean failure, byte[] outcome);
+    }
+
     private static final class HttpCancelHandler extends AbstractEjbHandler {
 
         private final Map<InvocationIdentifier, CancelHandle> cancellationFlags;
@@ -516,19 +1275,151 @@ final class ServerHandlers {
         }
     }
 
+    /**
+     * Answers with the outcome of a detached invocation. If the invocation did not complete yet, the exchange
+     * is parked for the time requested by the client, at most {@code max-wait} milliseconds, and an empty response
+     * is sent if it still did not complete.
+     */
+    private static final class HttpDetachedResultHandler extends AbstractEjbHandler {
+        private final DetachedResultStore detachedResults;
+        private final ExecutorService executorService;
+        private final HttpServiceConfig config;
+
+        HttpDetachedResultHandler(HttpServiceConfig config, ExecutorService executorService, DetachedResultStore detachedResults) {
+            super(executorService);
+            this.config = config;
+            this.executorService = executorService;
+            this.detachedResults = detachedResults;
+        }
+
+        @Override
+        protected void handleInternal(HttpServerExchange exchange) throws Exception {
+            String relativePath = exchange.getRelativePath();
+            if (relativePath.startsWith("/")) {
+                relativePath = relativePath.substring(1);
+            }
+            final String handle = relativePath;
+            final DetachedResultStore.Entry entry = detachedResults.get(handle);
+            if (entry == null) {
+                sendException(exchange, config, NOT_FOUND, EjbHttpClientMessages.MESSAGES.detachedResultNotFound(handle));
+                return;
+            }
+            long wait = 0;
+            final String requestedWait = getRequestHeader(exchange, Constants.EJB_RESULT_WAIT);
+            if (requestedWait != null) {
+                try {
+                    wait = Math.min(Long.parseLong(requestedWait), DETACHED_RESULTS_MAX_WAIT);
+                } catch (NumberFormatException e) {
+                    exchange.setStatusCode(BAD_REQUEST);
+                    EjbHttpClientMessages.MESSAGES.debugf("Bad result wait %s", requestedWait);
+                    return;
+                }
+            }
+            if (wait <= 0 || entry.getOutcome() != null) {
+                sendOutcome(exchange, handle, entry);
+                return;
+            }
+            final long timeout = wait;
+            final Executor executor = executorService != null ? executorService : exchange.getIoThread().getWorker();
+            exchange.dispatch(SameThreadExecutor.INSTANCE, () -> {
+                final PendingResult pendingResult = new PendingResult(exchange, executor, handle, entry);
+                pendingResult.timeoutKey = exchange.getIoThread().executeAfter(pendingResult, timeout, TimeUnit.MILLISECONDS);
+                entry.setListener(pendingResult);
+            });
+        }
+
+        private void sendOutcome(final HttpServerExchange exchange, final String handle, final DetachedResultStore.Entry entry) {
+            final byte[] outcome = entry.getOutcome();
+            if (outcome == null) {
+                exchange.setStatusCode(NO_CONTENT);
+                exchange.endExchange();
+                return;
+            }
+            // the outcome is delivered once, the client does not ask again after receiving it
+            detachedResults.remove(handle, entry);
+            if (entry.isFailure()) {
+                exchange.setStatusCode(INTERNAL_SERVER_ERROR);
+                putResponseHeader(exchange, CONTENT_TYPE, Constants.EJB_EXCEPTION);
+            } else {
+                putResponseHeader(exchange, CONTENT_TYPE, Constants.EJB_RESPONSE);
+            }
+            exchange.getResponseSender().send(ByteBuffer.wrap(outcome));
+        }
+
+        private final class PendingResult implements Runnable {
+            private final HttpServerExchange exchange;
+            private final Executor executor;
+            private final String handle;
+            private final DetachedResultStore.Entry entry;
+            private final AtomicBoolean done = new AtomicBoolean();
+            private volatile XnioExecutor.Key timeoutKey;
+
+            private PendingResult(final HttpServerExchange exchange, final Executor executor, final String handle, final DetachedResultStore.Entry entry) {
+                this.exchange = exchange;
+                this.executor = executor;
+                this.handle = handle;
+                this.entry = entry;
+            }
+
+            @Override
+            public void run() {
+                // called either on invocation completion or on poll timeout, whichever comes first
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                entry.removeListener(this);
+                final XnioExecutor.Key timeoutKey = this.timeoutKey;
+                if (timeoutKey != null) {
+                    timeoutKey.remove();
+                }
+                executor.execute(() -> sendOutcome(exchange, handle, entry));
+            }
+        }
+    }
+
+    private static final class HttpCancelDetachedHandler extends AbstractEjbHandler {
+        private final DetachedResultStore detachedResults;
+
+        HttpCancelDetachedHandler(ExecutorService executorService, DetachedResultStore detachedResults) {
+            super(executorService);
+            this.detachedResults = detachedResults;
+        }
+
+        @Override
+        protected void handleInternal(HttpServerExchange exchange) throws Exception {
+            String relativePath = exchange.getRelativePath();
+            if (relativePath.startsWith("/")) {
+                relativePath = relativePath.substring(1);
+            }
+            String[] parts = relativePath.split("/");
+            if (parts.length != 2) {
+                exchange.setStatusCode(NOT_FOUND);
+                return;
+            }
+            final DetachedResultStore.Entry entry = detachedResults.get(parts[0]);
+            final CancelHandle handle = entry != null ? entry.getCancelHandle() : null;
+            if (handle != null) {
+                handle.cancel(Boolean.parseBoolean(parts[1]));
+            }
+        }
+    }
+
     private static final class HttpSessionOpenHandler extends AbstractEjbHandler {
         private final Association association;
         private final ExecutorService executorService;
         private final SessionIdGenerator sessionIdGenerator = new SecureRandomSessionIdGenerator();
         private final LocalTransactionContext localTransactionContext;
+        private final ImportedTransactionCache importedTransactions;
         private final HttpServiceConfig config;
 
-        HttpSessionOpenHandler(HttpServiceConfig config, Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext) {
+        HttpSessionOpenHandler(HttpServiceConfig config, Association association, ExecutorService executorService, LocalTransactionContext localTransactionContext,
+                               ImportedTransactionCache importedTransactions) {
             super(executorService);
             this.config = config;
             this.association = association;
             this.executorService = executorService;
             this.localTransactionContext = localTransactionContext;
+            this.importedTransactions = importedTransactions;
         }
 
         @Override
@@ -581,7 +1472,7 @@ final class ServerHandlers {
                     transaction = null;
                 } else {
                     try {
-                        ImportResult<LocalTransaction> result = localTransactionContext.findOrImportTransaction(txnInfo.getXid(), txnInfo.getRemainingTime());
+                        ImportResult<LocalTransaction> result = importedTransactions.findOrImportTransaction(localTransactionContext, txnInfo.getXid(), txnInfo.getRemainingTime());
                         transaction = result.getTransaction();
                     } catch (XAException e) {
                         throw new IllegalStateException(e); //TODO: what to do here?
@@ -689,41 +1580,163 @@ final class ServerHandlers {
         }
     }
 
+    /**
+     * Discovery handler answering with all available modules. The serialized modules are kept per marshaller
+     * factory and rebuilt only when available modules change. Responses carry an entity tag derived from the
+     * modules version so that clients that already know the current modules are answered with
+     * {@code 304 Not Modified} and no body.
+     */
     private static final class HttpDiscoveryHandler extends AbstractEjbHandler {
-        private final Set<EJBModuleIdentifier> availableModules = new HashSet<>();
+        private final ModuleAvailabilityTracker availableModules;
         private final HttpServiceConfig config;
+        private final Map<HttpMarshallerFactory, SerializedModules> serializedModules = new ConcurrentHashMap<>();
 
-        public HttpDiscoveryHandler(HttpServiceConfig config, ExecutorService executorService, Association association) {
+        public HttpDiscoveryHandler(HttpServiceConfig config, ExecutorService executorService, ModuleAvailabilityTracker availableModules) {
             super(executorService);
             this.config = config;
-            association.registerModuleAvailabilityListener(new ModuleAvailabilityListener() {
-                @Override
-                public void moduleAvailable(List<EJBModuleIdentifier> modules) {
-                    availableModules.addAll(modules);
-                }
-
-                @Override
-                public void moduleUnavailable(List<EJBModuleIdentifier> modules) {
-                    availableModules.removeAll(modules);
-                }
-            });
+            this.availableModules = availableModules;
         }
 
         @Override
         protected void handleInternal(HttpServerExchange exchange) throws Exception {
+            final String version = availableModules.getVersion();
+            final String ifNoneMatch = getRequestHeader(exchange, IF_NONE_MATCH);
+            if (ifNoneMatch != null && ifNoneMatch.equals(entityTagOf(version))) {
+                putResponseHeader(exchange, EJB_DISCOVERY_VERSION, version);
+                putResponseHeader(exchange, ETAG, ifNoneMatch);
+                exchange.setStatusCode(NOT_MODIFIED);
+                exchange.endExchange();
+                return;
+            }
+            final SerializedModules modules = getSerializedModules(config.getHttpMarshallerFactory(exchange), version);
             putResponseHeader(exchange, CONTENT_TYPE, EJB_DISCOVERY_RESPONSE);
-            byte[] data;
+            putResponseHeader(exchange, EJB_DISCOVERY_VERSION, modules.version);
+            putResponseHeader(exchange, ETAG, entityTagOf(modules.version));
+            exchange.getResponseSender().send(ByteBuffer.wrap(modules.data));
+        }
+
+        private SerializedModules getSerializedModules(final HttpMarshallerFactory marshallerFactory, final String version) throws IOException {
+            final SerializedModules cached = serializedModules.get(marshallerFactory);
+            if (cached != null && cached.version.equals(version)) {
+                return cached;
+            }
+            final DiscoveryUpdate snapshot = availableModules.getSnapshot();
             final ByteArrayOutputStream out = new ByteArrayOutputStream();
-            Marshaller marshaller = config.getHttpMarshallerFactory(exchange)
-                    .createMarshaller(HttpProtocolV1ObjectTable.INSTANCE);
+            Marshaller marshaller = marshallerFactory.createMarshaller(HttpProtocolV1ObjectTable.INSTANCE);
             ByteOutput byteOutput = byteOutputOf(out);
             try (byteOutput) {
                 marshaller.start(byteOutput);
-                serializeSet(marshaller, availableModules);
+                serializeSet(marshaller, snapshot.getAddedModules());
                 marshaller.finish();
-                data = out.toByteArray();
             }
-            exchange.getResponseSender().send(ByteBuffer.wrap(data));
+            final SerializedModules modules = new SerializedModules(snapshot.getVersion(), out.toByteArray());
+            serializedModules.put(marshallerFactory, modules);
+            return modules;
+        }
+
+        private static String entityTagOf(final String version) {
+            return "\"" + version + "\"";
+        }
+
+        private static final class SerializedModules {
+            private final String version;
+            private final byte[] data;
+
+            private SerializedModules(final String version, final byte[] data) {
+                this.version = version;
+                this.data = data;
+            }
+        }
+    }
+
+    /**
+     * Long polling handler answering with changes of available modules since the version sent by the client.
+     * If nothing changed yet the exchange is parked until modules change or the poll times out, in which case
+     * an empty response is sent and the client polls again.
+     */
+    private static final class HttpDiscoveryUpdatesHandler extends AbstractEjbHandler {
+        private final ModuleAvailabilityTracker availableModules;
+        private final ExecutorService executorService;
+        private final HttpServiceConfig config;
+
+        HttpDiscoveryUpdatesHandler(HttpServiceConfig config, ExecutorService executorService, ModuleAvailabilityTracker availableModules) {
+            super(executorService);
+            this.config = config;
+            this.executorService = executorService;
+            this.availableModules = availableModules;
+        }
+
+        @Override
+        protected void handleInternal(HttpServerExchange exchange) throws Exception {
+            String relativePath = exchange.getRelativePath();
+            if (relativePath.startsWith("/")) {
+                relativePath = relativePath.substring(1);
+            }
+            final String knownVersion = handleDash(relativePath);
+            final DiscoveryUpdate update = availableModules.getUpdate(knownVersion);
+            if (update != null) {
+                sendUpdate(exchange, update);
+                return;
+            }
+            final Executor executor = executorService != null ? executorService : exchange.getIoThread().getWorker();
+            exchange.dispatch(SameThreadExecutor.INSTANCE, () -> {
+                final PendingUpdate pendingUpdate = new PendingUpdate(exchange, executor, knownVersion);
+                pendingUpdate.timeoutKey = exchange.getIoThread().executeAfter(pendingUpdate, DISCOVERY_UPDATES_TIMEOUT, TimeUnit.MILLISECONDS);
+                availableModules.addListener(knownVersion, pendingUpdate);
+            });
+        }
+
+        private void sendUpdate(final HttpServerExchange exchange, final DiscoveryUpdate update) {
+            try {
+                putResponseHeader(exchange, CONTENT_TYPE, EJB_DISCOVERY_UPDATE);
+                putResponseHeader(exchange, EJB_DISCOVERY_VERSION, update.getVersion());
+                final Marshaller marshaller = config.getHttpMarshallerFactory(exchange).createMarshaller(HttpProtocolV1ObjectTable.INSTANCE);
+                try (ByteOutput out = byteOutputOf(exchange.getOutputStream())) {
+                    marshaller.start(out);
+                    serializeDiscoveryUpdate(marshaller, update);
+                    marshaller.finish();
+                }
+                exchange.endExchange();
+            } catch (Exception e) {
+                sendException(exchange, config, INTERNAL_SERVER_ERROR, e);
+            }
+        }
+
+        private final class PendingUpdate implements Runnable {
+            private final HttpServerExchange exchange;
+            private final Executor executor;
+            private final String knownVersion;
+            private final AtomicBoolean done = new AtomicBoolean();
+            private volatile XnioExecutor.Key timeoutKey;
+
+            private PendingUpdate(final HttpServerExchange exchange, final Executor executor, final String knownVersion) {
+                this.exchange = exchange;
+                this.executor = executor;
+                this.knownVersion = knownVersion;
+            }
+
+            @Override
+            public void run() {
+                // called either on modules change or on poll timeout, whichever comes first
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                availableModules.removeListener(this);
+                final XnioExecutor.Key timeoutKey = this.timeoutKey;
+                if (timeoutKey != null) {
+                    timeoutKey.remove();
+                }
+                executor.execute(() -> {
+                    final DiscoveryUpdate update = availableModules.getUpdate(knownVersion);
+                    if (update != null) {
+                        sendUpdate(exchange, update);
+                    } else {
+                        putResponseHeader(exchange, EJB_DISCOVERY_VERSION, availableModules.getVersion());
+                        exchange.setStatusCode(NO_CONTENT);
+                        exchange.endExchange();
+                    }
+                });
+            }
         }
     }
 
@@ -738,6 +1751,10 @@ final class ServerHandlers {
 
         @Override
         public final void handleRequest(HttpServerExchange exchange) throws Exception {
+            // checked both before and after the exchange is dispatched to the executor
+            if (rejectExpired(exchange)) {
+                return;
+            }
             if (exchange.isInIoThread()) {
                 if (executorService == null) {
                     exchange.dispatch(this);
@@ -26,6 +26,7 @@ final class TransactionInfo {
     static byte NULL_TRANSACTION = 0;
     static byte REMOTE_TRANSACTION = 1;
     static byte LOCAL_TRANSACTION = 2;
+    static byte BEGIN_TRANSACTION = 3;
     private static final int UNDEFINED = 0;
     private static final TransactionInfo NULL = new TransactionInfo(NULL_TRANSACTION, null, UNDEFINED);
 
@@ -62,4 +63,11 @@ final class TransactionInfo {
     static TransactionInfo localTransaction(final Xid xid, final int remainingTime) {
         return new TransactionInfo(LOCAL_TRANSACTION, xid, remainingTime);
     }
+
+    /**
+     * Remote transaction not begun yet, the server begins it before the invocation.
+     */
+    static TransactionInfo beginTransaction(final int timeout) {
+        return new TransactionInfo(BEGIN_TRANSACTION, null, timeout);
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class AdmissionControllerTestCase {
+
+    @Test
+    public void testQueuedUntilReleased() {
+        AdmissionController controller = new AdmissionController(1, 1, AdmissionController.Scope.SERVER);
+        AdmissionController.Limiter limiter = controller.limiterOf("app", "module", "", "bean");
+        AtomicInteger run = new AtomicInteger();
+
+        Assert.assertTrue(limiter.submit(run::incrementAndGet));
+        Assert.assertTrue(limiter.submit(run::incrementAndGet));
+        Assert.assertEquals(1, run.get());
+        Assert.assertEquals(1, limiter.getQueued());
+
+        // both concurrency limit and queue are full
+        Assert.assertFalse(limiter.submit(run::incrementAndGet));
+
+        limiter.release();
+        Assert.assertEquals(2, run.get());
+        Assert.assertEquals(1, limiter.getRunning());
+        Assert.assertEquals(0, limiter.getQueued());
+
+        limiter.release();
+        Assert.assertEquals(0, limiter.getRunning());
+    }
+
+    @Test
+    public void testScopes() {
+        AdmissionController server = new AdmissionController(1, 0, AdmissionController.Scope.SERVER);
+        Assert.assertSame(server.limiterOf("app", "module", "", "a"), server.limiterOf("other", "module", "", "b"));
+
+        AdmissionController deployment = new AdmissionController(1, 0, AdmissionController.Scope.DEPLOYMENT);
+        Assert.assertSame(deployment.limiterOf("app", "module", "", "a"), deployment.limiterOf("app", "module", "", "b"));
+        Assert.assertNotSame(deployment.limiterOf("app", "module", "", "a"), deployment.limiterOf("other", "module", "", "a"));
+
+        AdmissionController bean = new AdmissionController(1, 0, AdmissionController.Scope.BEAN);
+        Assert.assertNotSame(bean.limiterOf("app", "module", "", "a"), bean.limiterOf("app", "module", "", "b"));
+    }
+
+    @Test
+    public void testDisabled() {
+        Assert.assertFalse(new AdmissionController(0, 10, AdmissionController.Scope.SERVER).isEnabled());
+    }
+}
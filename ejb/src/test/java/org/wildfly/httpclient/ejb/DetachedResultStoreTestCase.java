@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class DetachedResultStoreTestCase {
+
+    @Test
+    public void testStoreIsBounded() {
+        DetachedResultStore store = new DetachedResultStore(1, 0);
+        String handle = store.register();
+        Assert.assertNotNull(handle);
+        Assert.assertNull(store.register());
+
+        // completed outcomes expire and free the slot
+        store.get(handle).complete(false, new byte[1]);
+        Assert.assertNotNull(store.register());
+    }
+
+    @Test
+    public void testListenerNotifiedOnCompletion() {
+        DetachedResultStore store = new DetachedResultStore(8, 60000);
+        String handle = store.register();
+        DetachedResultStore.Entry entry = store.get(handle);
+        AtomicInteger notifications = new AtomicInteger();
+        entry.setListener(notifications::incrementAndGet);
+        Assert.assertNull(entry.getOutcome());
+
+        entry.complete(true, new byte[] {1});
+        entry.complete(false, new byte[] {2});
+        Assert.assertEquals(1, notifications.get());
+        Assert.assertTrue(entry.isFailure());
+        Assert.assertArrayEquals(new byte[] {1}, entry.getOutcome());
+
+        // already completed invocation notifies immediately
+        entry.setListener(notifications::incrementAndGet);
+        Assert.assertEquals(2, notifications.get());
+
+        Assert.assertTrue(store.remove(handle, entry));
+        Assert.assertNull(store.get(handle));
+    }
+
+}
@@ -18,6 +18,7 @@
 
 package org.wildfly.httpclient.ejb;
 
+import javax.transaction.xa.Xid;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -34,6 +35,9 @@ import org.jboss.ejb.server.SessionOpenRequest;
 import org.junit.runners.model.InitializationError;
 import org.wildfly.common.annotation.NotNull;
 import org.wildfly.httpclient.common.HTTPTestServer;
+import org.wildfly.transaction.client.LocalTransaction;
+import org.wildfly.transaction.client.LocalTransactionContext;
+import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.CookieImpl;
 import io.undertow.server.handlers.PathHandler;
 
@@ -67,7 +71,17 @@ public class EJBTestServer extends HTTPTestServer {
 
     @Override
     protected void registerPaths(PathHandler servicesHandler) {
-        servicesHandler.addPrefixPath("/ejb", new HttpRemoteEjbService(new Association() {
+        servicesHandler.addPrefixPath("/ejb", createEjbHandler(null, null));
+    }
+
+    /**
+     * Creates the EJB service handler dispatching invocations to the {@link #getHandler() current handler}.
+     *
+     * @param localTransactionContext the transaction context of the invocations, may be {@code null}
+     * @param xidResolver resolves the id of transactions begun on behalf of invocations, may be {@code null}
+     */
+    public static HttpHandler createEjbHandler(LocalTransactionContext localTransactionContext, Function<LocalTransaction, Xid> xidResolver) {
+        return new HttpRemoteEjbService(new Association() {
             @Override
             public <T> CancelHandle receiveInvocationRequest(@NotNull InvocationRequest invocationRequest) {
                 TestCancelHandle handle = new TestCancelHandle();
@@ -78,7 +92,7 @@ public class EJBTestServer extends HTTPTestServer {
                     getWorker().execute(() -> {
                         try {
                             Object result = handler.handle(request, resolvedInvocation.getSessionAffinity(), out, invocationRequest.getMethodLocator(), handle, resolvedInvocation.getAttachments());
-                            if (out.getSessionAffinity() != null) {
+                            if (out.getSessionAffinity() != null && resolvedInvocation.getExchange() != null) {
                                 resolvedInvocation.getExchange().setResponseCookie(new CookieImpl("JSESSIONID", out.getSessionAffinity()));
                             }
                             request.writeInvocationResult(result);
@@ -107,8 +121,7 @@ public class EJBTestServer extends HTTPTestServer {
             public ListenerHandle registerModuleAvailabilityListener(@NotNull ModuleAvailabilityListener moduleAvailabilityListener) {
                 return null;
             }
-        }, null, null, DEFAULT_CLASS_FILTER).createHttpHandler());
-
+        }, null, localTransactionContext, DEFAULT_CLASS_FILTER, xidResolver).createHttpHandler();
     }
 
     public static class TestCancelHandle implements CancelHandle {
@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import static io.undertow.util.Headers.SET_COOKIE;
+import static org.wildfly.httpclient.common.HeadersHelper.putResponseHeader;
+
+import org.jboss.ejb.client.EJBClient;
+import org.jboss.ejb.client.EJBClientContext;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.URIAffinity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.httpclient.common.Protocol;
+import io.undertow.client.ClientRequest;
+import io.undertow.util.Headers;
+
+import jakarta.ejb.ApplicationException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests EJB invocations sent in batches.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+@RunWith(EJBTestServer.class)
+public class InvocationBatchTestCase {
+
+    public static final String APP = "wildfly-app";
+    public static final String MODULE = "wildfly-ejb-remote-server-side";
+    private static final int BATCH_SIZE = 4;
+
+    @Before
+    public void before() {
+        EJBTestServer.registerServicesHandler("common/v1/affinity", exchange -> putResponseHeader(exchange, SET_COOKIE, "JSESSIONID=" + EJBTestServer.INITIAL_SESSION_AFFINITY));
+    }
+
+    @Test
+    public void testBatchedInvocations() throws Exception {
+        final Queue<String> paths = new ConcurrentLinkedQueue<>();
+        EJBTestServer.setHandler((invocation, affinity, out, method, handle, attachments) -> {
+            paths.add(((ServerHandlers.HttpInvocationHandler.ResolvedInvocation) invocation).getExchange().getRequestPath());
+            final String message = (String) invocation.getParameters()[0];
+            if (message.startsWith("fail")) {
+                throw new TestException(message);
+            }
+            return message;
+        });
+        final EJBClientContext clientContext = newBatchingClientContext();
+        final StatelessEJBLocator<EchoRemote> locator = new StatelessEJBLocator<>(EchoRemote.class, APP, MODULE, "CalculatorBean", "", URIAffinity.forUri(new URI(EJBTestServer.getDefaultServerURL())));
+        final EchoRemote proxy = EJBClient.createProxy(locator);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(BATCH_SIZE);
+        try {
+            final List<Future<String>> echoes = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                final String message = (i % 2 == 0 ? "echo-" : "fail-") + i;
+                echoes.add(executor.submit(() -> clientContext.runCallable(() -> proxy.echo(message))));
+            }
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                if (i % 2 == 0) {
+                    Assert.assertEquals("echo-" + i, echoes.get(i).get(10, TimeUnit.SECONDS));
+                } else {
+                    try {
+                        echoes.get(i).get(10, TimeUnit.SECONDS);
+                        Assert.fail();
+                    } catch (ExecutionException e) {
+                        Assert.assertTrue(e.getCause() instanceof TestException);
+                        Assert.assertEquals("fail-" + i, e.getCause().getMessage());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(BATCH_SIZE, paths.size());
+        for (String path : paths) {
+            Assert.assertTrue(path, path.endsWith(RequestType.INVOKE_BATCH.getPath()));
+        }
+    }
+
+    @Test
+    public void testMalformedBatch() throws Exception {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeInt(0);
+        }
+        Assert.assertEquals(400, sendBatch(content.toByteArray()));
+    }
+
+    @Test
+    public void testOversizedBatch() throws Exception {
+        final StatelessEJBLocator<EchoRemote> locator = new StatelessEJBLocator<>(EchoRemote.class, APP, MODULE, "CalculatorBean", "");
+        final String path = new RequestBuilder()
+                .setRequestType(RequestType.INVOKE)
+                .setLocator(locator)
+                .setMethod(EchoRemote.class.getMethod("echo", String.class))
+                .setView(EchoRemote.class.getName())
+                .setVersion(Protocol.LATEST)
+                .createInvocationPath();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeInt(1);
+            out.writeUTF(path);
+            // the server must refuse the length before allocating anything
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        Assert.assertEquals(413, sendBatch(content.toByteArray()));
+    }
+
+    private static EJBClientContext newBatchingClientContext() {
+        final String previous = System.setProperty("org.wildfly.httpclient.ejb.batch.max-size", Integer.toString(BATCH_SIZE));
+        System.setProperty("org.wildfly.httpclient.ejb.batch.max-delay", "1000");
+        try {
+            // the receiver reads the batching configuration once the transport provider is registered
+            return new EJBClientContext.Builder().addTransportProvider(new HttpClientProvider()).build();
+        } finally {
+            if (previous == null) {
+                System.clearProperty("org.wildfly.httpclient.ejb.batch.max-size");
+            } else {
+                System.setProperty("org.wildfly.httpclient.ejb.batch.max-size", previous);
+            }
+            System.clearProperty("org.wildfly.httpclient.ejb.batch.max-delay");
+        }
+    }
+
+    private static int sendBatch(final byte[] content) throws IOException, InterruptedException {
+        final ClientRequest request = new RequestBuilder()
+                .setRequestType(RequestType.INVOKE_BATCH)
+                .setVersion(Protocol.LATEST)
+                .createRequest(URI.create(EJBTestServer.getDefaultServerURL()).getPath());
+        final HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(EJBTestServer.getDefaultRootServerURL() + request.getPath()))
+                .header(Headers.CONTENT_TYPE_STRING, request.getRequestHeaders().getFirst(Headers.CONTENT_TYPE))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content))
+                .build();
+        return HttpClient.newHttpClient().send(httpRequest, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @ApplicationException
+    private static class TestException extends Exception {
+        public TestException(String message) {
+            super(message);
+        }
+    }
+}
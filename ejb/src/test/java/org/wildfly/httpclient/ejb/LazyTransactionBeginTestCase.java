@@ -0,0 +1,481 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.ejb;
+
+import static io.undertow.util.Headers.SET_COOKIE;
+import static org.wildfly.httpclient.common.HeadersHelper.putResponseHeader;
+
+import io.undertow.server.HttpHandler;
+import org.jboss.ejb.client.EJBClient;
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.jboss.ejb.client.URIAffinity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.wildfly.common.annotation.NotNull;
+import org.wildfly.httpclient.transaction.HttpRemoteTransactionService;
+import org.wildfly.httpclient.transaction.LazyTransactionBegin;
+import org.wildfly.transaction.client.ContextTransactionManager;
+import org.wildfly.transaction.client.ImportResult;
+import org.wildfly.transaction.client.LocalTransaction;
+import org.wildfly.transaction.client.LocalTransactionContext;
+import org.wildfly.transaction.client.RemoteTransaction;
+import org.wildfly.transaction.client.RemoteTransactionContext;
+import org.wildfly.transaction.client.SimpleXid;
+import org.wildfly.transaction.client.XAImporter;
+import org.wildfly.transaction.client.spi.LocalTransactionProvider;
+import org.wildfly.transaction.client.spi.SubordinateTransactionControl;
+
+import jakarta.transaction.RollbackException;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.SystemException;
+import jakarta.transaction.Transaction;
+import jakarta.transaction.TransactionManager;
+import jakarta.transaction.UserTransaction;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Tests remote transactions begun by the first EJB invocation within them instead of a separate begin request.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+@RunWith(EJBTestServer.class)
+public class LazyTransactionBeginTestCase {
+
+    private static final String LAZY_BEGIN = "org.wildfly.httpclient.transaction.lazy-begin";
+    /**
+     * Services with transaction support are registered under their own prefix, leaving the default EJB service untouched.
+     */
+    private static final String PREFIX = "lazy";
+
+    private final Map<SimpleXid, TestTransaction> transactions = new ConcurrentHashMap<>();
+    private final List<TestTransaction> invoked = new CopyOnWriteArrayList<>();
+    private final AtomicInteger transactionRequests = new AtomicInteger();
+    private volatile boolean failBegin;
+
+    @Before
+    public void before() {
+        System.setProperty(LAZY_BEGIN, "true");
+        final LocalTransactionContext transactionContext = new LocalTransactionContext(new TestTransactionProvider());
+        final Function<LocalTransaction, Xid> xidResolver = localTransaction -> localTransaction.getProviderInterface(TestTransaction.class).getXid();
+        final HttpHandler transactionHandler = new HttpRemoteTransactionService(transactionContext, xidResolver).createHandler();
+        EJBTestServer.registerServicesHandler(PREFIX + "/common/v1/affinity", exchange -> putResponseHeader(exchange, SET_COOKIE, "JSESSIONID=" + EJBTestServer.INITIAL_SESSION_AFFINITY));
+        EJBTestServer.registerServicesHandler(PREFIX + "/ejb", EJBTestServer.createEjbHandler(transactionContext, xidResolver));
+        EJBTestServer.registerServicesHandler(PREFIX + "/txn", exchange -> {
+            transactionRequests.incrementAndGet();
+            transactionHandler.handleRequest(exchange);
+        });
+        EJBTestServer.setHandler((invocation, affinity, out, method, handle, attachments) -> {
+            final Transaction transaction = invocation.getTransaction();
+            invoked.add(transaction == null ? null : ((LocalTransaction) transaction).getProviderInterface(TestTransaction.class));
+            return invocation.getParameters()[0];
+        });
+    }
+
+    @After
+    public void after() throws Exception {
+        System.clearProperty(LAZY_BEGIN);
+        // never leave the transaction of a failed test associated with the thread
+        ContextTransactionManager.getInstance().suspend();
+    }
+
+    @Test
+    public void testInvocationBeginsTransaction() throws Exception {
+        final UserTransaction userTransaction = RemoteTransactionContext.getInstance().getUserTransaction();
+        userTransaction.begin();
+        final EchoRemote proxy = createProxy();
+        Assert.assertEquals("first", proxy.echo("first"));
+        Assert.assertEquals("Transaction begun by a separate request", 0, transactionRequests.get());
+        Assert.assertEquals(1, transactions.size());
+        final TestTransaction transaction = transactions.values().iterator().next();
+        Assert.assertEquals("second", proxy.echo("second"));
+        Assert.assertEquals("Transaction begun twice", 1, transactions.size());
+        Assert.assertEquals(2, invoked.size());
+        Assert.assertSame(transaction, invoked.get(0));
+        Assert.assertSame(transaction, invoked.get(1));
+
+        userTransaction.commit();
+        Assert.assertEquals(1, transactionRequests.get());
+        Assert.assertEquals(Status.STATUS_COMMITTED, transaction.getStatus());
+    }
+
+    @Test
+    public void testInvocationBeginsTransactionRolledBack() throws Exception {
+        final UserTransaction userTransaction = RemoteTransactionContext.getInstance().getUserTransaction();
+        userTransaction.begin();
+        Assert.assertEquals("first", createProxy().echo("first"));
+        Assert.assertEquals(1, transactions.size());
+        final TestTransaction transaction = transactions.values().iterator().next();
+        Assert.assertSame(transaction, invoked.get(0));
+
+        userTransaction.rollback();
+        Assert.assertEquals(1, transactionRequests.get());
+        Assert.assertEquals(Status.STATUS_ROLLEDBACK, transaction.getStatus());
+    }
+
+    @Test
+    public void testCommitWithoutInvocation() throws Exception {
+        final UserTransaction userTransaction = RemoteTransactionContext.getInstance().getUserTransaction();
+        userTransaction.begin();
+        userTransaction.commit();
+        // nothing claimed the begin, the transaction never existed on the server
+        Assert.assertEquals(0, transactionRequests.get());
+        Assert.assertTrue(transactions.isEmpty());
+    }
+
+    @Test
+    public void testFailedBeginMarksRollbackOnly() throws Exception {
+        failBegin = true;
+        final UserTransaction userTransaction = RemoteTransactionContext.getInstance().getUserTransaction();
+        userTransaction.begin();
+        try {
+            createProxy().echo("first");
+            Assert.fail("Invocation not failed");
+        } catch (Exception expected) {
+            // the server failed to begin the transaction
+        }
+        Assert.assertTrue(invoked.isEmpty());
+        try {
+            userTransaction.commit();
+            Assert.fail("Transaction not rolled back");
+        } catch (RollbackException expected) {
+            // the transaction was marked rollback only
+        }
+        Assert.assertEquals(0, transactionRequests.get());
+        Assert.assertTrue(transactions.isEmpty());
+    }
+
+    @Test
+    public void testBeginClaimedButNotSent() throws Exception {
+        final UserTransaction userTransaction = RemoteTransactionContext.getInstance().getUserTransaction();
+        userTransaction.setTransactionTimeout(1);
+        try {
+            userTransaction.begin();
+        } finally {
+            userTransaction.setTransactionTimeout(0);
+        }
+        // an invocation claims the begin and fails before its request is sent, its outcome never arrives
+        final RemoteTransaction transaction = (RemoteTransaction) ContextTransactionManager.getInstance().getTransaction();
+        transaction.setLocation(getServiceURI());
+        final LazyTransactionBegin lazyBegin = transaction.getProviderInterface(LazyTransactionBegin.class);
+        Assert.assertNotEquals(-1, lazyBegin.claimBegin());
+        try {
+            userTransaction.commit();
+            Assert.fail("Transaction not rolled back");
+        } catch (RollbackException expected) {
+            // the begin was given up once the transaction timed out
+        }
+        Assert.assertEquals(0, transactionRequests.get());
+        Assert.assertTrue(transactions.isEmpty());
+    }
+
+    private static URI getServiceURI() throws Exception {
+        return new URI(EJBTestServer.getDefaultServerURL() + "/" + PREFIX);
+    }
+
+    private static EchoRemote createProxy() throws Exception {
+        final StatelessEJBLocator<EchoRemote> locator = new StatelessEJBLocator<>(EchoRemote.class, SimpleInvocationTestCase.APP, SimpleInvocationTestCase.MODULE, SimpleInvocationTestCase.BEAN, "");
+        final EchoRemote proxy = EJBClient.createProxy(locator);
+        EJBClient.setStrongAffinity(proxy, URIAffinity.forUri(getServiceURI()));
+        return proxy;
+    }
+
+    private final class TestTransactionProvider implements LocalTransactionProvider {
+        private final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+        @Override
+        public TransactionManager getTransactionManager() {
+            return new TransactionManager() {
+                @Override
+                public void begin() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void commit() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void rollback() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void setRollbackOnly() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int getStatus() throws SystemException {
+                    final Transaction transaction = current.get();
+                    return transaction == null ? Status.STATUS_NO_TRANSACTION : transaction.getStatus();
+                }
+
+                @Override
+                public Transaction getTransaction() {
+                    return current.get();
+                }
+
+                @Override
+                public void setTransactionTimeout(int seconds) {
+                }
+
+                @Override
+                public Transaction suspend() {
+                    final Transaction old = current.get();
+                    current.remove();
+                    return old;
+                }
+
+                @Override
+                public void resume(Transaction transaction) {
+                    current.set(transaction);
+                }
+            };
+        }
+
+        @Override
+        public XAImporter getXAImporter() {
+            return new XAImporter() {
+                @Override
+                public ImportResult<?> findOrImportTransaction(Xid xid, int timeout, boolean doNotImport) throws XAException {
+                    final TestTransaction transaction = transactions.get(SimpleXid.of(xid));
+                    if (transaction == null) {
+                        if (doNotImport) {
+                            return null;
+                        }
+                        throw new XAException(XAException.XAER_NOTA);
+                    }
+                    return new ImportResult<Transaction>(transaction, new SubordinateTransactionControl() {
+                        @Override
+                        public void rollback() {
+                            transaction.rollback();
+                        }
+
+                        @Override
+                        public void end(int flags) {
+                        }
+
+                        @Override
+                        public void beforeCompletion() {
+                        }
+
+                        @Override
+                        public int prepare() {
+                            return XAResource.XA_OK;
+                        }
+
+                        @Override
+                        public void forget() {
+                        }
+
+                        @Override
+                        public void commit(boolean onePhase) throws XAException {
+                            try {
+                                transaction.commit();
+                            } catch (RollbackException e) {
+                                throw new XAException(XAException.XA_RBROLLBACK);
+                            }
+                        }
+                    }, false);
+                }
+
+                @Override
+                public Transaction findExistingTransaction(Xid xid) {
+                    return transactions.get(SimpleXid.of(xid));
+                }
+
+                @Override
+                public void commit(Xid xid, boolean onePhase) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void forget(Xid xid) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Xid[] recover(int flag, String parentName) {
+                    return new Xid[0];
+                }
+            };
+        }
+
+        @Override
+        public Transaction createNewTransaction(int timeout) throws SystemException {
+            if (failBegin) {
+                throw new SystemException("Begin failed on purpose");
+            }
+            final TestTransaction transaction = new TestTransaction();
+            transactions.put(SimpleXid.of(transaction.getXid()), transaction);
+            return transaction;
+        }
+
+        @Override
+        public boolean isImported(@NotNull Transaction transaction) {
+            return false;
+        }
+
+        @Override
+        public void registerInterposedSynchronization(@NotNull Transaction transaction, @NotNull Synchronization sync) {
+            ((TestTransaction) transaction).registerSynchronization(sync);
+        }
+
+        @Override
+        public Object getResource(@NotNull Transaction transaction, @NotNull Object key) {
+            return null;
+        }
+
+        @Override
+        public void putResource(@NotNull Transaction transaction, @NotNull Object key, Object value) {
+        }
+
+        @Override
+        public Object putResourceIfAbsent(@NotNull Transaction transaction, @NotNull Object key, Object value) {
+            return null;
+        }
+
+        @Override
+        public boolean getRollbackOnly(@NotNull Transaction transaction) {
+            return ((TestTransaction) transaction).getStatus() == Status.STATUS_MARKED_ROLLBACK;
+        }
+
+        @Override
+        public Object getKey(@NotNull Transaction transaction) {
+            return ((TestTransaction) transaction).getXid();
+        }
+
+        @Override
+        public void commitLocal(@NotNull Transaction transaction) throws RollbackException {
+            ((TestTransaction) transaction).commit();
+        }
+
+        @Override
+        public void rollbackLocal(@NotNull Transaction transaction) {
+            ((TestTransaction) transaction).rollback();
+        }
+
+        @Override
+        public void dropLocal(@NotNull Transaction transaction) {
+        }
+
+        @Override
+        public void dropRemote(@NotNull Transaction transaction) {
+        }
+
+        @Override
+        public int getTimeout(@NotNull Transaction transaction) {
+            return 0;
+        }
+
+        @Override
+        public Xid getXid(@NotNull Transaction transaction) {
+            return ((TestTransaction) transaction).getXid();
+        }
+
+        @Override
+        public String getNodeName() {
+            return "test";
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getProviderInterface(Transaction transaction, Class<T> providerInterfaceType) {
+            return providerInterfaceType.isInstance(transaction) ? (T) transaction : null;
+        }
+    }
+
+    private static final class TestTransaction implements Transaction {
+
+        private final Xid xid;
+        private final List<Synchronization> synchronizations = new CopyOnWriteArrayList<>();
+        private volatile int status = Status.STATUS_ACTIVE;
+
+        private TestTransaction() {
+            final byte[] global = new byte[10];
+            final byte[] branch = new byte[10];
+            new Random().nextBytes(global);
+            new Random().nextBytes(branch);
+            xid = new SimpleXid(1, global, branch);
+        }
+
+        @Override
+        public void commit() throws RollbackException {
+            if (status == Status.STATUS_MARKED_ROLLBACK) {
+                rollback();
+                throw new RollbackException();
+            }
+            synchronizations.forEach(Synchronization::beforeCompletion);
+            status = Status.STATUS_COMMITTED;
+            synchronizations.forEach(s -> s.afterCompletion(Status.STATUS_COMMITTED));
+        }
+
+        @Override
+        public void rollback() {
+            status = Status.STATUS_ROLLEDBACK;
+            synchronizations.forEach(s -> s.afterCompletion(Status.STATUS_ROLLEDBACK));
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            status = Status.STATUS_MARKED_ROLLBACK;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean enlistResource(XAResource xaRes) {
+            return false;
+        }
+
+        @Override
+        public boolean delistResource(XAResource xaRes, int flag) {
+            return false;
+        }
+
+        @Override
+        public void registerSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        public Xid getXid() {
+            return xid;
+        }
+    }
+
+}
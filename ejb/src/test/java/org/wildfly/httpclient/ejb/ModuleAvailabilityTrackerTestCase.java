@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.ejb.client.EJBModuleIdentifier;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class ModuleAvailabilityTrackerTestCase {
+
+    private static final EJBModuleIdentifier MODULE_A = new EJBModuleIdentifier("app", "a", "");
+    private static final EJBModuleIdentifier MODULE_B = new EJBModuleIdentifier("app", "b", "");
+
+    @Test
+    public void testUnknownVersionReturnsSnapshot() {
+        ModuleAvailabilityTracker tracker = new ModuleAvailabilityTracker();
+        tracker.moduleAvailable(Collections.singletonList(MODULE_A));
+
+        DiscoveryUpdate update = tracker.getUpdate(null);
+        Assert.assertTrue(update.isFull());
+        Assert.assertEquals(Collections.singleton(MODULE_A), update.getAddedModules());
+        Assert.assertEquals(tracker.getVersion(), update.getVersion());
+
+        update = tracker.getUpdate("foreign-1");
+        Assert.assertTrue(update.isFull());
+    }
+
+    @Test
+    public void testChangesSinceKnownVersion() {
+        ModuleAvailabilityTracker tracker = new ModuleAvailabilityTracker();
+        tracker.moduleAvailable(Collections.singletonList(MODULE_A));
+        String knownVersion = tracker.getVersion();
+        Assert.assertNull(tracker.getUpdate(knownVersion));
+
+        tracker.moduleAvailable(Collections.singletonList(MODULE_B));
+        tracker.moduleUnavailable(Collections.singletonList(MODULE_A));
+
+        DiscoveryUpdate update = tracker.getUpdate(knownVersion);
+        Assert.assertFalse(update.isFull());
+        Assert.assertEquals(Collections.singleton(MODULE_B), update.getAddedModules());
+        Assert.assertEquals(Collections.singleton(MODULE_A), update.getRemovedModules());
+        Assert.assertNull(tracker.getUpdate(update.getVersion()));
+    }
+
+    @Test
+    public void testListenerNotifiedOnChange() {
+        ModuleAvailabilityTracker tracker = new ModuleAvailabilityTracker();
+        AtomicInteger notifications = new AtomicInteger();
+        tracker.addListener(tracker.getVersion(), notifications::incrementAndGet);
+        Assert.assertEquals(0, notifications.get());
+
+        tracker.moduleAvailable(Collections.singletonList(MODULE_A));
+        tracker.moduleAvailable(Collections.singletonList(MODULE_B));
+        Assert.assertEquals(1, notifications.get());
+
+        // already outdated version notifies immediately
+        tracker.addListener("foreign-1", notifications::incrementAndGet);
+        Assert.assertEquals(2, notifications.get());
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wildfly.httpclient.ejb;
+
+import org.jboss.ejb.client.StatelessEJBLocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.net.URLEncoder;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class RequestBuilderTestCase {
+
+    @Test
+    public void testInvocationPath() throws Exception {
+        final Method echo = EchoRemote.class.getMethod("echo", String.class);
+        Assert.assertEquals("/wildfly-services/ejb/v2/invoke/app/module/-/CalculatorBean/-/" + EchoRemote.class.getName()
+                + "/echo/java.lang.String", invoke("/wildfly-services", "CalculatorBean", echo, null));
+        // served from the cache this time
+        Assert.assertEquals("/wildfly-services/ejb/v2/invoke/app/module/-/CalculatorBean/abc/" + EchoRemote.class.getName()
+                + "/echo/java.lang.String", invoke("/wildfly-services", "CalculatorBean", echo, "abc"));
+    }
+
+    @Test
+    public void testInvocationPathPerBeanAndOverload() throws Exception {
+        final Method echo = EchoRemote.class.getMethod("echo", String.class);
+        final Method echoArray = EchoRemote.class.getMethod("echo", String[].class);
+        final String first = invoke("/wildfly-services", "FirstBean", echo, null);
+        final String second = invoke("/wildfly-services", "SecondBean", echo, null);
+        Assert.assertTrue(first, first.contains("/FirstBean/"));
+        Assert.assertTrue(second, second.contains("/SecondBean/"));
+        Assert.assertEquals(first, invoke("/wildfly-services", "FirstBean", echo, null));
+        Assert.assertEquals(second, invoke("/other", "SecondBean", echo, null).replace("/other/", "/wildfly-services/"));
+        final String array = invoke("/wildfly-services", "FirstBean", echoArray, null);
+        Assert.assertTrue(array, array.endsWith("/echo/" + URLEncoder.encode(String[].class.getName(), "UTF-8")));
+        Assert.assertEquals(first, invoke("/wildfly-services", "FirstBean", echo, null));
+    }
+
+    private static String invoke(final String prefix, final String bean, final Method method, final String beanId) {
+        return new RequestBuilder()
+                .setRequestType(RequestType.INVOKE)
+                .setLocator(new StatelessEJBLocator<>(EchoRemote.class, "app", "module", bean, ""))
+                .setView(EchoRemote.class.getName())
+                .setMethod(method)
+                .setBeanId(beanId)
+                .setVersion(2)
+                .createRequest(prefix)
+                .getPath();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.ejb;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.transaction.client.SimpleXid;
+
+import javax.transaction.xa.Xid;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class SerializerTestCase {
+
+    @Test
+    public void testXidHeaderRoundTrip() {
+        final Xid xid = new SimpleXid(0x20005, new byte[] {0, 1, -2, 127, -128}, new byte[] {42});
+        final String header = Serializer.xidToHeader(xid);
+        Assert.assertEquals(-1, header.indexOf('='));
+        Assert.assertEquals(xid, Serializer.xidFromHeader(header));
+    }
+
+    @Test
+    public void testXidHeaderEmptyBranch() {
+        final Xid xid = new SimpleXid(1, new byte[] {1, 2, 3}, new byte[0]);
+        Assert.assertEquals(xid, Serializer.xidFromHeader(Serializer.xidToHeader(xid)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedXidHeader() {
+        Serializer.xidFromHeader("1.AQID");
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.wildfly.httpclient.naming;
 
+import static org.wildfly.httpclient.common.HttpServerHelper.rejectExpired;
 import static org.wildfly.httpclient.naming.Constants.NAME_PATH_PARAMETER;
 
 import io.undertow.server.HttpHandler;
@@ -54,7 +55,13 @@ public class HttpRemoteNamingService {
             registerHandler(routingHandler, requestType);
         }
 
-        return config.wrap(new BlockingHandler(new ElytronIdentityHandler(routingHandler)));
+        final HttpHandler handler = new BlockingHandler(new ElytronIdentityHandler(routingHandler));
+        // expired requests are dropped before being dispatched to a worker thread
+        return config.wrap(exchange -> {
+            if (!rejectExpired(exchange)) {
+                handler.handleRequest(exchange);
+            }
+        });
     }
 
     private void registerHandler(final RoutingHandler routingHandler, final RequestType requestType) {
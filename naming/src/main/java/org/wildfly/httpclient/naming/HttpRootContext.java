@@ -42,6 +42,7 @@ import io.undertow.client.ClientRequest;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.ObjectResolver;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.AuthenticationConfigurationCache;
 import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.httpclient.common.WildflyHttpContext;
@@ -55,7 +56,7 @@ import org.wildfly.naming.client._private.Messages;
 import org.wildfly.naming.client.util.FastHashtable;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
-import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
+import org.wildfly.security.manager.WildFlySecurityManager;
 
 import javax.naming.Binding;
 import javax.naming.CommunicationException;
@@ -64,6 +65,7 @@ import javax.naming.Name;
 import javax.naming.NameClassPair;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
+import javax.naming.TimeLimitExceededException;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.URI;
@@ -74,6 +76,8 @@ import java.util.Iterator;
 import java.util.ServiceLoader;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Root naming context.
@@ -84,8 +88,8 @@ import java.util.concurrent.ExecutionException;
 public class HttpRootContext extends AbstractContext {
 
     private static final int MAX_NOT_FOUND_RETRY = Integer.getInteger("org.wildfly.httpclient.naming.max-retries", 8);
+    private static final long OPERATION_TIMEOUT = Long.parseLong(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.naming.operation-timeout", "0"));
 
-    private static final AuthenticationContextConfigurationClient CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
     private final HttpNamingProvider httpNamingProvider;
     private final String scheme;
 
@@ -244,6 +248,7 @@ public class HttpRootContext extends AbstractContext {
             final HttpTargetContext targetContext = WildflyHttpContext.getCurrent().getTargetContext(uri);
             RequestBuilder builder = new RequestBuilder().setRequestType(requestType).setName(name).setNewName(newName).setObject(object).setVersion(targetContext.getProtocolVersion());
             final ClientRequest request = builder.createRequest(uri.getPath());
+            HttpTargetContext.setTimeout(request, OPERATION_TIMEOUT);
             if (expectedValue) {
                 return performOperation(name1, uri, targetContext, request);
             }
@@ -255,7 +260,7 @@ public class HttpRootContext extends AbstractContext {
     private Object performOperation(Name name, URI providerUri, HttpTargetContext targetContext, ClientRequest request) throws NamingException {
         final ProviderEnvironment providerEnvironment = httpNamingProvider.getProviderEnvironment();
         final AuthenticationContext context = providerEnvironment.getAuthenticationContextSupplier().get();
-        AuthenticationContextConfigurationClient client = CLIENT;
+        final AuthenticationConfigurationCache client = AuthenticationConfigurationCache.getInstance();
         final int defaultPort = providerUri.getScheme().equals(HTTPS_SCHEME) ? HTTPS_PORT : HTTP_PORT;
         final AuthenticationConfiguration authenticationConfiguration = client.getAuthenticationConfiguration(providerUri, context, defaultPort, "jndi", "jboss");
         final SSLContext sslContext;
@@ -277,12 +282,16 @@ public class HttpRootContext extends AbstractContext {
                     result::completeExceptionally, VALUE, null, true);
         }
         try {
-            Object ret = result.get();
+            Object ret = await(result);
             return ret == null ? new HttpRemoteContext(HttpRootContext.this, name.toString()) : ret;
         } catch (InterruptedException e) {
             NamingException namingException = new NamingException(e.getMessage());
             namingException.initCause(e);
             throw namingException;
+        } catch (TimeoutException e) {
+            TimeLimitExceededException timeLimitExceededException = new TimeLimitExceededException(e.getMessage());
+            timeLimitExceededException.initCause(e);
+            throw timeLimitExceededException;
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             if (cause instanceof NamingException) {
@@ -299,6 +308,10 @@ public class HttpRootContext extends AbstractContext {
         }
     }
 
+    private static <T> T await(final CompletableFuture<T> result) throws InterruptedException, ExecutionException, TimeoutException {
+        return OPERATION_TIMEOUT > 0 ? result.get(OPERATION_TIMEOUT, TimeUnit.MILLISECONDS) : result.get();
+    }
+
     private boolean canRetry(ProviderEnvironment environment) {
         return environment.getProviderUris().size() > 1;
     }
@@ -306,7 +319,7 @@ public class HttpRootContext extends AbstractContext {
     private void performOperation(URI providerUri, Object object, HttpTargetContext targetContext, ClientRequest request) throws NamingException {
         final ProviderEnvironment providerEnvironment = httpNamingProvider.getProviderEnvironment();
         final AuthenticationContext context = providerEnvironment.getAuthenticationContextSupplier().get();
-        AuthenticationContextConfigurationClient client = CLIENT;
+        final AuthenticationConfigurationCache client = AuthenticationConfigurationCache.getInstance();
         final int defaultPort = providerUri.getScheme().equals(HTTPS_SCHEME) ? HTTPS_PORT : HTTP_PORT;
         final AuthenticationConfiguration authenticationConfiguration = client.getAuthenticationConfiguration(providerUri, context, defaultPort, "jndi", "jboss");
         final SSLContext sslContext;
@@ -327,11 +340,15 @@ public class HttpRootContext extends AbstractContext {
                     object != null ? objectHttpMarshaller(marshaller, object) : null, emptyHttpResultHandler(result, null), result::completeExceptionally, null, null);
         }
         try {
-            result.get();
+            await(result);
         } catch (InterruptedException e) {
             NamingException namingException = new NamingException(e.getMessage());
             namingException.initCause(e);
             throw namingException;
+        } catch (TimeoutException e) {
+            TimeLimitExceededException timeLimitExceededException = new TimeLimitExceededException(e.getMessage());
+            timeLimitExceededException.initCause(e);
+            throw timeLimitExceededException;
         } catch (ExecutionException e) {
             Throwable cause = e.getCause();
             if (cause instanceof NamingException) {
@@ -30,6 +30,7 @@ import static org.wildfly.httpclient.naming.Constants.NEW_QUERY_PARAMETER;
 import static org.wildfly.httpclient.naming.Constants.VALUE;
 
 import io.undertow.client.ClientRequest;
+import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.httpclient.common.Protocol;
 
 import javax.naming.Name;
@@ -83,6 +84,10 @@ final class RequestBuilder {
         setRequestMethod(request);
         setRequestPath(request, prefix);
         setRequestHeaders(request);
+        if (requestType == RequestType.LOOKUP || requestType == RequestType.LOOKUP_LINK) {
+            // lookups do not modify anything, they can be sent again if the connection fails
+            request.putAttachment(HttpTargetContext.IDEMPOTENT, Boolean.TRUE);
+        }
         return request;
     }
 
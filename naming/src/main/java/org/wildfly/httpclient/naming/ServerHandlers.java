@@ -27,6 +27,7 @@ import static org.wildfly.httpclient.common.ByteInputs.byteInputOf;
 import static org.wildfly.httpclient.common.ByteOutputs.byteOutputOf;
 import static org.wildfly.httpclient.common.HeadersHelper.getRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.putResponseHeader;
+import static org.wildfly.httpclient.common.HttpServerHelper.rejectExpired;
 import static org.wildfly.httpclient.common.HttpServerHelper.sendException;
 import static org.wildfly.httpclient.naming.Constants.NAME_PATH_PARAMETER;
 import static org.wildfly.httpclient.naming.Constants.NEW_QUERY_PARAMETER;
@@ -124,6 +125,9 @@ final class ServerHandlers {
 
         @Override
         public final void handleRequest(HttpServerExchange exchange) throws Exception {
+            if (rejectExpired(exchange)) {
+                return;
+            }
             PathTemplateMatch params = exchange.getAttachment(PathTemplateMatch.ATTACHMENT_KEY);
             String name = URLDecoder.decode(params.getParameters().get(NAME_PATH_PARAMETER), UTF_8);
             try {
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import javax.transaction.xa.XAException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking completion of a remote subordinate transaction. Lets a coordinator drive several participants
+ * concurrently instead of one after another. Returned stages fail with {@link XAException}.
+ * <p>
+ * Implemented by the controls returned from {@link HttpRemoteTransactionPeer#lookupXid(javax.transaction.xa.Xid)}.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public interface AsyncSubordinateTransactionControl {
+
+    /**
+     * Prepares the transaction.
+     *
+     * @return stage completed with {@link javax.transaction.xa.XAResource#XA_OK} or {@link javax.transaction.xa.XAResource#XA_RDONLY}
+     */
+    CompletionStage<Integer> prepareAsync();
+
+    /**
+     * Commits the transaction.
+     *
+     * @param onePhase {@code true} to commit in one phase
+     * @return stage completed once the transaction is committed
+     */
+    CompletionStage<Void> commitAsync(boolean onePhase);
+
+    /**
+     * Rolls back the transaction.
+     *
+     * @return stage completed once the transaction is rolled back
+     */
+    CompletionStage<Void> rollbackAsync();
+
+    /**
+     * Forgets the heuristically completed transaction.
+     *
+     * @return stage completed once the transaction is forgotten
+     */
+    CompletionStage<Void> forgetAsync();
+
+}
@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking completion of a remote user-controlled transaction, obtained from the transaction via
+ * {@code getProviderInterface}. Returned stages fail with the exceptions the blocking variants throw.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public interface AsyncTransactionControl {
+
+    /**
+     * Commits the transaction.
+     *
+     * @return stage completed once the transaction is committed
+     */
+    CompletionStage<Void> commitAsync();
+
+    /**
+     * Rolls back the transaction.
+     *
+     * @return stage completed once the transaction is rolled back
+     */
+    CompletionStage<Void> rollbackAsync();
+
+}
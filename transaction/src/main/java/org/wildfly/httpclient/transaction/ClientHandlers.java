@@ -17,22 +17,33 @@
  */
 package org.wildfly.httpclient.transaction;
 
+import static io.undertow.util.Headers.CONTENT_TYPE;
 import static org.wildfly.httpclient.common.ByteInputs.byteInputOf;
 import static org.wildfly.httpclient.common.ByteOutputs.byteOutputOf;
+import static org.wildfly.httpclient.common.HeadersHelper.getResponseHeader;
+import static org.wildfly.httpclient.transaction.Serializer.deserializeOutcomes;
 import static org.wildfly.httpclient.transaction.Serializer.deserializeXid;
 import static org.wildfly.httpclient.transaction.Serializer.deserializeXidArray;
+import static org.wildfly.httpclient.transaction.Serializer.readCompactXid;
 import static org.wildfly.httpclient.transaction.Serializer.serializeXid;
+import static org.wildfly.httpclient.transaction.Serializer.serializeXidArray;
+import static org.wildfly.httpclient.transaction.Serializer.toCompactXid;
 
 import io.undertow.client.ClientResponse;
+import io.undertow.util.AttachmentKey;
 import org.jboss.marshalling.ByteInput;
 import org.jboss.marshalling.ByteOutput;
 import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.ContentType;
+import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpTargetContext;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.xnio.IoUtils;
 
 import javax.transaction.xa.Xid;
 import java.io.Closeable;
+import java.io.DataInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.concurrent.CompletableFuture;
@@ -45,26 +56,52 @@ import java.util.function.Function;
  */
 final class ClientHandlers {
 
+    /**
+     * If set Xids are sent in compact binary layout even before the server proved to support it.
+     */
+    private static final boolean COMPACT_XID = Boolean.parseBoolean(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.transaction.compact-xid", "false"));
+    private static final AttachmentKey<Boolean> COMPACT_XID_SUPPORTED = AttachmentKey.create(Boolean.class);
+
     private ClientHandlers() {
         // forbidden instantiation
     }
 
+    /**
+     * Returns whether the target accepts Xids in compact binary layout, learned from its response to transaction begin.
+     */
+    static boolean isCompactXidSupported(final HttpTargetContext targetContext) {
+        return COMPACT_XID || targetContext.getAttachment(COMPACT_XID_SUPPORTED) != null;
+    }
+
+    static HttpTargetContext.HttpMarshaller compactXidHttpMarshaller(final Xid xid) {
+        return os -> os.write(toCompactXid(xid));
+    }
+
     static HttpTargetContext.HttpMarshaller xidHttpMarshaller(final Marshaller marshaller, final Xid xid) {
         return new XidHttpMarshaller(marshaller, xid);
     }
 
+    static HttpTargetContext.HttpMarshaller xidArrayHttpMarshaller(final Marshaller marshaller, final Xid[] xids) {
+        return new XidArrayHttpMarshaller(marshaller, xids);
+    }
+
     static <T> HttpTargetContext.HttpResultHandler emptyHttpResultHandler(final CompletableFuture<T> result, final Function<ClientResponse, T> function) {
         return new EmptyHttpResultHandler<T>(result, function);
     }
 
-    static HttpTargetContext.HttpResultHandler xidHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<Xid> result) {
-        return new XidHttpResultHandler(unmarshaller, result);
+    static HttpTargetContext.HttpResultHandler xidHttpResultHandler(final HttpTargetContext targetContext, final HttpMarshallerFactory marshallerFactory,
+                                                                    final CompletableFuture<Xid> result) {
+        return new XidHttpResultHandler(targetContext, marshallerFactory, result);
     }
 
     static HttpTargetContext.HttpResultHandler xidArrayHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<Xid[]> result) {
         return new XidArrayHttpResultHandler(unmarshaller, result);
     }
 
+    static HttpTargetContext.HttpResultHandler outcomesHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<int[]> result) {
+        return new OutcomesHttpResultHandler(unmarshaller, result);
+    }
+
     private static final class XidHttpMarshaller implements HttpTargetContext.HttpMarshaller {
         private final Marshaller marshaller;
         private final Xid xid;
@@ -84,6 +121,25 @@ final class ClientHandlers {
         }
     }
 
+    private static final class XidArrayHttpMarshaller implements HttpTargetContext.HttpMarshaller {
+        private final Marshaller marshaller;
+        private final Xid[] xids;
+
+        private XidArrayHttpMarshaller(final Marshaller marshaller, final Xid[] xids) {
+            this.marshaller = marshaller;
+            this.xids = xids;
+        }
+
+        @Override
+        public void marshall(final OutputStream os) throws Exception {
+            try (ByteOutput out = byteOutputOf(os)) {
+                marshaller.start(out);
+                serializeXidArray(marshaller, xids);
+                marshaller.finish();
+            }
+        }
+    }
+
     private static final class EmptyHttpResultHandler<T> implements HttpTargetContext.HttpResultHandler {
         private final CompletableFuture<T> result;
         private final Function<ClientResponse, T> function;
@@ -104,21 +160,36 @@ final class ClientHandlers {
     }
 
     private static final class XidHttpResultHandler implements HttpTargetContext.HttpResultHandler {
-        private final Unmarshaller unmarshaller;
+        private final HttpTargetContext targetContext;
+        private final HttpMarshallerFactory marshallerFactory;
         private final CompletableFuture<Xid> result;
 
-        private XidHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<Xid> result) {
-            this.unmarshaller = unmarshaller;
+        private XidHttpResultHandler(final HttpTargetContext targetContext, final HttpMarshallerFactory marshallerFactory, final CompletableFuture<Xid> result) {
+            this.targetContext = targetContext;
+            this.marshallerFactory = marshallerFactory;
             this.result = result;
         }
 
         @Override
         public void handleResult(final InputStream is, final ClientResponse response, final Closeable doneCallback) {
-            try (ByteInput in = byteInputOf(is)) {
-                unmarshaller.start(in);
-                Xid xid = deserializeXid(unmarshaller);
-                unmarshaller.finish();
-                result.complete(xid);
+            try {
+                final ContentType type = ContentType.parse(getResponseHeader(response, CONTENT_TYPE));
+                if (type != null && type.getVersion() == Constants.NEW_TRANSACTION_COMPACT.getVersion()) {
+                    final Xid xid = readCompactXid(new DataInputStream(is));
+                    targetContext.putAttachment(COMPACT_XID_SUPPORTED, Boolean.TRUE);
+                    result.complete(xid);
+                    return;
+                }
+                final Unmarshaller unmarshaller = marshallerFactory.createUnmarshaller(result);
+                if (unmarshaller == null) {
+                    return;
+                }
+                try (ByteInput in = byteInputOf(is)) {
+                    unmarshaller.start(in);
+                    Xid xid = deserializeXid(unmarshaller);
+                    unmarshaller.finish();
+                    result.complete(xid);
+                }
             } catch (Exception e) {
                 result.completeExceptionally(e);
             } finally {
@@ -151,4 +222,28 @@ final class ClientHandlers {
         }
     }
 
+    private static final class OutcomesHttpResultHandler implements HttpTargetContext.HttpResultHandler {
+        private final Unmarshaller unmarshaller;
+        private final CompletableFuture<int[]> result;
+
+        private OutcomesHttpResultHandler(final Unmarshaller unmarshaller, final CompletableFuture<int[]> result) {
+            this.unmarshaller = unmarshaller;
+            this.result = result;
+        }
+
+        @Override
+        public void handleResult(final InputStream is, final ClientResponse response, final Closeable doneCallback) {
+            try (ByteInput in = byteInputOf(is)) {
+                unmarshaller.start(in);
+                int[] ret = deserializeOutcomes(unmarshaller);
+                unmarshaller.finish();
+                result.complete(ret);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                IoUtils.safeClose(doneCallback);
+            }
+        }
+    }
+
 }
@@ -31,14 +31,22 @@ final class Constants {
     static final ContentType XID = new ContentType("application/x-wf-jbmar-xid", 1);
     static final ContentType XID_LIST = new ContentType("application/x-wf-txn-jbmar-xid-list", 1);
     static final ContentType NEW_TRANSACTION = new ContentType("application/x-wf-jbmar-new-txn", 1);
+    // version 2 carries the Xid in compact binary layout instead of marshalling it
+    static final ContentType XID_COMPACT = new ContentType("application/x-wf-jbmar-xid", 2);
+    static final ContentType NEW_TRANSACTION_COMPACT = new ContentType("application/x-wf-jbmar-new-txn", 2);
+    static final ContentType XA_OUTCOMES = new ContentType("application/x-wf-txn-jbmar-xa-outcomes", 1);
 
     static final HttpString TIMEOUT = new HttpString("x-wf-txn-timeout");
     static final HttpString RECOVERY_PARENT_NAME = new HttpString("x-wf-txn-parent-name");
     static final HttpString RECOVERY_FLAGS = new HttpString("x-wf-txn-recovery-flags");
+    static final HttpString RECOVERY_PAGE_SIZE = new HttpString("x-wf-txn-recovery-page-size");
 
     // response headers
     static final HttpString READ_ONLY = new HttpString("x-wf-txn-read-only");
 
+    // request and response headers
+    static final HttpString RECOVERY_CURSOR = new HttpString("x-wf-txn-recovery-cursor");
+
     // context path
     static final String TXN_CONTEXT = "/txn";
 
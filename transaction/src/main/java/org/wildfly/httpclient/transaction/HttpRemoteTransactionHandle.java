@@ -18,8 +18,12 @@
 
 package org.wildfly.httpclient.transaction;
 
+import static org.wildfly.httpclient.transaction.ClientHandlers.compactXidHttpMarshaller;
 import static org.wildfly.httpclient.transaction.ClientHandlers.emptyHttpResultHandler;
+import static org.wildfly.httpclient.transaction.ClientHandlers.isCompactXidSupported;
 import static org.wildfly.httpclient.transaction.ClientHandlers.xidHttpMarshaller;
+import static org.wildfly.httpclient.transaction.ClientHandlers.xidHttpResultHandler;
+import static org.wildfly.httpclient.transaction.Constants.NEW_TRANSACTION_COMPACT;
 
 import io.undertow.client.ClientRequest;
 import org.jboss.marshalling.Marshaller;
@@ -36,24 +40,44 @@ import jakarta.transaction.Status;
 import jakarta.transaction.SystemException;
 import javax.transaction.xa.Xid;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a remote transaction that is managed over HTTP protocol.
+ * <p>
+ * The transaction is begun on the server either eagerly by {@link #begin()}, or lazily by the first request claiming
+ * it via {@link LazyTransactionBegin}. Until then nothing exists on the server, so a transaction completed before
+ * being begun completes locally only.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-class HttpRemoteTransactionHandle implements SimpleTransactionControl {
+class HttpRemoteTransactionHandle implements SimpleTransactionControl, LazyTransactionBegin, AsyncTransactionControl {
+
+    private static final int NOT_BEGUN = 0;
+    private static final int BEGINNING = 1;
+    private static final int BEGUN = 2;
+    private static final int FAILED = 3;
+    /**
+     * Bounds the wait for a begin in progress in seconds if the transaction has no timeout of its own.
+     */
+    private static final int DEFAULT_TIMEOUT = 300;
 
     private final HttpTargetContext targetContext;
     private final AtomicInteger statusRef = new AtomicInteger(Status.STATUS_ACTIVE);
-    private final Xid id;
+    private final Object beginLock = new Object();
+    private final int timeout;
+    private final long created = System.nanoTime();
     private final SSLContext sslContext;
     private final AuthenticationConfiguration authenticationConfiguration;
+    private int beginState = NOT_BEGUN;
+    private Throwable beginFailure;
+    private volatile Xid id;
 
-    HttpRemoteTransactionHandle(final Xid id, final HttpTargetContext targetContext, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration) {
-        this.id = id;
+    HttpRemoteTransactionHandle(final int timeout, final HttpTargetContext targetContext, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration) {
+        this.timeout = timeout;
         this.targetContext = targetContext;
         this.sslContext = sslContext;
         this.authenticationConfiguration = authenticationConfiguration;
@@ -63,115 +87,289 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
         return id;
     }
 
+    /**
+     * Begins the transaction on the server right away.
+     *
+     * @throws SystemException if the transaction could not be begun
+     */
+    void begin() throws SystemException {
+        awaitBegin();
+    }
+
+    @Override
+    public int claimBegin() {
+        synchronized (beginLock) {
+            if (beginState != NOT_BEGUN || statusRef.get() != Status.STATUS_ACTIVE) {
+                return -1;
+            }
+            beginState = BEGINNING;
+        }
+        if (timeout <= 0) {
+            return timeout;
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - created);
+        return (int) Math.max(1, timeout - elapsed);
+    }
+
+    @Override
+    public void begun(final Xid xid) {
+        synchronized (beginLock) {
+            if (beginState != BEGINNING) {
+                return;
+            }
+            id = xid;
+            beginState = BEGUN;
+            beginLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void beginFailed(final Throwable cause) {
+        synchronized (beginLock) {
+            if (beginState != BEGINNING) {
+                return;
+            }
+            beginFailure = cause;
+            beginState = FAILED;
+            beginLock.notifyAll();
+        }
+        statusRef.compareAndSet(Status.STATUS_ACTIVE, Status.STATUS_MARKED_ROLLBACK);
+    }
+
+    /**
+     * Returns the id of the transaction begun on the server, begins it first if nobody claimed it yet
+     * and waits if somebody else is beginning it right now.
+     */
+    private Xid awaitBegin() throws SystemException {
+        if (claimBegin() != -1) {
+            sendBegin();
+        }
+        synchronized (beginLock) {
+            waitForBegin();
+            if (beginState == FAILED) {
+                throw HttpRemoteTransactionMessages.MESSAGES.beginFailed(beginFailure);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Waits until a begin in progress settles. If the transaction was not begun yet it never will be.
+     *
+     * @return {@code true} if the transaction exists on the server
+     */
+    private boolean settleBegin() {
+        synchronized (beginLock) {
+            if (beginState == NOT_BEGUN) {
+                beginState = FAILED;
+                return false;
+            }
+            waitForBegin();
+            return beginState == BEGUN;
+        }
+    }
+
+    /**
+     * Waits until a begin in progress settles, at most until the transaction times out. A begin not settled
+     * by then is considered failed. Must be called with {@code beginLock} held.
+     */
+    private void waitForBegin() {
+        if (beginState != BEGINNING) {
+            return;
+        }
+        final long deadline = created + TimeUnit.SECONDS.toNanos(timeout > 0 ? timeout : DEFAULT_TIMEOUT);
+        boolean interrupted = false;
+        try {
+            long remaining;
+            while (beginState == BEGINNING && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(beginLock, remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (beginState == BEGINNING) {
+            // the outcome is ignored if it ever comes, the server rolls back the transaction once it times out
+            beginFailure = HttpRemoteTransactionMessages.MESSAGES.beginTimedOut();
+            beginState = FAILED;
+            beginLock.notifyAll();
+            statusRef.compareAndSet(Status.STATUS_ACTIVE, Status.STATUS_MARKED_ROLLBACK);
+        }
+    }
+
+    private void sendBegin() {
+        final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.UT_BEGIN).setVersion(targetContext.getProtocolVersion()).setTimeout(timeout);
+        final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
+
+        final CompletableFuture<Xid> result = new CompletableFuture<>();
+        // the response carries the Xid either marshalled or in compact layout, depending on the server
+        targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
+                xidHttpResultHandler(targetContext, targetContext.getHttpMarshallerFactory(request), result), result::completeExceptionally, NEW_TRANSACTION_COMPACT, null);
+        try {
+            begun(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            beginFailed(e);
+        } catch (ExecutionException e) {
+            beginFailed(e.getCause());
+        }
+    }
+
     public void commit() throws RollbackException, HeuristicMixedException, HeuristicRollbackException, SecurityException, SystemException {
-        final AtomicInteger statusRef = this.statusRef;
-        int oldVal = statusRef.get();
-        if (oldVal != Status.STATUS_ACTIVE && oldVal != Status.STATUS_MARKED_ROLLBACK) {
-            throw HttpRemoteTransactionMessages.MESSAGES.invalidTxnState();
+        try {
+            await(commitAsync());
+        } catch (RollbackException | HeuristicMixedException | HeuristicRollbackException | SystemException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw systemException(e);
         }
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync() {
+        final AtomicInteger statusRef = this.statusRef;
+        final int oldVal;
         synchronized (statusRef) {
             oldVal = statusRef.get();
             if (oldVal == Status.STATUS_MARKED_ROLLBACK) {
-                rollback();
-                throw HttpRemoteTransactionMessages.MESSAGES.rollbackOnlyRollback();
+                return rollbackOnlyRollback();
             }
             if (oldVal != Status.STATUS_ACTIVE) {
-                throw HttpRemoteTransactionMessages.MESSAGES.invalidTxnState();
+                return CompletableFuture.failedFuture(HttpRemoteTransactionMessages.MESSAGES.invalidTxnState());
             }
-            statusRef.set(Status.STATUS_COMMITTING);
-
-            final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.UT_COMMIT).setVersion(targetContext.getProtocolVersion());
-            final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
-
-            final CompletableFuture<Void> result = new CompletableFuture<>();
-            final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
-            final Marshaller marshaller = marshallerFactory.createMarshaller(result);
-            if (marshaller != null) {
-                targetContext.sendRequest(request, sslContext, authenticationConfiguration,
-                        xidHttpMarshaller(marshaller, id), emptyHttpResultHandler(result, null), result::completeExceptionally, null, null);
+            if (!settleBegin()) {
+                if (statusRef.get() == Status.STATUS_MARKED_ROLLBACK) {
+                    return rollbackOnlyRollback();
+                }
+                statusRef.set(Status.STATUS_COMMITTED);
+                return CompletableFuture.completedFuture(null);
             }
+            statusRef.set(Status.STATUS_COMMITTING);
+        }
 
-            try {
-                result.get();
+        final CompletableFuture<Void> outcome = new CompletableFuture<>();
+        sendCompletion(RequestType.UT_COMMIT).whenComplete((ignored, failure) -> {
+            if (failure == null) {
                 statusRef.set(Status.STATUS_COMMITTED);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                outcome.complete(null);
+                return;
+            }
+            if (failure instanceof RollbackException) {
+                statusRef.set(Status.STATUS_ROLLEDBACK);
+            } else if (failure instanceof SecurityException) {
+                statusRef.set(oldVal);
+            } else if (failure instanceof HeuristicMixedException || failure instanceof HeuristicRollbackException || failure instanceof SystemException) {
                 statusRef.set(Status.STATUS_UNKNOWN);
-                throw HttpRemoteTransactionMessages.MESSAGES.operationInterrupted();
-            } catch (ExecutionException e) {
-                try {
-                    throw e.getCause();
-                } catch (RollbackException ex) {
-                    statusRef.set(Status.STATUS_ROLLEDBACK);
-                    throw ex;
-                } catch (SecurityException ex) {
-                    statusRef.set(oldVal);
-                    throw ex;
-                } catch (HeuristicMixedException | HeuristicRollbackException | SystemException ex) {
-                    statusRef.set(Status.STATUS_UNKNOWN);
-                    throw ex;
-                } catch (Throwable throwable) {
-                    SystemException ex = new SystemException(throwable.getMessage());
-                    statusRef.set(Status.STATUS_UNKNOWN);
-                    ex.initCause(throwable);
-                    throw ex;
-                }
+            } else {
+                statusRef.set(Status.STATUS_UNKNOWN);
+                failure = systemException(failure);
             }
-        }
+            outcome.completeExceptionally(failure);
+        });
+        return outcome;
     }
 
     public void rollback() throws SecurityException, SystemException {
-        final AtomicInteger statusRef = this.statusRef;
-        int oldVal = statusRef.get();
-        if (oldVal != Status.STATUS_ACTIVE && oldVal != Status.STATUS_MARKED_ROLLBACK) {
-            throw HttpRemoteTransactionMessages.MESSAGES.invalidTxnState();
+        try {
+            await(rollbackAsync());
+        } catch (SystemException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw systemException(e);
         }
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync() {
+        final AtomicInteger statusRef = this.statusRef;
+        final int oldVal;
         synchronized (statusRef) {
             oldVal = statusRef.get();
             if (oldVal != Status.STATUS_ACTIVE && oldVal != Status.STATUS_MARKED_ROLLBACK) {
-                throw HttpRemoteTransactionMessages.MESSAGES.invalidTxnState();
+                return CompletableFuture.failedFuture(HttpRemoteTransactionMessages.MESSAGES.invalidTxnState());
+            }
+            if (!settleBegin()) {
+                statusRef.set(Status.STATUS_ROLLEDBACK);
+                return CompletableFuture.completedFuture(null);
             }
             statusRef.set(Status.STATUS_ROLLING_BACK);
+        }
 
-            statusRef.set(Status.STATUS_COMMITTING);
+        final CompletableFuture<Void> outcome = new CompletableFuture<>();
+        sendCompletion(RequestType.UT_ROLLBACK).whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                statusRef.set(Status.STATUS_ROLLEDBACK);
+                outcome.complete(null);
+                return;
+            }
+            if (failure instanceof SecurityException) {
+                statusRef.set(oldVal);
+            } else if (failure instanceof SystemException) {
+                statusRef.set(Status.STATUS_UNKNOWN);
+            } else {
+                statusRef.set(Status.STATUS_UNKNOWN);
+                failure = systemException(failure);
+            }
+            outcome.completeExceptionally(failure);
+        });
+        return outcome;
+    }
+
+    private CompletableFuture<Void> rollbackOnlyRollback() {
+        return rollbackAsync().thenCompose(ignored -> CompletableFuture.failedFuture(HttpRemoteTransactionMessages.MESSAGES.rollbackOnlyRollback()));
+    }
 
-            final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.UT_ROLLBACK).setVersion(targetContext.getProtocolVersion());
-            final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
+    private CompletableFuture<Void> sendCompletion(final RequestType requestType) {
+        final boolean compactXid = isCompactXidSupported(targetContext);
+        final RequestBuilder builder = new RequestBuilder().setRequestType(requestType).setVersion(targetContext.getProtocolVersion()).setCompactXid(compactXid);
+        final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
 
-            final CompletableFuture<Void> result = new CompletableFuture<>();
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final HttpTargetContext.HttpMarshaller httpMarshaller;
+        if (compactXid) {
+            httpMarshaller = compactXidHttpMarshaller(id);
+        } else {
             final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
             final Marshaller marshaller = marshallerFactory.createMarshaller(result);
-            if (marshaller != null) {
-                targetContext.sendRequest(request, sslContext, authenticationConfiguration,
-                        xidHttpMarshaller(marshaller, id), emptyHttpResultHandler(result, null), result::completeExceptionally, null, null);
+            if (marshaller == null) {
+                return result;
             }
+            httpMarshaller = xidHttpMarshaller(marshaller, id);
+        }
+        targetContext.sendRequest(request, sslContext, authenticationConfiguration,
+                httpMarshaller, emptyHttpResultHandler(result, null), result::completeExceptionally, null, null);
+        return result;
+    }
 
-            try {
-                result.get();
-                statusRef.set(Status.STATUS_ROLLEDBACK);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                statusRef.set(Status.STATUS_UNKNOWN);
-                throw HttpRemoteTransactionMessages.MESSAGES.operationInterrupted();
-            } catch (ExecutionException e) {
-                try {
-                    throw e.getCause();
-                } catch (SecurityException ex) {
-                    statusRef.set(oldVal);
-                    throw ex;
-                } catch (SystemException ex) {
-                    statusRef.set(Status.STATUS_UNKNOWN);
-                    throw ex;
-                } catch (Throwable throwable) {
-                    SystemException ex = new SystemException(throwable.getMessage());
-                    statusRef.set(Status.STATUS_UNKNOWN);
-                    ex.initCause(throwable);
-                    throw ex;
-                }
+    private static void await(final CompletableFuture<Void> result) throws Exception {
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw HttpRemoteTransactionMessages.MESSAGES.operationInterrupted();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
             }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw systemException(cause);
         }
     }
 
+    private static SystemException systemException(final Throwable cause) {
+        SystemException ex = new SystemException(cause.getMessage());
+        ex.initCause(cause);
+        return ex;
+    }
+
     public void setRollbackOnly() throws SystemException {
         final AtomicInteger statusRef = this.statusRef;
         int oldVal = statusRef.get();
@@ -195,7 +393,16 @@ class HttpRemoteTransactionHandle implements SimpleTransactionControl {
     @Override
     public <T> T getProviderInterface(Class<T> providerInterfaceType) {
         if(providerInterfaceType == XidProvider.class) {
-            return (T) (XidProvider) () -> id;
+            return (T) (XidProvider) () -> {
+                try {
+                    return awaitBegin();
+                } catch (SystemException e) {
+                    return null;
+                }
+            };
+        }
+        if(providerInterfaceType == LazyTransactionBegin.class || providerInterfaceType == AsyncTransactionControl.class) {
+            return (T) this;
         }
         return null;
     }
@@ -24,6 +24,7 @@ import javax.transaction.xa.XAException;
 
 import org.jboss.logging.BasicLogger;
 import org.jboss.logging.Logger;
+import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.Field;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageLogger;
@@ -47,4 +48,13 @@ public interface HttpRemoteTransactionMessages extends BasicLogger {
 
     @Message(id = 4, value = "Transaction operation failed due to thread interruption")
     XAException interruptedXA(@Field int errorCode);
+
+    @Message(id = 5, value = "Failed to begin remote transaction")
+    SystemException beginFailed(@Cause Throwable cause);
+
+    @Message(id = 6, value = "Unknown or expired recovery cursor %s")
+    XAException unknownRecoveryCursor(@Field int errorCode, String cursor);
+
+    @Message(id = 7, value = "Remote transaction begin did not complete in time")
+    SystemException beginTimedOut();
 }
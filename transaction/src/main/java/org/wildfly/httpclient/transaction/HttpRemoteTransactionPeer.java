@@ -18,18 +18,23 @@
 
 package org.wildfly.httpclient.transaction;
 
-import static java.security.AccessController.doPrivileged;
+import static org.wildfly.httpclient.common.HeadersHelper.getResponseHeader;
+import static org.wildfly.httpclient.transaction.ClientHandlers.outcomesHttpResultHandler;
+import static org.wildfly.httpclient.transaction.ClientHandlers.xidArrayHttpMarshaller;
 import static org.wildfly.httpclient.transaction.ClientHandlers.xidArrayHttpResultHandler;
-import static org.wildfly.httpclient.transaction.ClientHandlers.xidHttpResultHandler;
 import static org.wildfly.httpclient.transaction.Constants.NEW_TRANSACTION;
+import static org.wildfly.httpclient.transaction.Constants.RECOVERY_CURSOR;
+import static org.wildfly.httpclient.transaction.Constants.XA_OUTCOMES;
 
 import io.undertow.client.ClientRequest;
+import org.jboss.marshalling.Marshaller;
 import org.jboss.marshalling.Unmarshaller;
+import org.wildfly.httpclient.common.AuthenticationConfigurationCache;
 import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
 import org.wildfly.security.auth.client.AuthenticationContext;
-import org.wildfly.security.auth.client.AuthenticationContextConfigurationClient;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.wildfly.transaction.client.spi.RemoteTransactionPeer;
 import org.wildfly.transaction.client.spi.SimpleTransactionControl;
 import org.wildfly.transaction.client.spi.SubordinateTransactionControl;
@@ -40,19 +45,32 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.Xid;
 import java.net.URI;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 /**
  * @author Stuart Douglas
  */
 public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
-    private static final AuthenticationContextConfigurationClient CLIENT = doPrivileged(AuthenticationContextConfigurationClient.ACTION);
+    /**
+     * If positive the in-doubt transactions found by recovery are transferred in pages of this size.
+     * Requires server side support.
+     */
+    private static final int RECOVERY_PAGE_SIZE = Integer.parseInt(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.transaction.recovery.page-size", "0"));
 
     private final HttpTargetContext targetContext;
     private final SSLContext sslContext;
     private final AuthenticationConfiguration authenticationConfiguration;
     private final AuthenticationContext authenticationContext;
+    /**
+     * If set the transaction is not begun on the server by a separate request, the first EJB invocation
+     * within the transaction begins it instead. Requires server side support.
+     */
+    private final boolean lazyBegin = Boolean.parseBoolean(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.transaction.lazy-begin", "false"));
 
     public HttpRemoteTransactionPeer(HttpTargetContext targetContext, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration) {
         this.targetContext = targetContext;
@@ -74,9 +92,40 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
 
     @Override
     public Xid[] recover(int flag, String parentName) throws XAException {
+        if (RECOVERY_PAGE_SIZE <= 0) {
+            return recoverPage(flag, parentName, 0, null, null);
+        }
+        // callers expect the complete list, it is just transferred in bounded chunks
+        final List<Xid> xids = new ArrayList<>();
+        recover(flag, parentName, RECOVERY_PAGE_SIZE, page -> Collections.addAll(xids, page));
+        return xids.toArray(new Xid[0]);
+    }
 
-        final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.XA_RECOVER).setVersion(targetContext.getProtocolVersion()).setFlags(flag).setParent(parentName);
+    /**
+     * Scans for in-doubt transactions page by page, so that large numbers of them can be processed incrementally.
+     * Requires server side support.
+     *
+     * @param flag the recovery flags
+     * @param parentName the parent node name
+     * @param pageSize maximum number of transactions in one page
+     * @param pageHandler called with each page in turn
+     * @throws XAException if the scan failed
+     */
+    public void recover(int flag, String parentName, int pageSize, Consumer<Xid[]> pageHandler) throws XAException {
+        final String[] cursor = new String[1];
+        do {
+            pageHandler.accept(recoverPage(flag, parentName, pageSize, cursor[0], cursor));
+        } while (cursor[0] != null);
+    }
+
+    private Xid[] recoverPage(int flag, String parentName, int pageSize, String cursor, String[] nextCursor) throws XAException {
+        final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.XA_RECOVER).setVersion(targetContext.getProtocolVersion()).setFlags(flag).setParent(parentName)
+                .setPageSize(pageSize).setCursor(cursor);
         final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
+        if (nextCursor != null) {
+            nextCursor[0] = null;
+            request.putAttachment(HttpTargetContext.RESPONSE_LISTENER, response -> nextCursor[0] = getResponseHeader(response, RECOVERY_CURSOR));
+        }
 
         final AuthenticationConfiguration authenticationConfiguration = getAuthenticationConfiguration(targetContext.getUri());
         final SSLContext sslContext;
@@ -110,9 +159,16 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
         }
     }
 
-    @Override
-    public SimpleTransactionControl begin(int timeout) throws SystemException {
-        final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.UT_BEGIN).setVersion(targetContext.getProtocolVersion()).setTimeout(timeout);
+    /**
+     * Commits previously prepared subordinate transactions with single request, typically those obtained
+     * from {@link #recover(int, String)}.
+     *
+     * @param xids the transactions to commit
+     * @return outcome for each transaction in the same order, zero if committed or {@link XAException} error code otherwise
+     * @throws XAException if the request failed as a whole
+     */
+    public int[] commitAll(Xid[] xids) throws XAException {
+        final RequestBuilder builder = new RequestBuilder().setRequestType(RequestType.XA_COMMIT_BATCH).setVersion(targetContext.getProtocolVersion());
         final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
 
         final AuthenticationConfiguration authenticationConfiguration = getAuthenticationConfiguration(targetContext.getUri());
@@ -120,31 +176,55 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
         try {
             sslContext = getSslContext(targetContext.getUri());
         } catch (GeneralSecurityException e) {
-            throw new SystemException(e.getMessage());
+            XAException xaException = new XAException(XAException.XAER_RMFAIL);
+            xaException.initCause(e);
+            throw xaException;
         }
 
-        final CompletableFuture<Xid> result = new CompletableFuture<>();
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
         final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
+        final Marshaller marshaller = marshallerFactory.createMarshaller(result);
         final Unmarshaller unmarshaller = marshallerFactory.createUnmarshaller(result);
-        if (unmarshaller != null) {
-            targetContext.sendRequest(request, sslContext, authenticationConfiguration, null,
-                    xidHttpResultHandler(unmarshaller, result), result::completeExceptionally, NEW_TRANSACTION, null);
+        if (marshaller != null && unmarshaller != null) {
+            targetContext.sendRequest(request, sslContext, authenticationConfiguration, xidArrayHttpMarshaller(marshaller, xids),
+                    outcomesHttpResultHandler(unmarshaller, result), result::completeExceptionally, XA_OUTCOMES, null);
         }
         try {
-            Xid xid = result.get();
-            return new HttpRemoteTransactionHandle(xid, targetContext, sslContext, authenticationConfiguration);
+            return result.get();
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            Thread.currentThread().interrupt();
+            throw HttpRemoteTransactionMessages.MESSAGES.interruptedXA(XAException.XAER_RMERR);
         } catch (ExecutionException e) {
-            SystemException ex = new SystemException(e.getMessage());
-            ex.initCause(e);
-            throw ex;
+            Throwable cause = e.getCause();
+            if(cause instanceof XAException) {
+                throw (XAException)cause;
+            }
+            XAException xaException = new XAException(XAException.XAER_RMERR);
+            xaException.initCause(cause);
+            throw xaException;
+        }
+    }
+
+    @Override
+    public SimpleTransactionControl begin(int timeout) throws SystemException {
+        final AuthenticationConfiguration authenticationConfiguration = getAuthenticationConfiguration(targetContext.getUri());
+        final SSLContext sslContext;
+        try {
+            sslContext = getSslContext(targetContext.getUri());
+        } catch (GeneralSecurityException e) {
+            throw new SystemException(e.getMessage());
+        }
+
+        final HttpRemoteTransactionHandle handle = new HttpRemoteTransactionHandle(timeout, targetContext, sslContext, authenticationConfiguration);
+        if (!lazyBegin) {
+            handle.begin();
         }
+        return handle;
     }
 
     private AuthenticationConfiguration getAuthenticationConfiguration(URI location) {
         if (authenticationConfiguration == null) {
-            return CLIENT.getAuthenticationConfiguration(location, authenticationContext, -1, "jta", "jboss");
+            return AuthenticationConfigurationCache.getInstance().getAuthenticationConfiguration(location, authenticationContext, -1, "jta", "jboss");
         } else {
             return authenticationConfiguration;
         }
@@ -152,7 +232,7 @@ public class HttpRemoteTransactionPeer implements RemoteTransactionPeer {
 
     private SSLContext getSslContext(URI location) throws GeneralSecurityException {
         if (sslContext == null) {
-            return CLIENT.getSSLContext(location, authenticationContext, "jta", "jboss");
+            return AuthenticationConfigurationCache.getInstance().getSSLContext(location, authenticationContext, "jta", "jboss");
         } else {
             return sslContext;
         }
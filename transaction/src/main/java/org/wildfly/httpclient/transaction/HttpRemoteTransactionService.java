@@ -18,6 +18,8 @@
 
 package org.wildfly.httpclient.transaction;
 
+import static org.wildfly.httpclient.common.HttpServerHelper.rejectExpired;
+
 import io.undertow.server.HttpHandler;
 import io.undertow.server.RoutingHandler;
 import io.undertow.server.handlers.BlockingHandler;
@@ -46,13 +48,28 @@ public class HttpRemoteTransactionService {
         this.serverHandlers = ServerHandlers.newInstance(config, transactionContext, xidResolver);
     }
 
+    /**
+     * Returns the cache of transactions imported by requests, providing its hit and miss counts.
+     *
+     * @return the imported transaction cache
+     */
+    public ImportedTransactionCache getImportedTransactionCache() {
+        return serverHandlers.getImportedTransactions();
+    }
+
     public HttpHandler createHandler() {
         RoutingHandler routingHandler = new RoutingHandler();
         for (RequestType requestType : RequestType.values()) {
             registerHandler(routingHandler, requestType);
         }
 
-        return config.wrap(new BlockingHandler(new ElytronIdentityHandler(routingHandler)));
+        final HttpHandler handler = new BlockingHandler(new ElytronIdentityHandler(routingHandler));
+        // expired requests are dropped before being dispatched to a worker thread
+        return config.wrap(exchange -> {
+            if (!rejectExpired(exchange)) {
+                handler.handleRequest(exchange);
+            }
+        });
     }
 
     private void registerHandler(final RoutingHandler routingHandler, final RequestType requestType) {
@@ -21,10 +21,14 @@ package org.wildfly.httpclient.transaction;
 import static java.lang.Boolean.TRUE;
 import static java.lang.Boolean.parseBoolean;
 import static org.wildfly.httpclient.common.HeadersHelper.getResponseHeader;
-import static org.wildfly.httpclient.transaction.ClientHandlers.xidHttpMarshaller;
+import static org.wildfly.httpclient.transaction.ClientHandlers.compactXidHttpMarshaller;
 import static org.wildfly.httpclient.transaction.ClientHandlers.emptyHttpResultHandler;
+import static org.wildfly.httpclient.transaction.ClientHandlers.isCompactXidSupported;
+import static org.wildfly.httpclient.transaction.ClientHandlers.xidHttpMarshaller;
 import static org.wildfly.httpclient.transaction.Constants.READ_ONLY;
 import static org.wildfly.httpclient.transaction.RequestType.XA_BEFORE_COMPLETION;
+import static org.wildfly.httpclient.transaction.RequestType.XA_BEFORE_COMPLETION_COMMIT;
+import static org.wildfly.httpclient.transaction.RequestType.XA_BEFORE_COMPLETION_PREPARE;
 import static org.wildfly.httpclient.transaction.RequestType.XA_COMMIT;
 import static org.wildfly.httpclient.transaction.RequestType.XA_FORGET;
 import static org.wildfly.httpclient.transaction.RequestType.XA_PREPARE;
@@ -36,6 +40,7 @@ import org.jboss.marshalling.Marshaller;
 import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.security.auth.client.AuthenticationConfiguration;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.wildfly.transaction.client.spi.SubordinateTransactionControl;
 
 import javax.net.ssl.SSLContext;
@@ -43,6 +48,7 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 
@@ -51,12 +57,19 @@ import java.util.function.Function;
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-class HttpSubordinateTransactionHandle implements SubordinateTransactionControl {
+class HttpSubordinateTransactionHandle implements SubordinateTransactionControl, AsyncSubordinateTransactionControl {
+
+    /**
+     * If set before-completion is not sent on its own but together with the following prepare or one-phase commit,
+     * saving a round trip. Requires server side support.
+     */
+    private static final boolean COMBINED_COMPLETION = Boolean.parseBoolean(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.transaction.combined-completion", "false"));
 
     private final HttpTargetContext targetContext;
     private final Xid id;
     private final SSLContext sslContext;
     private final AuthenticationConfiguration authenticationConfiguration;
+    private volatile boolean beforeCompletionPending;
 
     HttpSubordinateTransactionHandle(final Xid id, final HttpTargetContext targetContext, SSLContext sslContext, AuthenticationConfiguration authenticationConfiguration) {
         this.id = id;
@@ -71,12 +84,31 @@ class HttpSubordinateTransactionHandle implements SubordinateTransactionControl
 
     @Override
     public void commit(boolean onePhase) throws XAException {
-        processOperation(XA_COMMIT, null, onePhase ? TRUE : null);
+        await(commitAsync(onePhase));
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync(final boolean onePhase) {
+        if (beforeCompletionPending) {
+            beforeCompletionPending = false;
+            if (onePhase) {
+                return sendOperation(XA_BEFORE_COMPLETION_COMMIT, null, null);
+            }
+            return sendOperation(XA_BEFORE_COMPLETION, null, null).thenCompose(ignored -> sendOperation(XA_COMMIT, null, null));
+        }
+        return sendOperation(XA_COMMIT, null, onePhase ? TRUE : null);
     }
 
     @Override
     public void rollback() throws XAException {
-        processOperation(XA_ROLLBACK);
+        await(rollbackAsync());
+    }
+
+    @Override
+    public CompletableFuture<Void> rollbackAsync() {
+        // synchronizations are not run for transactions rolled back
+        beforeCompletionPending = false;
+        return sendOperation(XA_ROLLBACK, null, null);
     }
 
     @Override
@@ -86,54 +118,88 @@ class HttpSubordinateTransactionHandle implements SubordinateTransactionControl
 
     @Override
     public void beforeCompletion() throws XAException {
-        processOperation(XA_BEFORE_COMPLETION);
+        if (COMBINED_COMPLETION) {
+            beforeCompletionPending = true;
+            return;
+        }
+        await(sendOperation(XA_BEFORE_COMPLETION, null, null));
     }
 
     @Override
     public int prepare() throws XAException {
-        boolean readOnly = processOperation(XA_PREPARE, (result) -> {
+        return await(prepareAsync());
+    }
+
+    @Override
+    public CompletableFuture<Integer> prepareAsync() {
+        final RequestType requestType = beforeCompletionPending ? XA_BEFORE_COMPLETION_PREPARE : XA_PREPARE;
+        beforeCompletionPending = false;
+        return sendOperation(requestType, (result) -> {
             String header = getResponseHeader(result, READ_ONLY);
-            return parseBoolean(header);
+            return parseBoolean(header) ? XAResource.XA_RDONLY : XAResource.XA_OK;
         }, null);
-        return readOnly ? XAResource.XA_RDONLY : XAResource.XA_OK;
     }
 
     @Override
     public void forget() throws XAException {
-        processOperation(XA_FORGET);
+        await(forgetAsync());
     }
 
-    private void processOperation(RequestType requestType) throws XAException {
-        processOperation(requestType, null, null);
+    @Override
+    public CompletableFuture<Void> forgetAsync() {
+        return sendOperation(XA_FORGET, null, null);
     }
 
-    private <T> T processOperation(RequestType requestType, Function<ClientResponse, T> resultFunction, Boolean onePhase) throws XAException {
-        final RequestBuilder builder = new RequestBuilder().setRequestType(requestType).setVersion(targetContext.getProtocolVersion()).setOnePhase(onePhase);
+    /**
+     * Sends the operation without waiting for its outcome. The returned future fails with {@link XAException} only.
+     */
+    private <T> CompletableFuture<T> sendOperation(RequestType requestType, Function<ClientResponse, T> resultFunction, Boolean onePhase) {
+        final boolean compactXid = isCompactXidSupported(targetContext);
+        final RequestBuilder builder = new RequestBuilder().setRequestType(requestType).setVersion(targetContext.getProtocolVersion())
+                .setOnePhase(onePhase).setCompactXid(compactXid);
         final ClientRequest request = builder.createRequest(targetContext.getUri().getPath());
         final CompletableFuture<T> result = new CompletableFuture<>();
-        final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
-        final Marshaller marshaller = marshallerFactory.createMarshaller(result);
-        if (marshaller != null) {
+        final HttpTargetContext.HttpMarshaller httpMarshaller;
+        if (compactXid) {
+            httpMarshaller = compactXidHttpMarshaller(id);
+        } else {
+            final HttpMarshallerFactory marshallerFactory = targetContext.getHttpMarshallerFactory(request);
+            final Marshaller marshaller = marshallerFactory.createMarshaller(result);
+            httpMarshaller = marshaller != null ? xidHttpMarshaller(marshaller, id) : null;
+        }
+        if (httpMarshaller != null) {
             targetContext.sendRequest(request, sslContext, authenticationConfiguration,
-                    xidHttpMarshaller(marshaller, id), emptyHttpResultHandler(result, resultFunction), result::completeExceptionally, null, null);
+                    httpMarshaller, emptyHttpResultHandler(result, resultFunction), result::completeExceptionally, null, null);
         }
-        try {
-            try {
-                return result.get();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw HttpRemoteTransactionMessages.MESSAGES.interruptedXA(XAException.XAER_RMERR);
+        final CompletableFuture<T> outcome = new CompletableFuture<>();
+        result.whenComplete((value, failure) -> {
+            if (failure == null) {
+                outcome.complete(value);
+            } else {
+                outcome.completeExceptionally(toXAException(failure));
             }
+        });
+        return outcome;
+    }
+
+    private static XAException toXAException(final Throwable failure) {
+        final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof XAException) {
+            return (XAException) cause;
+        }
+        XAException xaException = new XAException(XAException.XAER_RMERR);
+        xaException.initCause(cause);
+        return xaException;
+    }
+
+    private static <T> T await(final CompletableFuture<T> result) throws XAException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw HttpRemoteTransactionMessages.MESSAGES.interruptedXA(XAException.XAER_RMERR);
         } catch (ExecutionException e) {
-            try {
-                throw e.getCause();
-            } catch (XAException ex) {
-                throw ex;
-            } catch (Throwable ex) {
-                XAException xaException = new XAException(XAException.XAER_RMERR);
-                xaException.initCause(ex);
-                throw xaException;
-            }
+            throw toXAException(e.getCause());
         }
     }
 
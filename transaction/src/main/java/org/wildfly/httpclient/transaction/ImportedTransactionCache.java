@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import org.wildfly.httpclient.common.BoundedCache;
+import org.wildfly.transaction.client.ImportResult;
+import org.wildfly.transaction.client.LocalTransaction;
+import org.wildfly.transaction.client.LocalTransactionContext;
+import org.wildfly.transaction.client.SimpleXid;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.SystemException;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server side cache of transactions imported by requests, so that a transaction used by many requests is resolved
+ * only once. Transactions are evicted once they complete.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public final class ImportedTransactionCache {
+
+    private final BoundedCache<SimpleXid, ImportResult<LocalTransaction>> transactions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates new cache.
+     *
+     * @param maxSize maximum number of cached transactions, zero or negative value disables caching
+     */
+    public ImportedTransactionCache(final int maxSize) {
+        this.transactions = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Finds the transaction in the cache or in the transaction context, importing it if needed.
+     *
+     * @param ctx the transaction context
+     * @param xid the transaction id
+     * @param timeout the timeout of the transaction if imported
+     * @return the import result, never new if found in the cache
+     * @throws XAException if the import failed
+     */
+    public ImportResult<LocalTransaction> findOrImportTransaction(final LocalTransactionContext ctx, final Xid xid, final int timeout) throws XAException {
+        final SimpleXid key = SimpleXid.of(xid);
+        final ImportResult<LocalTransaction> cached = transactions.get(key);
+        if (cached != null) {
+            if (isActive(cached.getTransaction())) {
+                hits.increment();
+                return new ImportResult<>(cached.getTransaction(), cached.getControl(), false);
+            }
+            transactions.remove(key);
+        }
+        misses.increment();
+        final ImportResult<LocalTransaction> result = ctx.findOrImportTransaction(xid, timeout);
+        try {
+            result.getTransaction().registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (transactions.remove(key) != null) {
+                        evictions.increment();
+                    }
+                }
+            });
+            transactions.put(key, result);
+        } catch (Exception e) {
+            // not active anymore, nothing to cache
+            HttpRemoteTransactionMessages.MESSAGES.tracef(e, "Not caching transaction %s", xid);
+        }
+        return result;
+    }
+
+    private static boolean isActive(final LocalTransaction transaction) {
+        try {
+            final int status = transaction.getStatus();
+            return status != Status.STATUS_COMMITTED && status != Status.STATUS_ROLLEDBACK
+                    && status != Status.STATUS_NO_TRANSACTION && status != Status.STATUS_UNKNOWN;
+        } catch (SystemException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the cache hits count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of requests looking the transaction up in the transaction context.
+     *
+     * @return the cache misses count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of transactions evicted on completion.
+     *
+     * @return the evictions count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of cached transactions.
+     *
+     * @return cached transactions count
+     */
+    public int size() {
+        return transactions.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ImportedTransactionCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + '}';
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import javax.transaction.xa.Xid;
+
+/**
+ * Lets the first request sent within a remote transaction begin the transaction on the server as a side effect,
+ * saving the separate begin request. Obtained from the transaction via {@code getProviderInterface}.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public interface LazyTransactionBegin {
+
+    /**
+     * Claims the begin of the transaction. If successful the caller must report the outcome
+     * by calling either {@link #begun(Xid)} or {@link #beginFailed(Throwable)}.
+     *
+     * @return the remaining transaction timeout in seconds, or {@code -1} if the transaction was already begun
+     * or claimed by somebody else
+     */
+    int claimBegin();
+
+    /**
+     * Reports the transaction was begun on the server.
+     *
+     * @param xid the id assigned to the transaction by the server
+     */
+    void begun(Xid xid);
+
+    /**
+     * Reports the transaction could not be begun, the transaction is marked rollback only.
+     *
+     * @param cause the failure cause
+     */
+    void beginFailed(Throwable cause);
+
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import javax.transaction.xa.Xid;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side state of paged recovery scans. The in-doubt transactions found by a scan are handed out page by page,
+ * the client continues the scan by the cursor returned with each page but the last one. Cursors of abandoned scans
+ * expire.
+ *
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+final class RecoveryCursors {
+
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+    private final long expiration;
+
+    /**
+     * Creates new cursor store.
+     * @param expiration milliseconds after which cursor not used expires
+     */
+    RecoveryCursors(final long expiration) {
+        this.expiration = TimeUnit.MILLISECONDS.toNanos(expiration);
+    }
+
+    /**
+     * Returns the first page of a new scan.
+     *
+     * @param xids all transactions found by the scan
+     * @param pageSize maximum number of transactions in the page
+     * @return the page and the cursor to continue with, if any
+     */
+    Page start(final Xid[] xids, final int pageSize) {
+        purgeExpired();
+        return next(new Cursor(xids), pageSize, null);
+    }
+
+    /**
+     * Returns the next page of the scan.
+     *
+     * @param cursorId cursor returned with the previous page
+     * @param pageSize maximum number of transactions in the page
+     * @return the page and the cursor to continue with, if any, or {@code null} if the cursor is unknown or expired
+     */
+    Page next(final String cursorId, final int pageSize) {
+        purgeExpired();
+        final Cursor cursor = cursors.remove(cursorId);
+        return cursor == null ? null : next(cursor, pageSize, cursorId);
+    }
+
+    int size() {
+        return cursors.size();
+    }
+
+    private Page next(final Cursor cursor, final int pageSize, final String cursorId) {
+        final int from = cursor.position;
+        final int to = (int) Math.min(cursor.xids.length, (long) from + Math.max(1, pageSize));
+        cursor.position = to;
+        if (to == cursor.xids.length) {
+            return new Page(Arrays.copyOfRange(cursor.xids, from, to), null);
+        }
+        final String id = cursorId != null ? cursorId : UUID.randomUUID().toString();
+        cursor.expiry = System.nanoTime() + expiration;
+        cursors.put(id, cursor);
+        return new Page(Arrays.copyOfRange(cursor.xids, from, to), id);
+    }
+
+    private void purgeExpired() {
+        final long now = System.nanoTime();
+        cursors.values().removeIf(cursor -> now - cursor.expiry > 0);
+    }
+
+    static final class Page {
+        final Xid[] xids;
+        final String cursor;
+
+        private Page(final Xid[] xids, final String cursor) {
+            this.xids = xids;
+            this.cursor = cursor;
+        }
+    }
+
+    private static final class Cursor {
+        private final Xid[] xids;
+        private int position;
+        private volatile long expiry;
+
+        private Cursor(final Xid[] xids) {
+            this.xids = xids;
+        }
+    }
+}
@@ -27,18 +27,25 @@ import static org.wildfly.httpclient.common.HeadersHelper.putRequestHeader;
 import static org.wildfly.httpclient.common.Protocol.VERSION_PATH;
 import static org.wildfly.httpclient.transaction.Constants.EXCEPTION;
 import static org.wildfly.httpclient.transaction.Constants.NEW_TRANSACTION;
+import static org.wildfly.httpclient.transaction.Constants.NEW_TRANSACTION_COMPACT;
 import static org.wildfly.httpclient.transaction.Constants.OPC_QUERY_PARAMETER;
+import static org.wildfly.httpclient.transaction.Constants.RECOVERY_CURSOR;
 import static org.wildfly.httpclient.transaction.Constants.RECOVERY_FLAGS;
+import static org.wildfly.httpclient.transaction.Constants.RECOVERY_PAGE_SIZE;
 import static org.wildfly.httpclient.transaction.Constants.RECOVERY_PARENT_NAME;
 import static org.wildfly.httpclient.transaction.Constants.TIMEOUT;
 import static org.wildfly.httpclient.transaction.Constants.TXN_CONTEXT;
+import static org.wildfly.httpclient.transaction.Constants.XA_OUTCOMES;
 import static org.wildfly.httpclient.transaction.Constants.XID;
+import static org.wildfly.httpclient.transaction.Constants.XID_COMPACT;
 import static org.wildfly.httpclient.transaction.Constants.XID_LIST;
 import static org.wildfly.httpclient.transaction.RequestType.UT_BEGIN;
 import static org.wildfly.httpclient.transaction.RequestType.XA_COMMIT;
+import static org.wildfly.httpclient.transaction.RequestType.XA_COMMIT_BATCH;
 import static org.wildfly.httpclient.transaction.RequestType.XA_RECOVER;
 
 import io.undertow.client.ClientRequest;
+import org.wildfly.httpclient.common.HttpTargetContext;
 import org.wildfly.httpclient.common.Protocol;
 
 /**
@@ -56,6 +63,9 @@ final class RequestBuilder {
     private int flags;
     private String parentName;
     private Boolean onePhase;
+    private boolean compactXid;
+    private int pageSize;
+    private String cursor;
 
     // setters
 
@@ -84,6 +94,21 @@ final class RequestBuilder {
         return this;
     }
 
+    RequestBuilder setCompactXid(final boolean compactXid) {
+        this.compactXid = compactXid;
+        return this;
+    }
+
+    RequestBuilder setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    RequestBuilder setCursor(final String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
     RequestBuilder setParent(final String parentName) {
         this.parentName = parentName;
         return this;
@@ -96,6 +121,7 @@ final class RequestBuilder {
         setRequestMethod(request);
         setRequestPath(request, prefix);
         setRequestHeaders(request);
+        request.putAttachment(HttpTargetContext.PRIORITY, requestType.getPriority());
         return request;
     }
 
@@ -122,15 +148,24 @@ final class RequestBuilder {
 
     private void setRequestHeaders(final ClientRequest request) {
         if (requestType == UT_BEGIN) {
-            putRequestHeader(request, ACCEPT, EXCEPTION + "," + NEW_TRANSACTION);
+            putRequestHeader(request, ACCEPT, EXCEPTION + "," + NEW_TRANSACTION_COMPACT);
             putRequestHeader(request, TIMEOUT, String.valueOf(timeout));
         } else if (requestType == XA_RECOVER) {
             putRequestHeader(request, ACCEPT, XID_LIST + "," + NEW_TRANSACTION);
             putRequestHeader(request, RECOVERY_PARENT_NAME, parentName);
             putRequestHeader(request, RECOVERY_FLAGS, String.valueOf(flags));
+            if (pageSize > 0) {
+                putRequestHeader(request, RECOVERY_PAGE_SIZE, String.valueOf(pageSize));
+            }
+            if (cursor != null) {
+                putRequestHeader(request, RECOVERY_CURSOR, cursor);
+            }
+        } else if (requestType == XA_COMMIT_BATCH) {
+            putRequestHeader(request, ACCEPT, EXCEPTION + "," + XA_OUTCOMES);
+            putRequestHeader(request, CONTENT_TYPE, XID_LIST);
         } else {
             putRequestHeader(request, ACCEPT, EXCEPTION);
-            putRequestHeader(request, CONTENT_TYPE, XID);
+            putRequestHeader(request, CONTENT_TYPE, compactXid ? XID_COMPACT : XID);
         }
     }
 
@@ -20,8 +20,11 @@ package org.wildfly.httpclient.transaction;
 
 import static io.undertow.util.Methods.GET;
 import static io.undertow.util.Methods.POST;
+import static org.wildfly.httpclient.common.RequestPriority.HIGH;
+import static org.wildfly.httpclient.common.RequestPriority.LOW;
 
 import io.undertow.util.HttpString;
+import org.wildfly.httpclient.common.RequestPriority;
 
 /**
  * HTTP TXN module invocation types. Each invocation type has {@linkplain #getName() name}, {@linkplain #getMethod() method}
@@ -54,6 +57,15 @@ import io.undertow.util.HttpString;
  *     <li>{@link #XA_ROLLBACK}<br>
  *     Rolls back the subordinate transaction.
  *     </li>
+ *     <li>{@link #XA_BEFORE_COMPLETION_PREPARE}<br>
+ *     Performs before-commit operations and prepares the subordinate transaction.
+ *     </li>
+ *     <li>{@link #XA_BEFORE_COMPLETION_COMMIT}<br>
+ *     Performs before-commit operations and commits the subordinate transaction in one phase.
+ *     </li>
+ *     <li>{@link #XA_COMMIT_BATCH}<br>
+ *     Commits a list of (previously prepared) subordinate transactions.
+ *     </li>
  * </ul>
  *
  * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
@@ -67,45 +79,66 @@ enum RequestType {
     /**
      * {@code UT_COMMIT} invocation type: used to commit remote user-controlled transaction via HTTP protocol.
      */
-    UT_COMMIT(POST, "/ut/commit"),
+    UT_COMMIT(POST, "/ut/commit", HIGH),
     /**
      * {@code UT_ROLLBACK} invocation type: used to rollback remote user-controlled transaction via HTTP protocol.
      */
-    UT_ROLLBACK(POST, "/ut/rollback"),
+    UT_ROLLBACK(POST, "/ut/rollback", HIGH),
     /**
      * {@code XA_RECOVER} invocation type: used to acquire a list of all unresolved subordinate remote user-controlled
      * transactions from the location associated with this provider via HTTP protocol.
      */
     // TODO: THIS IS BUG. The name must be UT_RECOVER & request path must contain 'ut' instead of 'xa' prefix
-    XA_RECOVER(GET, "/xa/recover"),
+    XA_RECOVER(GET, "/xa/recover", LOW),
     /**
      * {@code XA_BEFORE_COMPLETION} invocation type: used to perform before-commit operations,
      * including running all transaction synchronizations on given subordinate transaction via HTTP protocol.
      */
-    XA_BEFORE_COMPLETION(POST, "/xa/bc"),
+    XA_BEFORE_COMPLETION(POST, "/xa/bc", HIGH),
     /**
      * {@code XA_COMMIT} invocation type: used to commit the subordinate transaction via HTTP protocol.
      */
-    XA_COMMIT(POST, "/xa/commit"),
+    XA_COMMIT(POST, "/xa/commit", HIGH),
     /**
      * {@code XA_FORGET} invocation type: used to forget the (previously prepared) subordinate transaction via HTTP protocol.
      */
-    XA_FORGET(POST, "/xa/forget"),
+    XA_FORGET(POST, "/xa/forget", HIGH),
     /**
      * {@code XA_PREPARE} invocation type: used to prepare the subordinate transaction via HTTP protocol.
      */
-    XA_PREPARE(POST, "/xa/prep"),
+    XA_PREPARE(POST, "/xa/prep", HIGH),
     /**
      * {@code XA_ROLLBACK} invocation type: used to roll back the subordinate transaction via HTTP protocol.
      */
-    XA_ROLLBACK(POST, "/xa/rollback");
+    XA_ROLLBACK(POST, "/xa/rollback", HIGH),
+    /**
+     * {@code XA_BEFORE_COMPLETION_PREPARE} invocation type: used to perform before-commit operations and prepare
+     * the subordinate transaction with single request via HTTP protocol.
+     */
+    XA_BEFORE_COMPLETION_PREPARE(POST, "/xa/bc-prep", HIGH),
+    /**
+     * {@code XA_BEFORE_COMPLETION_COMMIT} invocation type: used to perform before-commit operations and commit
+     * the subordinate transaction in one phase with single request via HTTP protocol.
+     */
+    XA_BEFORE_COMPLETION_COMMIT(POST, "/xa/bc-commit", HIGH),
+    /**
+     * {@code XA_COMMIT_BATCH} invocation type: used to commit a list of (previously prepared) subordinate transactions,
+     * typically during recovery, with single request via HTTP protocol.
+     */
+    XA_COMMIT_BATCH(POST, "/xa/commit-batch", LOW);
 
     private final HttpString method;
     private final String path;
+    private final RequestPriority priority;
 
     RequestType(final HttpString method, final String path) {
+        this(method, path, RequestPriority.NORMAL);
+    }
+
+    RequestType(final HttpString method, final String path, final RequestPriority priority) {
         this.method = method;
         this.path = path;
+        this.priority = priority;
     }
 
     /**
@@ -132,4 +165,12 @@ enum RequestType {
         return path;
     }
 
+    /**
+     * Returns the priority of this invocation while waiting for a pooled connection.
+     * @return this invocation priority.
+     */
+    final RequestPriority getPriority() {
+        return priority;
+    }
+
 }
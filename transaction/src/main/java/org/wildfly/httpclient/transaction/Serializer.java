@@ -20,6 +20,9 @@ package org.wildfly.httpclient.transaction;
 import org.wildfly.transaction.client.SimpleXid;
 
 import javax.transaction.xa.Xid;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -71,4 +74,53 @@ final class Serializer {
         return ret;
     }
 
+    /**
+     * Serializes outcomes of a batch of XA operations, zero for success or {@link javax.transaction.xa.XAException}
+     * error code otherwise.
+     */
+    static void serializeOutcomes(final ObjectOutput output, final int[] outcomes) throws IOException {
+        output.writeInt(outcomes.length);
+        for (int outcome : outcomes) {
+            output.writeInt(outcome);
+        }
+    }
+
+    static int[] deserializeOutcomes(final ObjectInput input) throws IOException {
+        int length = input.readInt();
+        int[] ret = new int[length];
+        for (int i = 0; i < length; ++i) {
+            ret[i] = input.readInt();
+        }
+        return ret;
+    }
+
+    /**
+     * Encodes the Xid in compact binary layout: format id followed by length prefixed global transaction id
+     * and branch qualifier, both at most 64 bytes long.
+     */
+    static byte[] toCompactXid(final Xid xid) {
+        final byte[] globalId = xid.getGlobalTransactionId();
+        final byte[] branchId = xid.getBranchQualifier();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(6 + globalId.length + branchId.length);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeInt(xid.getFormatId());
+            out.writeByte(globalId.length);
+            out.write(globalId);
+            out.writeByte(branchId.length);
+            out.write(branchId);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    static Xid readCompactXid(final DataInput input) throws IOException {
+        int formatId = input.readInt();
+        byte[] globalId = new byte[input.readUnsignedByte()];
+        input.readFully(globalId);
+        byte[] branchId = new byte[input.readUnsignedByte()];
+        input.readFully(branchId);
+        return new SimpleXid(formatId, globalId, branchId);
+    }
+
 }
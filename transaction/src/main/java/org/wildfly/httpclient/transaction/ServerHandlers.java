@@ -18,6 +18,7 @@
 package org.wildfly.httpclient.transaction;
 
 import static java.lang.Boolean.parseBoolean;
+import static io.undertow.util.Headers.ACCEPT;
 import static io.undertow.util.Headers.CONTENT_TYPE;
 import static io.undertow.util.StatusCodes.BAD_REQUEST;
 import static io.undertow.util.StatusCodes.INTERNAL_SERVER_ERROR;
@@ -25,16 +26,28 @@ import static org.wildfly.httpclient.common.ByteInputs.byteInputOf;
 import static org.wildfly.httpclient.common.ByteOutputs.byteOutputOf;
 import static org.wildfly.httpclient.common.HeadersHelper.getRequestHeader;
 import static org.wildfly.httpclient.common.HeadersHelper.putResponseHeader;
+import static org.wildfly.httpclient.common.HttpServerHelper.rejectExpired;
 import static org.wildfly.httpclient.common.HttpServerHelper.sendException;
 import static org.wildfly.httpclient.transaction.Constants.NEW_TRANSACTION;
+import static org.wildfly.httpclient.transaction.Constants.NEW_TRANSACTION_COMPACT;
 import static org.wildfly.httpclient.transaction.Constants.OPC_QUERY_PARAMETER;
+import static org.wildfly.httpclient.transaction.Constants.READ_ONLY;
+import static org.wildfly.httpclient.transaction.Constants.RECOVERY_CURSOR;
 import static org.wildfly.httpclient.transaction.Constants.RECOVERY_FLAGS;
+import static org.wildfly.httpclient.transaction.Constants.RECOVERY_PAGE_SIZE;
 import static org.wildfly.httpclient.transaction.Constants.RECOVERY_PARENT_NAME;
 import static org.wildfly.httpclient.transaction.Constants.TIMEOUT;
+import static org.wildfly.httpclient.transaction.Constants.XA_OUTCOMES;
 import static org.wildfly.httpclient.transaction.Constants.XID;
+import static org.wildfly.httpclient.transaction.Constants.XID_COMPACT;
+import static org.wildfly.httpclient.transaction.Constants.XID_LIST;
 import static org.wildfly.httpclient.transaction.Serializer.deserializeXid;
+import static org.wildfly.httpclient.transaction.Serializer.deserializeXidArray;
+import static org.wildfly.httpclient.transaction.Serializer.readCompactXid;
+import static org.wildfly.httpclient.transaction.Serializer.serializeOutcomes;
 import static org.wildfly.httpclient.transaction.Serializer.serializeXid;
 import static org.wildfly.httpclient.transaction.Serializer.serializeXidArray;
+import static org.wildfly.httpclient.transaction.Serializer.toCompactXid;
 
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
@@ -46,12 +59,16 @@ import org.wildfly.common.function.ExceptionBiFunction;
 import org.wildfly.httpclient.common.ContentType;
 import org.wildfly.httpclient.common.HttpMarshallerFactory;
 import org.wildfly.httpclient.common.HttpServiceConfig;
+import org.wildfly.security.manager.WildFlySecurityManager;
 import org.wildfly.transaction.client.ImportResult;
 import org.wildfly.transaction.client.LocalTransaction;
 import org.wildfly.transaction.client.LocalTransactionContext;
 
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Deque;
@@ -64,9 +81,14 @@ import java.util.function.Function;
  */
 final class ServerHandlers {
 
+    private static final long RECOVERY_CURSOR_EXPIRATION = Long.parseLong(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.transaction.recovery.cursor-expiration", "60000"));
+    private static final int IMPORTED_TRANSACTIONS_CACHE_SIZE = Integer.parseInt(WildFlySecurityManager.getPropertyPrivileged("org.wildfly.httpclient.transaction.imported-cache-size", "1024"));
+
     private final LocalTransactionContext ctx;
     private final Function<LocalTransaction, Xid> xidResolver;
     private final HttpServiceConfig config;
+    private final RecoveryCursors recoveryCursors = new RecoveryCursors(RECOVERY_CURSOR_EXPIRATION);
+    private final ImportedTransactionCache importedTransactions = new ImportedTransactionCache(IMPORTED_TRANSACTIONS_CACHE_SIZE);
 
     private ServerHandlers(final HttpServiceConfig config, final LocalTransactionContext ctx, final Function<LocalTransaction, Xid> xidResolver) {
         this.config = config;
@@ -78,26 +100,36 @@ final class ServerHandlers {
         return new ServerHandlers(config, ctx, xidResolver);
     }
 
+    ImportedTransactionCache getImportedTransactions() {
+        return importedTransactions;
+    }
+
     HttpHandler handlerOf(final RequestType requestType) {
         switch (requestType) {
             case UT_BEGIN:
                 return new BeginHandler(config, ctx, xidResolver);
             case UT_COMMIT:
-                return new UTCommitHandler(config, ctx);
+                return new UTCommitHandler(config, ctx, importedTransactions);
             case UT_ROLLBACK:
-                return new UTRollbackHandler(config, ctx);
+                return new UTRollbackHandler(config, ctx, importedTransactions);
             case XA_BEFORE_COMPLETION:
-                return new XABeforeCompletionHandler(config, ctx);
+                return new XABeforeCompletionHandler(config, ctx, importedTransactions);
             case XA_COMMIT:
-                return new XACommitHandler(config, ctx);
+                return new XACommitHandler(config, ctx, importedTransactions);
             case XA_FORGET:
-                return new XAForgetHandler(config, ctx);
+                return new XAForgetHandler(config, ctx, importedTransactions);
             case XA_PREPARE:
-                return new XAPrepHandler(config, ctx);
+                return new XAPrepHandler(config, ctx, importedTransactions);
             case XA_RECOVER:
-                return new XARecoveryHandler(config, ctx);
+                return new XARecoveryHandler(config, ctx, recoveryCursors);
             case XA_ROLLBACK:
-                return new XARollbackHandler(config, ctx);
+                return new XARollbackHandler(config, ctx, importedTransactions);
+            case XA_BEFORE_COMPLETION_PREPARE:
+                return new XABeforeCompletionPrepHandler(config, ctx, importedTransactions);
+            case XA_BEFORE_COMPLETION_COMMIT:
+                return new XABeforeCompletionCommitHandler(config, ctx, importedTransactions);
+            case XA_COMMIT_BATCH:
+                return new XACommitBatchHandler(config, ctx);
             default:
                 throw new IllegalStateException();
         }
@@ -124,6 +156,9 @@ final class ServerHandlers {
 
         @Override
         public final void handleRequest(final HttpServerExchange exchange) throws Exception {
+            if (rejectExpired(exchange)) {
+                return;
+            }
             if (isValidRequest(exchange)) {
                 processRequest(exchange);
             }
@@ -131,14 +166,18 @@ final class ServerHandlers {
     }
 
     private abstract static class AbstractTransactionHandler extends ValidatingTransactionHandler {
-        private AbstractTransactionHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
+        private final ImportedTransactionCache importedTransactions;
+
+        private AbstractTransactionHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
             super(config, ctx);
+            this.importedTransactions = importedTransactions;
         }
 
         @Override
         protected boolean isValidRequest(final HttpServerExchange exchange) {
             final ContentType contentType = ContentType.parse(getRequestHeader(exchange, CONTENT_TYPE));
-            if (contentType == null || contentType.getVersion() != 1 || !contentType.getType().equals(XID.getType())) {
+            if (contentType == null || contentType.getVersion() < 1 || contentType.getVersion() > XID_COMPACT.getVersion()
+                    || !contentType.getType().equals(XID.getType())) {
                 exchange.setStatusCode(BAD_REQUEST);
                 HttpRemoteTransactionMessages.MESSAGES.debugf("Exchange %s has incorrect or missing content type", exchange);
                 return false;
@@ -149,17 +188,22 @@ final class ServerHandlers {
         @Override
         protected void processRequest(final HttpServerExchange exchange) {
             try {
-                final HttpMarshallerFactory httpMarshallerFactory = config.getHttpUnmarshallerFactory(exchange);
-                final Unmarshaller unmarshaller = httpMarshallerFactory.createUnmarshaller();
+                final ContentType contentType = ContentType.parse(getRequestHeader(exchange, CONTENT_TYPE));
                 final InputStream is = exchange.getInputStream();
                 Xid simpleXid;
-                try (ByteInput in = byteInputOf(is)) {
-                    unmarshaller.start(in);
-                    simpleXid = deserializeXid(unmarshaller);
-                    unmarshaller.finish();
+                if (contentType.getVersion() == XID_COMPACT.getVersion()) {
+                    simpleXid = readCompactXid(new DataInputStream(is));
+                } else {
+                    final HttpMarshallerFactory httpMarshallerFactory = config.getHttpUnmarshallerFactory(exchange);
+                    final Unmarshaller unmarshaller = httpMarshallerFactory.createUnmarshaller();
+                    try (ByteInput in = byteInputOf(is)) {
+                        unmarshaller.start(in);
+                        simpleXid = deserializeXid(unmarshaller);
+                        unmarshaller.finish();
+                    }
                 }
 
-                final ImportResult<LocalTransaction> transaction = ctx.findOrImportTransaction(simpleXid, 0);
+                final ImportResult<LocalTransaction> transaction = importedTransactions.findOrImportTransaction(ctx, simpleXid, 0);
                 transaction.getTransaction().performFunction((ExceptionBiFunction<ImportResult<LocalTransaction>, HttpServerExchange, Void, Exception>) (o, exchange2) -> {
                     handleImpl(exchange2, o);
                     return null;
@@ -193,10 +237,16 @@ final class ServerHandlers {
             try {
                 final String timeoutString = getRequestHeader(exchange, TIMEOUT);
                 final Integer timeout = Integer.parseInt(timeoutString);
-                putResponseHeader(exchange, CONTENT_TYPE, NEW_TRANSACTION);
                 final LocalTransaction transaction = ctx.beginTransaction(timeout);
                 final Xid xid = xidResolver.apply(transaction);
 
+                final String accept = getRequestHeader(exchange, ACCEPT);
+                if (accept != null && accept.contains(NEW_TRANSACTION_COMPACT.toString())) {
+                    putResponseHeader(exchange, CONTENT_TYPE, NEW_TRANSACTION_COMPACT);
+                    exchange.getResponseSender().send(ByteBuffer.wrap(toCompactXid(xid)));
+                    return;
+                }
+                putResponseHeader(exchange, CONTENT_TYPE, NEW_TRANSACTION);
                 final ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 Marshaller marshaller = config.getHttpMarshallerFactory(exchange).createMarshaller();
                 try (ByteOutput out = byteOutputOf(baos)) {
@@ -212,8 +262,11 @@ final class ServerHandlers {
     }
 
     private static final class XARecoveryHandler extends ValidatingTransactionHandler {
-        private XARecoveryHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
+        private final RecoveryCursors recoveryCursors;
+
+        private XARecoveryHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final RecoveryCursors recoveryCursors) {
             super(config, ctx);
+            this.recoveryCursors = recoveryCursors;
         }
 
         @Override
@@ -239,7 +292,24 @@ final class ServerHandlers {
                 final String flagsStringString = getRequestHeader(exchange, RECOVERY_FLAGS);
                 final int flags = Integer.parseInt(flagsStringString);
                 final String parentName = getRequestHeader(exchange, RECOVERY_PARENT_NAME);
-                final Xid[] recoveryList = ctx.getRecoveryInterface().recover(flags, parentName);
+                final String pageSize = getRequestHeader(exchange, RECOVERY_PAGE_SIZE);
+                final Xid[] recoveryList;
+                if (pageSize == null) {
+                    recoveryList = ctx.getRecoveryInterface().recover(flags, parentName);
+                } else {
+                    // paged scan, the first request runs the scan and the following ones continue by cursor
+                    final String cursor = getRequestHeader(exchange, RECOVERY_CURSOR);
+                    final RecoveryCursors.Page page = cursor == null
+                            ? recoveryCursors.start(ctx.getRecoveryInterface().recover(flags, parentName), Integer.parseInt(pageSize))
+                            : recoveryCursors.next(cursor, Integer.parseInt(pageSize));
+                    if (page == null) {
+                        throw HttpRemoteTransactionMessages.MESSAGES.unknownRecoveryCursor(XAException.XAER_PROTO, cursor);
+                    }
+                    if (page.cursor != null) {
+                        putResponseHeader(exchange, RECOVERY_CURSOR, page.cursor);
+                    }
+                    recoveryList = page.xids;
+                }
 
                 final ByteArrayOutputStream out = new ByteArrayOutputStream();
                 final ByteOutput byteOutput = byteOutputOf(out);
@@ -257,8 +327,8 @@ final class ServerHandlers {
     }
 
     private static final class UTRollbackHandler extends AbstractTransactionHandler {
-        private UTRollbackHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private UTRollbackHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -268,8 +338,8 @@ final class ServerHandlers {
     }
 
     private static final class UTCommitHandler extends AbstractTransactionHandler {
-        private UTCommitHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private UTCommitHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -279,8 +349,8 @@ final class ServerHandlers {
     }
 
     private static final class XABeforeCompletionHandler extends AbstractTransactionHandler {
-        private XABeforeCompletionHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private XABeforeCompletionHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -290,8 +360,8 @@ final class ServerHandlers {
     }
 
     private static final class XAForgetHandler extends AbstractTransactionHandler {
-        private XAForgetHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private XAForgetHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -301,8 +371,8 @@ final class ServerHandlers {
     }
 
     private static final class XAPrepHandler extends AbstractTransactionHandler {
-        private XAPrepHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private XAPrepHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -312,8 +382,8 @@ final class ServerHandlers {
     }
 
     private static final class XARollbackHandler extends AbstractTransactionHandler {
-        private XARollbackHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private XARollbackHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -323,8 +393,8 @@ final class ServerHandlers {
     }
 
     private static final class XACommitHandler extends AbstractTransactionHandler {
-        private XACommitHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
-            super(config, ctx);
+        private XACommitHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
         }
 
         @Override
@@ -337,4 +407,97 @@ final class ServerHandlers {
             transaction.getControl().commit(onePhase);
         }
     }
+
+    private static final class XABeforeCompletionPrepHandler extends AbstractTransactionHandler {
+        private XABeforeCompletionPrepHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
+        }
+
+        @Override
+        protected void handleImpl(final HttpServerExchange exchange, final ImportResult<LocalTransaction> transaction) throws Exception {
+            transaction.getControl().beforeCompletion();
+            if (transaction.getControl().prepare() == XAResource.XA_RDONLY) {
+                putResponseHeader(exchange, READ_ONLY, Boolean.TRUE.toString());
+            }
+        }
+    }
+
+    private static final class XABeforeCompletionCommitHandler extends AbstractTransactionHandler {
+        private XABeforeCompletionCommitHandler(final HttpServiceConfig config, final LocalTransactionContext ctx, final ImportedTransactionCache importedTransactions) {
+            super(config, ctx, importedTransactions);
+        }
+
+        @Override
+        protected void handleImpl(final HttpServerExchange exchange, final ImportResult<LocalTransaction> transaction) throws Exception {
+            transaction.getControl().beforeCompletion();
+            transaction.getControl().commit(true);
+        }
+    }
+
+    private static final class XACommitBatchHandler extends ValidatingTransactionHandler {
+        private XACommitBatchHandler(final HttpServiceConfig config, final LocalTransactionContext ctx) {
+            super(config, ctx);
+        }
+
+        @Override
+        protected boolean isValidRequest(final HttpServerExchange exchange) {
+            final ContentType contentType = ContentType.parse(getRequestHeader(exchange, CONTENT_TYPE));
+            if (contentType == null || contentType.getVersion() != 1 || !contentType.getType().equals(XID_LIST.getType())) {
+                exchange.setStatusCode(BAD_REQUEST);
+                HttpRemoteTransactionMessages.MESSAGES.debugf("Exchange %s has incorrect or missing content type", exchange);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        protected void processRequest(final HttpServerExchange exchange) {
+            try {
+                final Unmarshaller unmarshaller = config.getHttpUnmarshallerFactory(exchange).createUnmarshaller();
+                final Xid[] xids;
+                try (ByteInput in = byteInputOf(exchange.getInputStream())) {
+                    unmarshaller.start(in);
+                    xids = deserializeXidArray(unmarshaller);
+                    unmarshaller.finish();
+                }
+                // failure of one transaction must not prevent committing the others
+                final int[] outcomes = new int[xids.length];
+                for (int i = 0; i < xids.length; i++) {
+                    outcomes[i] = commit(xids[i]);
+                }
+
+                putResponseHeader(exchange, CONTENT_TYPE, XA_OUTCOMES);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (ByteOutput byteOutput = byteOutputOf(out)) {
+                    Marshaller marshaller = config.getHttpMarshallerFactory(exchange).createMarshaller();
+                    marshaller.start(byteOutput);
+                    serializeOutcomes(marshaller, outcomes);
+                    marshaller.finish();
+                }
+                exchange.getResponseSender().send(ByteBuffer.wrap(out.toByteArray()));
+            } catch (Exception e) {
+                sendException(exchange, config, INTERNAL_SERVER_ERROR, e);
+            }
+        }
+
+        private int commit(final Xid xid) {
+            try {
+                final ImportResult<LocalTransaction> transaction = ctx.findOrImportTransaction(xid, 0, true);
+                if (transaction == null) {
+                    return XAException.XAER_NOTA;
+                }
+                transaction.getTransaction().performFunction((ExceptionBiFunction<ImportResult<LocalTransaction>, Void, Void, XAException>) (o, ignored) -> {
+                    o.getControl().commit(false);
+                    return null;
+                }, transaction, null);
+                return 0;
+            } catch (XAException e) {
+                HttpRemoteTransactionMessages.MESSAGES.debugf(e, "Failed to commit transaction %s", xid);
+                return e.errorCode != 0 ? e.errorCode : XAException.XAER_RMERR;
+            } catch (Exception e) {
+                HttpRemoteTransactionMessages.MESSAGES.debugf(e, "Failed to commit transaction %s", xid);
+                return XAException.XAER_RMERR;
+            }
+        }
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.transaction.client.SimpleXid;
+
+import javax.transaction.xa.Xid;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class RecoveryCursorsTestCase {
+
+    private static Xid[] xids(final int count) {
+        final Xid[] xids = new Xid[count];
+        for (int i = 0; i < count; i++) {
+            xids[i] = new SimpleXid(1, new byte[] {(byte) i}, new byte[0]);
+        }
+        return xids;
+    }
+
+    @Test
+    public void testPaging() {
+        final RecoveryCursors cursors = new RecoveryCursors(60000);
+        final Xid[] xids = xids(5);
+        RecoveryCursors.Page page = cursors.start(xids, 2);
+        Assert.assertArrayEquals(new Xid[] {xids[0], xids[1]}, page.xids);
+        Assert.assertNotNull(page.cursor);
+        page = cursors.next(page.cursor, 2);
+        Assert.assertArrayEquals(new Xid[] {xids[2], xids[3]}, page.xids);
+        page = cursors.next(page.cursor, 2);
+        Assert.assertArrayEquals(new Xid[] {xids[4]}, page.xids);
+        // the last page releases the cursor
+        Assert.assertNull(page.cursor);
+        Assert.assertEquals(0, cursors.size());
+    }
+
+    @Test
+    public void testSinglePage() {
+        final RecoveryCursors cursors = new RecoveryCursors(60000);
+        RecoveryCursors.Page page = cursors.start(xids(2), 10);
+        Assert.assertEquals(2, page.xids.length);
+        Assert.assertNull(page.cursor);
+        page = cursors.start(new Xid[0], 10);
+        Assert.assertEquals(0, page.xids.length);
+        Assert.assertNull(page.cursor);
+    }
+
+    @Test
+    public void testCursorExpires() throws Exception {
+        final RecoveryCursors cursors = new RecoveryCursors(0);
+        final RecoveryCursors.Page page = cursors.start(xids(3), 1);
+        Thread.sleep(1);
+        Assert.assertNull(cursors.next(page.cursor, 1));
+        Assert.assertNull(cursors.next("unknown", 1));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2024 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.httpclient.transaction;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wildfly.transaction.client.SimpleXid;
+
+import javax.transaction.xa.Xid;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+
+/**
+ * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
+ */
+public class SerializerTestCase {
+
+    @Test
+    public void testCompactXidRoundTrip() throws Exception {
+        final byte[] globalId = new byte[64];
+        for (int i = 0; i < globalId.length; i++) {
+            globalId[i] = (byte) (200 + i);
+        }
+        final Xid xid = new SimpleXid(0x20005, globalId, new byte[] {1, 2});
+        final byte[] bytes = Serializer.toCompactXid(xid);
+        Assert.assertEquals(4 + 1 + 64 + 1 + 2, bytes.length);
+        Assert.assertEquals(xid, Serializer.readCompactXid(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+
+    @Test
+    public void testCompactXidEmptyBranch() throws Exception {
+        final Xid xid = new SimpleXid(-1, new byte[] {7}, new byte[0]);
+        final byte[] bytes = Serializer.toCompactXid(xid);
+        Assert.assertEquals(xid, Serializer.readCompactXid(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+}